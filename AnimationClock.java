@@ -0,0 +1,140 @@
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * The AnimationClock class
+ *
+ * @author Jiawen
+ * Moves the animated sprites on when Swing does the drawing (without active
+ * rendering). Every animation on screen runs off the same clock, and one
+ * timer wakes up only when the next of them is due to change frame. Only
+ * the sprites whose frame changed are repainted, and only inside their own
+ * boxes, so nothing else on the screen is drawn again. When no animation is
+ * showing the timer is stopped, so a game where nothing moves does no work.
+ *
+ * Each sprite has a number (the player, the question mark, etc.). Whoever
+ * draws says where each sprite is (show) or that it is not showing (hide)
+ * every time it draws. Only used by Swing's thread
+ */
+public class AnimationClock implements ActionListener
+{
+	private JComponent component;
+	private Timer timer;
+	private long start;
+
+	// For each sprite: its animation (null if it is not showing), its box in
+	// the component, and the frame that was showing when it was last checked
+	private SpriteAnimation[] animations;
+	private Rectangle[] boxes;
+	private int[] frames;
+
+	/**
+	 * Creates a new AnimationClock object, starting the clock at zero
+	 *
+	 * @param component What the sprites are drawn on
+	 * @param noOfSprites How many sprites can be animated at once
+	 */
+	public AnimationClock(JComponent component, int noOfSprites)
+	{
+		this.component = component;
+		animations = new SpriteAnimation[noOfSprites];
+		boxes = new Rectangle[noOfSprites];
+		frames = new int[noOfSprites];
+		for (int sprite = 0; sprite < noOfSprites; sprite++)
+			boxes[sprite] = new Rectangle();
+		timer = new Timer(0, this);
+		timer.setRepeats(false);
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Returns the time on the clock
+	 *
+	 * @return the number of milliseconds since the clock was made
+	 */
+	public long getTime()
+	{
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * Says that a sprite is showing and where, so that it is repainted when
+	 * its animation moves on
+	 *
+	 * @param sprite The sprite's number
+	 * @param animation The animation it is showing
+	 * @param time The time on the clock the sprite was drawn at
+	 * @param x The left side of its box in the component
+	 * @param y The top of its box in the component
+	 * @param width The width of its box
+	 * @param height The height of its box
+	 */
+	public void show(int sprite, SpriteAnimation animation, long time, int x,
+			int y, int width, int height)
+	{
+		animations[sprite] = animation;
+		frames[sprite] = animation.getFrameNumber(time);
+		boxes[sprite].setBounds(x, y, width, height);
+		schedule();
+	}
+
+	/**
+	 * Says that a sprite is not showing
+	 *
+	 * @param sprite The sprite's number
+	 */
+	public void hide(int sprite)
+	{
+		animations[sprite] = null;
+	}
+
+	/**
+	 * Repaints every showing sprite whose frame has changed, then waits for
+	 * the next change
+	 *
+	 * @param event The timer going off
+	 */
+	public void actionPerformed(ActionEvent event)
+	{
+		long time = getTime();
+		for (int sprite = 0; sprite < animations.length; sprite++)
+			if (animations[sprite] != null)
+			{
+				int frame = animations[sprite].getFrameNumber(time);
+				if (frame != frames[sprite])
+				{
+					frames[sprite] = frame;
+					component.repaint(boxes[sprite]);
+				}
+			}
+		schedule();
+	}
+
+	/**
+	 * Sets the timer to go off when the next showing sprite changes frame,
+	 * or stops it if none will
+	 */
+	private void schedule()
+	{
+		long time = getTime();
+		long wait = -1;
+		for (int sprite = 0; sprite < animations.length; sprite++)
+			if (animations[sprite] != null)
+			{
+				long next = animations[sprite].getTimeToNextFrame(time);
+				if (next >= 0 && (wait < 0 || next < wait))
+					wait = next;
+			}
+
+		if (wait < 0)
+			timer.stop();
+		else
+		{
+			timer.setInitialDelay((int) Math.max(wait, 1));
+			timer.restart();
+		}
+	}
+}
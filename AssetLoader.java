@@ -0,0 +1,312 @@
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import javax.imageio.ImageIO;
+
+/**
+ * The AssetLoader class
+ *
+ * @author Jiawen
+ * Loads the game's pictures and sounds on a few worker threads so that the
+ * window can appear before everything has been read. Keeps track of how long
+ * each file took so slow files can be found
+ */
+public class AssetLoader
+{
+	private ExecutorService workers;
+
+	// Every file that was asked for, by name and in the order they were
+	// asked for. Animations are kept under their file name with a "#" in
+	// front since the same GIF can also be loaded as a plain picture, and
+	// sound samples with a "~" in front
+	private HashMap<String, Asset> assets;
+	private ArrayList<Asset> order;
+	private long created;
+
+	/**
+	 * One file being loaded, along with when it was asked for, started and
+	 * finished
+	 */
+	private static class Asset extends FutureTask<Object>
+	{
+		private String fileName;
+		private volatile long requested, started, finished;
+		private volatile String thread;
+
+		private Asset(String fileName, Callable<Object> loader)
+		{
+			super(loader);
+			this.fileName = fileName;
+			this.requested = System.nanoTime();
+		}
+
+		public void run()
+		{
+			started = System.nanoTime();
+			thread = Thread.currentThread().getName();
+			super.run();
+		}
+
+		protected void set(Object result)
+		{
+			finished = System.nanoTime();
+			super.set(result);
+		}
+
+		protected void setException(Throwable problem)
+		{
+			finished = System.nanoTime();
+			super.setException(problem);
+		}
+	}
+
+	/**
+	 * Creates a new AssetLoader object
+	 *
+	 * @param noOfWorkers How many files can be read at the same time
+	 */
+	public AssetLoader(int noOfWorkers)
+	{
+		assets = new HashMap<String, Asset>();
+		order = new ArrayList<Asset>();
+		created = System.nanoTime();
+		workers = Executors.newFixedThreadPool(noOfWorkers,
+				new ThreadFactory()
+				{
+					private int count = 0;
+
+					public synchronized Thread newThread(Runnable task)
+					{
+						count++;
+						Thread thread = new Thread(task, "rgb-assets-" + count);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Starts loading pictures in the background. Files are started in the
+	 * order given
+	 *
+	 * @param fileNames The names of the picture files
+	 */
+	public synchronized void requestImages(String... fileNames)
+	{
+		for (final String fileName : fileNames)
+		{
+			if (assets.containsKey(fileName))
+				continue;
+
+			submit(fileName, new Callable<Object>()
+			{
+				public Object call() throws IOException
+				{
+					return readImage(fileName);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Starts reading short sounds into memory as PCM in the background (for
+	 * the SoundMixer)
+	 *
+	 * @param fileNames The names of the sound files
+	 */
+	public synchronized void requestSamples(String... fileNames)
+	{
+		for (final String fileName : fileNames)
+		{
+			if (assets.containsKey("~" + fileName))
+				continue;
+
+			submit("~" + fileName, new Callable<Object>()
+			{
+				public Object call() throws IOException
+				{
+					return new SoundSample(fileName);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Starts reading every frame of animated GIFs in the background
+	 *
+	 * @param fileNames The names of the GIF files
+	 */
+	public synchronized void requestAnimations(String... fileNames)
+	{
+		for (final String fileName : fileNames)
+		{
+			if (assets.containsKey("#" + fileName))
+				continue;
+
+			submit("#" + fileName, new Callable<Object>()
+			{
+				public Object call() throws IOException
+				{
+					return new SpriteAnimation(fileName);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns all the frames of an animated GIF, waiting for them if they are
+	 * not loaded yet
+	 *
+	 * @param fileName The name of the GIF file
+	 * @return the animation, or null if it could not be read
+	 */
+	public SpriteAnimation getAnimation(String fileName)
+	{
+		requestAnimations(fileName);
+		return (SpriteAnimation) waitFor("#" + fileName);
+	}
+
+	/**
+	 * Returns a picture, waiting for it if it is not loaded yet
+	 *
+	 * @param fileName The name of the picture file
+	 * @return the picture, or null if it could not be read
+	 */
+	public Image getImage(String fileName)
+	{
+		requestImages(fileName);
+		return (Image) waitFor(fileName);
+	}
+
+	/**
+	 * Returns a sound read as PCM, waiting for it if it is not loaded yet
+	 *
+	 * @param fileName The name of the sound file
+	 * @return the sound, or null if it could not be read
+	 */
+	public SoundSample getSample(String fileName)
+	{
+		requestSamples(fileName);
+		return (SoundSample) waitFor("~" + fileName);
+	}
+
+	/**
+	 * Stops the worker threads once everything asked for has been loaded
+	 */
+	public void shutdown()
+	{
+		workers.shutdown();
+	}
+
+	/**
+	 * Prints how long each file waited and took to load, in the order they
+	 * were asked for
+	 *
+	 * @param out Where to print the times
+	 */
+	public synchronized void printTimings(PrintStream out)
+	{
+		long total = 0;
+		out.println("Asset load times (waited / loading, in ms):");
+		for (Asset asset : order)
+		{
+			if (!asset.isDone() || asset.finished == 0)
+			{
+				out.printf("  %-22s not finished%n", asset.fileName);
+				continue;
+			}
+			long loading = asset.finished - asset.started;
+			total += loading;
+			out.printf("  %-22s %8.2f / %8.2f  (%s)%n", asset.fileName,
+					(asset.started - asset.requested) / 1e6, loading / 1e6,
+					asset.thread);
+		}
+		out.printf("  %d files, %.2f ms of loading, %.2f ms since start%n",
+				order.size(), total / 1e6, (System.nanoTime() - created) / 1e6);
+	}
+
+	/**
+	 * Queues a file to be loaded
+	 *
+	 * @param fileName The name of the file
+	 * @param loader What reads the file
+	 */
+	private void submit(String fileName, Callable<Object> loader)
+	{
+		Asset asset = new Asset(fileName, loader);
+		assets.put(fileName, asset);
+		order.add(asset);
+		workers.execute(asset);
+	}
+
+	/**
+	 * Waits for a file to finish loading
+	 *
+	 * @param fileName The name of the file
+	 * @return what was loaded, or null if it could not be loaded
+	 */
+	private Object waitFor(String fileName)
+	{
+		Asset asset;
+		synchronized (this)
+		{
+			asset = assets.get(fileName);
+		}
+
+		try
+		{
+			return asset.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			System.err.println(fileName + " could not be loaded: "
+					+ e.getCause());
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a picture with ImageIO (only the first frame of a GIF; animations
+	 * are read with requestAnimations)
+	 *
+	 * @param fileName The name of the picture file
+	 * @return the picture
+	 * @throws IOException if the picture could not be read
+	 */
+	private static Image readImage(String fileName) throws IOException
+	{
+		BufferedImage image = ImageIO.read(new File(fileName));
+		if (image == null)
+			throw new IOException(fileName + " is not a valid picture");
+
+		// Copy the picture into the screen's own format so it draws quickly
+		if (GraphicsEnvironment.isHeadless())
+			return image;
+		GraphicsConfiguration configuration = GraphicsEnvironment
+				.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+				.getDefaultConfiguration();
+		BufferedImage compatible = configuration.createCompatibleImage(
+				image.getWidth(), image.getHeight(), image.getTransparency());
+		Graphics g = compatible.getGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return compatible;
+	}
+}
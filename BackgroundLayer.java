@@ -0,0 +1,300 @@
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import javax.swing.JComponent;
+
+/**
+ * The BackgroundLayer class
+ *
+ * @author Jiawen
+ * Keeps a pre-drawn copy of everything on the map that does not move (walls,
+ * doors, paths, paint and the level pictures) so that a frame only needs one
+ * drawImage call for all of it. Only the tiles that changed are redrawn into
+ * the copy.
+ *
+ * The copy only covers the part of the map that is on screen, so it is the
+ * size of the window however big the map is. When the view scrolls, what is
+ * still on screen is moved over inside the copy and only the strips that
+ * came into view are drawn.
+ *
+ * When the graphics context it is drawn on is scaled, the copy is made at
+ * the scaled size (in screen pixels), so it is still drawn without resizing
+ */
+public class BackgroundLayer
+{
+	/**
+	 * Draws the part of the map that never moves. The graphics context is
+	 * already clipped to the area being redrawn
+	 */
+	public interface Painter
+	{
+		/**
+		 * Draws the still part of the map inside an area
+		 *
+		 * @param g The graphics context of the cached layer
+		 * @param area The area (in pixels) that needs to be drawn
+		 */
+		void paintBackground(Graphics g, Rectangle area);
+	}
+
+	private Painter painter;
+
+	// The cached layer: an accelerated image if possible, otherwise a normal
+	// image in memory
+	private VolatileImage volatileLayer;
+	private BufferedImage bufferedLayer;
+	private int width, height;
+
+	// How many screen pixels one map pixel takes up, and the size of the
+	// copy in screen pixels
+	private double scale;
+	private int layerWidth, layerHeight;
+
+	// Where the copy's top left corner is on the map, in pixels, and how
+	// far the view moved since the copy was last updated
+	private int originX, originY;
+	private int scrollX, scrollY;
+
+	// Puts the graphics context back to drawing in screen pixels
+	private final AffineTransform SCREEN = new AffineTransform();
+
+	// The tiles that changed since the layer was last updated, and whether the
+	// whole layer must be redrawn
+	private TileDamage changedTiles;
+	private boolean rebuild;
+	private Rectangle area, view;
+
+	/**
+	 * Creates a new BackgroundLayer object
+	 *
+	 * @param painter What draws the still part of the map
+	 * @param tileSize The width and height of one tile in pixels
+	 */
+	public BackgroundLayer(Painter painter, int tileSize)
+	{
+		this.painter = painter;
+		this.changedTiles = new TileDamage(tileSize);
+		this.area = new Rectangle();
+		this.view = new Rectangle();
+		this.rebuild = true;
+		this.scale = 1;
+	}
+
+	/**
+	 * Redraws the whole layer before the next frame (for a new level or a
+	 * change to the whole grid)
+	 */
+	public void invalidateAll()
+	{
+		rebuild = true;
+		changedTiles.clear();
+	}
+
+	/**
+	 * Redraws one tile of the layer before the next frame
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 */
+	public void invalidateTile(int row, int column)
+	{
+		if (!rebuild)
+			changedTiles.markTile(row, column);
+	}
+
+	/**
+	 * Draws the whole layer at the top left, first bringing it up to date
+	 *
+	 * @param g The graphics context to draw on
+	 * @param component The component the layer belongs to
+	 * @param width The width of the map in pixels
+	 * @param height The height of the map in pixels
+	 */
+	public void paint(Graphics g, JComponent component, int width,
+			int height)
+	{
+		paint(g, component, 0, 0, width, height);
+	}
+
+	/**
+	 * Draws the part of the map that is in view at the top left, first
+	 * bringing it up to date
+	 *
+	 * @param g The graphics context to draw on
+	 * @param component The component the layer belongs to
+	 * @param x Where the view's left side is on the map, in pixels
+	 * @param y Where the view's top is on the map, in pixels
+	 * @param width The width of the view in pixels
+	 * @param height The height of the view in pixels
+	 */
+	public void paint(Graphics g, JComponent component, int x, int y,
+			int width, int height)
+	{
+		Graphics2D g2 = (Graphics2D) g;
+		AffineTransform transform = g2.getTransform();
+		double scale = transform.getScaleX();
+		if (width != this.width || height != this.height
+				|| scale != this.scale)
+		{
+			this.width = width;
+			this.height = height;
+			this.scale = scale;
+			layerWidth = Math.max(1, (int) Math.ceil(width * scale));
+			layerHeight = Math.max(1, (int) Math.ceil(height * scale));
+			volatileLayer = null;
+			bufferedLayer = null;
+			rebuild = true;
+		}
+
+		// Scrolling by less than the view keeps what is still in view; the
+		// strips that came into view are drawn like changed tiles. A scroll
+		// that does not land on whole screen pixels redraws everything
+		scrollX = x - originX;
+		scrollY = y - originY;
+		originX = x;
+		originY = y;
+		if (Math.abs(scrollX) >= width || Math.abs(scrollY) >= height
+				|| scrollX * scale != Math.rint(scrollX * scale)
+				|| scrollY * scale != Math.rint(scrollY * scale))
+			rebuild = true;
+		if (!rebuild && (scrollX != 0 || scrollY != 0))
+		{
+			if (scrollX > 0)
+				changedTiles.markArea(x + width - scrollX, y, scrollX, height);
+			else if (scrollX < 0)
+				changedTiles.markArea(x, y, -scrollX, height);
+			if (scrollY > 0)
+				changedTiles.markArea(x, y + height - scrollY, width, scrollY);
+			else if (scrollY < 0)
+				changedTiles.markArea(x, y, width, -scrollY);
+		}
+		else
+		{
+			scrollX = 0;
+			scrollY = 0;
+		}
+
+		GraphicsConfiguration configuration = component
+				.getGraphicsConfiguration();
+
+		// Accelerated images can lose their contents at any time (for example
+		// when the display mode changes), in which case they are redrawn
+		if (bufferedLayer == null && configuration != null)
+		{
+			do
+			{
+				if (volatileLayer == null)
+				{
+					volatileLayer = component.createVolatileImage(layerWidth,
+							layerHeight);
+					rebuild = true;
+				}
+				if (volatileLayer == null)
+					break;
+
+				int status = volatileLayer.validate(configuration);
+				if (status == VolatileImage.IMAGE_INCOMPATIBLE)
+				{
+					volatileLayer.flush();
+					volatileLayer = null;
+					continue;
+				}
+				if (status == VolatileImage.IMAGE_RESTORED)
+					rebuild = true;
+
+				update(volatileLayer);
+				drawLayer(g2, transform, volatileLayer);
+			}
+			while (volatileLayer == null || volatileLayer.contentsLost());
+
+			if (volatileLayer != null)
+				return;
+		}
+
+		// No accelerated image could be made (no screen, or not showing yet)
+		if (bufferedLayer == null)
+		{
+			if (configuration != null)
+				bufferedLayer = configuration.createCompatibleImage(
+						layerWidth, layerHeight);
+			else
+				bufferedLayer = new BufferedImage(layerWidth, layerHeight,
+						BufferedImage.TYPE_INT_RGB);
+			rebuild = true;
+		}
+		update(bufferedLayer);
+		drawLayer(g2, transform, bufferedLayer);
+	}
+
+	/**
+	 * Draws the copy at the top left, pixel for pixel
+	 *
+	 * @param g The graphics context to draw on
+	 * @param transform The graphics context's scale and position
+	 * @param layer The image holding the layer
+	 */
+	private void drawLayer(Graphics2D g, AffineTransform transform,
+			Image layer)
+	{
+		if (scale == 1)
+		{
+			g.drawImage(layer, 0, 0, null);
+			return;
+		}
+		g.setTransform(SCREEN);
+		g.drawImage(layer, (int) Math.floor(transform.getTranslateX()),
+				(int) Math.floor(transform.getTranslateY()), null);
+		g.setTransform(transform);
+	}
+
+	/**
+	 * Redraws whatever changed into the cached layer. The layer's graphics
+	 * are moved so the painter can draw at map positions; anything outside
+	 * the view is clipped away
+	 *
+	 * @param layer The image holding the layer
+	 */
+	private void update(Image layer)
+	{
+		if (!rebuild && changedTiles.isEmpty())
+			return;
+
+		Graphics2D layerGraphics = (Graphics2D) layer.getGraphics();
+		if (!rebuild && (scrollX != 0 || scrollY != 0))
+			layerGraphics.copyArea(0, 0, layerWidth, layerHeight,
+					(int) Math.rint(-scrollX * scale),
+					(int) Math.rint(-scrollY * scale));
+		scrollX = 0;
+		scrollY = 0;
+
+		layerGraphics.scale(scale, scale);
+		layerGraphics.translate(-originX, -originY);
+		view.setBounds(originX, originY, width, height);
+		if (rebuild)
+		{
+			area.setBounds(originX, originY, width, height);
+			layerGraphics.setClip(area);
+			painter.paintBackground(layerGraphics, area);
+		}
+		else
+			for (int tile = 0; tile < changedTiles.getNoOfRegions(); tile++)
+			{
+				changedTiles.getRegion(tile, area);
+				Rectangle2D.intersect(area, view, area);
+				if (area.isEmpty())
+					continue;
+				layerGraphics.setClip(area);
+				painter.paintBackground(layerGraphics, area);
+			}
+		layerGraphics.dispose();
+
+		rebuild = false;
+		changedTiles.clear();
+	}
+}
@@ -6,6 +6,12 @@
  */
 public class Button
 {
+	// What pressButton returns: how pressing the button changed the number
+	// of buttons at their correct value (so they can simply be added up)
+	public static final int BECAME_CORRECT = 1;
+	public static final int UNCHANGED = 0;
+	public static final int BECAME_WRONG = -1;
+
 	// The button's position on the map (column and row)
 	private int column;
 	private int row;
@@ -46,6 +52,70 @@ public class Button
 		this.pressed = false;
 	}
 
+	/**
+	 * Moves the button and gives it new values for a new level, as if it had
+	 * just been created
+	 * 
+	 * @param column The column within the grid the button is in
+	 * @param row The row within the grid the button is in
+	 * @param maxValue The highest value a button can reach; will reset to zero
+	 *            if reached
+	 * @param correctValue The value the player must achieve to be correct
+	 * @param colour The colour of the button (1 for red, 3 for green, 5 for
+	 *            blue)
+	 */
+	public void reset(int column, int row, int maxValue, int correctValue,
+			int colour)
+	{
+		this.column = column;
+		this.row = row;
+		this.colour = colour;
+		this.maxValue = maxValue;
+		this.correctValue = correctValue;
+		this.currentValue = 0;
+		this.pressed = false;
+	}
+
+	/**
+	 * Sets the button's value (used when a saved game is put back)
+	 * 
+	 * @param currentValue The button's new value
+	 */
+	public void setCurrentValue(int currentValue)
+	{
+		this.currentValue = currentValue;
+	}
+
+	/**
+	 * Returns the highest value the button can reach
+	 * 
+	 * @return the button's highest value
+	 */
+	public int getMaxValue()
+	{
+		return maxValue;
+	}
+
+	/**
+	 * Returns the value the player must reach to be correct
+	 * 
+	 * @return the button's correct value
+	 */
+	public int getCorrectValue()
+	{
+		return correctValue;
+	}
+
+	/**
+	 * Returns the button's colour
+	 * 
+	 * @return 1 for red, 3 for green, 5 for blue
+	 */
+	public int getColour()
+	{
+		return colour;
+	}
+
 	/**
 	 * Returns the current row the button is in
 	 * 
@@ -80,7 +150,8 @@ public class Button
 	}
 
 	/**
-	 * Unpresses the button (drawing purposes only)
+	 * Unpresses the button (the game does this at the step after it was
+	 * pressed)
 	 */
 	public void unpress()
 	{
@@ -118,34 +189,43 @@ public class Button
 	 * 
 	 * @param currentRow The row the player is standing on
 	 * @param currentColumn The column the player is standing on
+	 * @return BECAME_CORRECT if the button just reached its correct value,
+	 *         BECAME_WRONG if it just left it, otherwise UNCHANGED
 	 */
-	public void pressButton(int currentRow, int currentColumn)
+	public int pressButton(int currentRow, int currentColumn)
 	{
 		// Presses the button if the player is standing on the button
-		if (currentColumn == this.getColumn() && currentRow == this.getRow())
-		{
-			// Adds one as long as the button's max value has been reached and
-			// resets to one if it has
-			this.pressed = true;
-			if (this.currentValue < maxValue)
-				this.currentValue++;
-			else
-				this.currentValue = 0;
-		}
+		if (currentColumn != this.getColumn() || currentRow != this.getRow())
+			return UNCHANGED;
+
+		// Adds one as long as the button's max value has been reached and
+		// resets to one if it has
+		boolean wasCorrect = isCorrectValue();
+		this.pressed = true;
+		if (this.currentValue < maxValue)
+			this.currentValue++;
+		else
+			this.currentValue = 0;
+
+		if (isCorrectValue() == wasCorrect)
+			return UNCHANGED;
+		if (wasCorrect)
+			return BECAME_WRONG;
+		return BECAME_CORRECT;
 	}
 
 	/**
-	 *  Tells the paint component how to draw the button: pressed or unpressed
-	 *  (For graphical purposes only)
+	 * Tells the paint component how to draw the button: pressed or unpressed.
+	 * Asking does not change the button (the game unpresses it at its next
+	 * step)
+	 * 
 	 * @return the button's assigned number or the button's assigned number +1
 	 *         based on whether or not the button is pressed
 	 */
-	public int drawButton()
+	public int getSprite()
 	{
 		if (!this.pressed)
 			return this.colour;
-
-		this.unpress();
 		return this.colour + 1;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
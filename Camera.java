@@ -0,0 +1,192 @@
+import java.awt.Rectangle;
+
+/**
+ * The Camera class
+ *
+ * @author Jiawen
+ * Decides how big the map is drawn and which part of it is on screen. A map
+ * that fits the window at MIN_SCALE or more is scaled to fill the window (to
+ * whole scales only, if asked for); a bigger map is drawn at its own size
+ * and the view is kept centred on the player, but never shows anything past
+ * the edges of the map. Where the view is only depends on the player and the
+ * sizes, so two cameras given the same things always agree.
+ *
+ * Everything except the window's size is in map pixels (before scaling)
+ */
+public class Camera
+{
+	// The smallest a map is shrunk to fit the window; smaller than that it
+	// scrolls instead
+	public static final double MIN_SCALE = 0.5;
+
+	private int tileSize;
+	private boolean wholeScales;
+
+	// How many screen pixels one map pixel takes up, and the size of the
+	// view and where its top left corner is on the map
+	private double scale;
+	private int x, y, width, height;
+
+	/**
+	 * Creates a new Camera object
+	 *
+	 * @param tileSize The width and height of one tile in pixels
+	 */
+	public Camera(int tileSize)
+	{
+		this(tileSize, false);
+	}
+
+	/**
+	 * Creates a new Camera object
+	 *
+	 * @param tileSize The width and height of one tile in pixels
+	 * @param wholeScales Whether or not a map bigger than its own size is
+	 *            only scaled by whole numbers (so every pixel stays square)
+	 */
+	public Camera(int tileSize, boolean wholeScales)
+	{
+		this.tileSize = tileSize;
+		this.wholeScales = wholeScales;
+		this.scale = 1;
+	}
+
+	/**
+	 * Scales the map to the window and moves the view to follow the player
+	 *
+	 * @param windowWidth The width of the window in screen pixels
+	 * @param windowHeight The height of the window in screen pixels
+	 * @param noOfRows The number of rows in the map
+	 * @param noOfColumns The number of columns in the map
+	 * @param playerRow The row the player is standing on
+	 * @param playerColumn The column the player is standing on
+	 */
+	public void follow(int windowWidth, int windowHeight, int noOfRows,
+			int noOfColumns, int playerRow, int playerColumn)
+	{
+		int mapWidth = noOfColumns * tileSize;
+		int mapHeight = noOfRows * tileSize;
+		double fit = Math.min((double) windowWidth / mapWidth,
+				(double) windowHeight / mapHeight);
+		if (fit < MIN_SCALE)
+			scale = 1;
+		else if (wholeScales && fit >= 1)
+			scale = Math.floor(fit);
+		else
+			scale = fit;
+
+		int viewWidth = (int) (windowWidth / scale);
+		int viewHeight = (int) (windowHeight / scale);
+		width = Math.min(viewWidth, mapWidth);
+		height = Math.min(viewHeight, mapHeight);
+		x = centre(playerColumn, viewWidth, mapWidth);
+		y = centre(playerRow, viewHeight, mapHeight);
+	}
+
+	/**
+	 * Works out where the view starts along one direction
+	 *
+	 * @param tile The player's row or column
+	 * @param viewSize The size of the window in that direction
+	 * @param mapSize The size of the map in that direction
+	 * @return where the view starts on the map
+	 */
+	private int centre(int tile, int viewSize, int mapSize)
+	{
+		if (mapSize <= viewSize)
+			return 0;
+		int start = tile * tileSize + tileSize / 2 - viewSize / 2;
+		return Math.max(0, Math.min(mapSize - viewSize, start));
+	}
+
+	/**
+	 * Returns how many screen pixels one map pixel takes up
+	 *
+	 * @return the scale the map is drawn at
+	 */
+	public double getScale()
+	{
+		return scale;
+	}
+
+	/**
+	 * Returns where the view's left side is on the map
+	 *
+	 * @return the view's left side in pixels
+	 */
+	public int getX()
+	{
+		return x;
+	}
+
+	/**
+	 * Returns where the view's top is on the map
+	 *
+	 * @return the view's top in pixels
+	 */
+	public int getY()
+	{
+		return y;
+	}
+
+	/**
+	 * Returns the width of the part of the map that is in view
+	 *
+	 * @return the width in pixels
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Returns the height of the part of the map that is in view
+	 *
+	 * @return the height in pixels
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Returns whether or not the view is in the same place as another
+	 * camera's
+	 *
+	 * @param other The other camera
+	 * @return whether or not both show the same part of the map
+	 */
+	public boolean sameView(Camera other)
+	{
+		return scale == other.scale && x == other.x && y == other.y
+				&& width == other.width && height == other.height;
+	}
+
+	/**
+	 * Returns whether or not a rectangle on the map (in pixels) can be seen
+	 * through part of the window
+	 *
+	 * @param visible The part of the window being drawn (in map pixels, not
+	 *            moved by the view), or null for all of it
+	 * @param left The rectangle's left side on the map
+	 * @param top The rectangle's top on the map
+	 * @param areaWidth The rectangle's width
+	 * @param areaHeight The rectangle's height
+	 * @return whether or not any of it is in view
+	 */
+	public boolean isVisible(Rectangle visible, int left, int top,
+			int areaWidth, int areaHeight)
+	{
+		int viewLeft = x, viewTop = y, viewRight = x + width, viewBottom = y
+				+ height;
+		if (visible != null)
+		{
+			viewLeft = Math.max(viewLeft, x + visible.x);
+			viewTop = Math.max(viewTop, y + visible.y);
+			viewRight = Math.min(viewRight, x + visible.x + visible.width);
+			viewBottom = Math.min(viewBottom, y + visible.y + visible.height);
+		}
+		return left < viewRight && left + areaWidth > viewLeft
+				&& top < viewBottom && top + areaHeight > viewTop;
+	}
+}
@@ -0,0 +1,502 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * The ChunkedTileStore class
+ *
+ * @author Jiawen
+ * Holds the tiles of a map too big to keep in memory. The map is cut into
+ * square chunks of CHUNK_SIZE by CHUNK_SIZE tiles, one byte per tile, and
+ * each chunk is stored in one piece of a scratch file. A chunk is read into
+ * one of MAX_CHUNKS buffers the first time one of its tiles is used; when
+ * every buffer is in use, the chunk used longest ago is written back to the
+ * file (if it changed) and its buffer is reused. Since the player only ever
+ * works near where they are standing, almost every tile used is in a chunk
+ * that is already read. The buffers are made once, so the store never takes
+ * more memory than they do, however big the map is, and nothing of the file
+ * is left mapped once it is closed
+ */
+public class ChunkedTileStore implements TileMap
+{
+	// Maps with more tiles than this are kept in a ChunkedTileStore instead
+	// of a TileGrid
+	public static final int LARGE_MAP = 1 << 22;
+
+	// The width and height of a chunk (one chunk is 4 KB), and the most
+	// chunks kept in memory at once
+	public static final int CHUNK_SIZE = 64;
+	public static final int MAX_CHUNKS = 256;
+	private final int CHUNK_BYTES = CHUNK_SIZE * CHUNK_SIZE;
+
+	private final int WALL = 1;
+
+	// What a rectangle is rewritten with (see rewrite)
+	private final int SWAP = 0;
+	private final int FILL = 1;
+	private final int REPLACE = 2;
+
+	private int noOfRows, noOfColumns;
+	private int chunksAcross, chunksDown;
+
+	private File file;
+	private FileChannel channel;
+
+	// The buffers the chunks are read into, and for each one: the chunk it
+	// holds (-1 for none), whether it changed since it was read, and when it
+	// was last used (counted in tiles used). Chunks are numbered by their row
+	// of chunks times chunksAcross plus their column of chunks
+	private ByteBuffer[] buffers;
+	private int[] bufferChunkNos;
+	private boolean[] changed;
+	private long[] lastUsed;
+	private long noOfUses;
+
+	// Which buffer each chunk in memory is in
+	private HashMap<Integer, Integer> chunkBuffers;
+
+	// The last chunk used, so tiles next to each other do not look up the
+	// same chunk again
+	private int lastChunkNo;
+	private int lastBuffer;
+
+	/**
+	 * Creates a new ChunkedTileStore object where every tile is a path
+	 * (zero), backed by a new scratch file that is deleted when the store is
+	 * closed
+	 *
+	 * @param noOfRows The number of rows in the map
+	 * @param noOfColumns The number of columns in the map
+	 * @throws UncheckedIOException if the scratch file cannot be made
+	 */
+	public ChunkedTileStore(int noOfRows, int noOfColumns)
+	{
+		this.noOfRows = noOfRows;
+		this.noOfColumns = noOfColumns;
+		this.chunksAcross = (noOfColumns + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.chunksDown = (noOfRows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.buffers = new ByteBuffer[MAX_CHUNKS];
+		this.bufferChunkNos = new int[MAX_CHUNKS];
+		this.changed = new boolean[MAX_CHUNKS];
+		this.lastUsed = new long[MAX_CHUNKS];
+		for (int buffer = 0; buffer < MAX_CHUNKS; buffer++)
+		{
+			buffers[buffer] = ByteBuffer.allocate(CHUNK_BYTES);
+			bufferChunkNos[buffer] = -1;
+		}
+		this.chunkBuffers = new HashMap<Integer, Integer>(MAX_CHUNKS * 2);
+		this.lastChunkNo = -1;
+
+		try
+		{
+			file = File.createTempFile("rgb-map", ".chunks");
+			file.deleteOnExit();
+			RandomAccessFile scratch = new RandomAccessFile(file, "rw");
+			scratch.setLength((long) chunksAcross * chunksDown * CHUNK_SIZE
+					* CHUNK_SIZE);
+			channel = scratch.getChannel();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("no room for a " + noOfRows + " by "
+					+ noOfColumns + " map", e);
+		}
+	}
+
+	/**
+	 * Returns how many whole rows of a map to read in at a time, so that no
+	 * more than LARGE_MAP tiles are held in memory at once. Where that is at
+	 * least a row of chunks, it is whole rows of chunks, so loading a map
+	 * fills each chunk in one go
+	 *
+	 * @param noOfColumns The number of columns in the map
+	 * @return the number of rows to read at a time
+	 */
+	public static int rowsPerLoad(int noOfColumns)
+	{
+		int rows = LARGE_MAP / Math.max(1, noOfColumns);
+		if (rows >= CHUNK_SIZE)
+			rows -= rows % CHUNK_SIZE;
+		return Math.max(1, rows);
+	}
+
+	/**
+	 * Returns the number of rows in the map
+	 *
+	 * @return the number of rows
+	 */
+	public int getNoOfRows()
+	{
+		return noOfRows;
+	}
+
+	/**
+	 * Returns the number of columns in the map
+	 *
+	 * @return the number of columns
+	 */
+	public int getNoOfColumns()
+	{
+		return noOfColumns;
+	}
+
+	/**
+	 * Returns one tile of the map
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return the tile's value
+	 */
+	public int get(int row, int column)
+	{
+		return chunk(row, column, false).get(offset(row, column)) & 0xFF;
+	}
+
+	/**
+	 * Returns whether or not a tile is of a certain kind
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @param kind The kind of tile to check for
+	 * @return whether or not the tile is that kind
+	 */
+	public boolean is(int row, int column, int kind)
+	{
+		return get(row, column) == kind;
+	}
+
+	/**
+	 * Returns whether or not a tile is a wall
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return whether or not the tile is a wall
+	 */
+	public boolean isWall(int row, int column)
+	{
+		return get(row, column) == WALL;
+	}
+
+	/**
+	 * Changes one tile of the map
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @param kind The tile's new value
+	 */
+	public void set(int row, int column, int kind)
+	{
+		chunk(row, column, true).put(offset(row, column), (byte) kind);
+	}
+
+	/**
+	 * Swaps two kinds of tiles inside a rectangle (for example walls and
+	 * paths)
+	 *
+	 * @param first One kind of tile
+	 * @param second The other kind of tile
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 */
+	public void swap(int first, int second, int top, int left, int bottom,
+			int right)
+	{
+		rewrite(SWAP, first, second, top, left, bottom, right);
+	}
+
+	/**
+	 * Turns every tile inside a rectangle into one kind of tile, leaving one
+	 * other kind alone
+	 *
+	 * @param kind What to fill the rectangle with
+	 * @param keep The kind of tile that is not filled over (-1 for none)
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 */
+	public void fill(int kind, int keep, int top, int left, int bottom,
+			int right)
+	{
+		rewrite(FILL, kind, keep, top, left, bottom, right);
+	}
+
+	/**
+	 * Turns every tile of one kind inside a rectangle into another kind
+	 *
+	 * @param from The kind of tile to replace
+	 * @param to The kind of tile to replace it with
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 * @return whether or not any tile changed
+	 */
+	public boolean replace(int from, int to, int top, int left, int bottom,
+			int right)
+	{
+		return from != to
+				&& rewrite(REPLACE, from, to, top, left, bottom, right);
+	}
+
+	/**
+	 * Replaces some whole rows of the map with tiles read from a buffer
+	 *
+	 * @param tiles The tiles, one byte each, row by row, starting at the
+	 *            buffer's position
+	 * @param top The first row to replace
+	 * @param bottom The last row to replace
+	 */
+	public void load(ByteBuffer tiles, int top, int bottom)
+	{
+		ByteBuffer source = tiles.duplicate();
+		int start = tiles.position();
+
+		// Each chunk is filled one row at a time, so every chunk is only
+		// read once
+		for (int chunkTop = top - top % CHUNK_SIZE; chunkTop <= bottom;
+				chunkTop += CHUNK_SIZE)
+			for (int left = 0; left < noOfColumns; left += CHUNK_SIZE)
+			{
+				int firstRow = Math.max(top, chunkTop);
+				int lastRow = Math.min(bottom, chunkTop + CHUNK_SIZE - 1);
+				int width = Math.min(CHUNK_SIZE, noOfColumns - left);
+				ByteBuffer target = chunk(firstRow, left, true).duplicate();
+				for (int row = firstRow; row <= lastRow; row++)
+				{
+					int from = start + (row - top) * noOfColumns + left;
+					source.limit(from + width);
+					source.position(from);
+					target.position(offset(row, left));
+					target.put(source);
+				}
+			}
+	}
+
+	/**
+	 * Makes this store the same as another store of the same size. The other
+	 * store's scratch file is copied straight into this one's, without
+	 * reading it a chunk at a time
+	 *
+	 * @param other The store to copy
+	 * @throws UncheckedIOException if either scratch file cannot be read or
+	 *             written
+	 */
+	public void copyFrom(ChunkedTileStore other)
+	{
+		try
+		{
+			for (int buffer = 0; buffer < MAX_CHUNKS; buffer++)
+				other.writeBack(buffer);
+			forgetChunks();
+			long size = other.channel.size();
+			for (long copied = 0; copied < size;)
+				copied += other.channel.transferTo(copied, size - copied,
+						channel.position(copied));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("cannot copy the map", e);
+		}
+	}
+
+	/**
+	 * Forgets every chunk and deletes the scratch file
+	 */
+	public void close()
+	{
+		forgetChunks();
+		try
+		{
+			channel.close();
+		}
+		catch (IOException e)
+		{
+		}
+		file.delete();
+	}
+
+	/**
+	 * Rewrites the tiles inside a rectangle, one chunk at a time
+	 *
+	 * @param operation SWAP, FILL or REPLACE
+	 * @param first The first kind (see swap, fill and replace)
+	 * @param second The second kind (see swap, fill and replace)
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 * @return whether or not any tile changed
+	 */
+	private boolean rewrite(int operation, int first, int second, int top,
+			int left, int bottom, int right)
+	{
+		boolean changed = false;
+		int firstChunkTop = top - top % CHUNK_SIZE;
+		int firstChunkLeft = left - left % CHUNK_SIZE;
+		for (int chunkTop = firstChunkTop; chunkTop <= bottom; chunkTop +=
+				CHUNK_SIZE)
+			for (int chunkLeft = firstChunkLeft; chunkLeft <= right; chunkLeft +=
+					CHUNK_SIZE)
+			{
+				ByteBuffer chunk = chunk(chunkTop, chunkLeft, true);
+				int firstRow = Math.max(top, chunkTop);
+				int lastRow = Math.min(bottom, chunkTop + CHUNK_SIZE - 1);
+				int firstColumn = Math.max(left, chunkLeft);
+				int lastColumn = Math.min(right, chunkLeft + CHUNK_SIZE - 1);
+				for (int row = firstRow; row <= lastRow; row++)
+					for (int column = firstColumn; column <= lastColumn; column++)
+					{
+						int offset = offset(row, column);
+						int tile = chunk.get(offset) & 0xFF;
+						int next = tile;
+						if (operation == SWAP)
+						{
+							if (tile == first)
+								next = second;
+							else if (tile == second)
+								next = first;
+						}
+						else if (operation == FILL)
+						{
+							if (tile != second)
+								next = first;
+						}
+						else if (tile == first)
+							next = second;
+
+						if (next != tile)
+						{
+							chunk.put(offset, (byte) next);
+							changed = true;
+						}
+					}
+			}
+		return changed;
+	}
+
+	/**
+	 * Returns where a tile is inside its chunk
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return the tile's place in its chunk
+	 */
+	private static int offset(int row, int column)
+	{
+		return (row % CHUNK_SIZE) * CHUNK_SIZE + column % CHUNK_SIZE;
+	}
+
+	/**
+	 * Returns the chunk a tile is in, reading it if it is not in memory yet
+	 * (in place of the chunk used longest ago if every buffer is in use)
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @param write Whether the chunk is about to be changed
+	 * @return the buffer holding the tile's chunk
+	 * @throws UncheckedIOException if the scratch file cannot be read or
+	 *             written
+	 */
+	private ByteBuffer chunk(int row, int column, boolean write)
+	{
+		int chunkNo = row / CHUNK_SIZE * chunksAcross + column / CHUNK_SIZE;
+		if (chunkNo != lastChunkNo)
+		{
+			Integer buffer = chunkBuffers.get(chunkNo);
+			lastBuffer = buffer == null ? read(chunkNo) : buffer;
+			lastChunkNo = chunkNo;
+		}
+
+		// Every use counts, so the chunk being worked on is never the one
+		// that is dropped
+		lastUsed[lastBuffer] = ++noOfUses;
+		if (write)
+			changed[lastBuffer] = true;
+		return buffers[lastBuffer];
+	}
+
+	/**
+	 * Reads a chunk from the scratch file into the buffer used longest ago,
+	 * writing back the chunk that was in it if it changed
+	 *
+	 * @param chunkNo The chunk to read
+	 * @return the buffer it was read into
+	 * @throws UncheckedIOException if the scratch file cannot be read or
+	 *             written
+	 */
+	private int read(int chunkNo)
+	{
+		int oldest = 0;
+		for (int buffer = 1; buffer < MAX_CHUNKS; buffer++)
+			if (lastUsed[buffer] < lastUsed[oldest])
+				oldest = buffer;
+
+		ByteBuffer chunk = buffers[oldest];
+		try
+		{
+			if (bufferChunkNos[oldest] >= 0)
+			{
+				writeBack(oldest);
+				chunkBuffers.remove(bufferChunkNos[oldest]);
+			}
+
+			// The scratch file starts out all paths, so a chunk never
+			// written reads as zeros
+			chunk.clear();
+			long position = (long) chunkNo * CHUNK_BYTES;
+			while (chunk.hasRemaining())
+				if (channel.read(chunk, position + chunk.position()) < 0)
+					break;
+			while (chunk.hasRemaining())
+				chunk.put((byte) 0);
+			chunk.clear();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("cannot read part of the map", e);
+		}
+		bufferChunkNos[oldest] = chunkNo;
+		changed[oldest] = false;
+		chunkBuffers.put(chunkNo, oldest);
+		return oldest;
+	}
+
+	/**
+	 * Writes the chunk in a buffer back to the scratch file if it changed
+	 *
+	 * @param buffer The buffer
+	 * @throws IOException if the scratch file cannot be written
+	 */
+	private void writeBack(int buffer) throws IOException
+	{
+		if (bufferChunkNos[buffer] < 0 || !changed[buffer])
+			return;
+		ByteBuffer chunk = buffers[buffer].duplicate();
+		chunk.clear();
+		long position = (long) bufferChunkNos[buffer] * CHUNK_BYTES;
+		while (chunk.hasRemaining())
+			channel.write(chunk, position + chunk.position());
+		changed[buffer] = false;
+	}
+
+	/**
+	 * Forgets every chunk in memory without writing any of them back
+	 */
+	private void forgetChunks()
+	{
+		chunkBuffers.clear();
+		for (int buffer = 0; buffer < MAX_CHUNKS; buffer++)
+		{
+			bufferChunkNos[buffer] = -1;
+			changed[buffer] = false;
+		}
+		lastChunkNo = -1;
+	}
+}
@@ -0,0 +1,198 @@
+import java.util.Arrays;
+
+/**
+ * The DistanceField class
+ *
+ * @author Jiawen
+ * Holds how many steps it takes to reach one tile (a button, the question
+ * mark, a door...) from every other tile of the map. Once it is worked out, a
+ * path to that tile from anywhere is found by always stepping to a
+ * neighbour that is one step closer
+ */
+public class DistanceField
+{
+	// What the distance is for tiles that cannot reach the target
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private int targetRow, targetColumn;
+	private int noOfRows, noOfColumns;
+	private int[] distances;
+	private boolean valid;
+
+	// Reused for every search
+	private int[] queue;
+
+	/**
+	 * Creates a new DistanceField object. It is worked out the first time it
+	 * is needed
+	 *
+	 * @param targetRow The row of the tile to reach
+	 * @param targetColumn The column of the tile to reach
+	 */
+	public DistanceField(int targetRow, int targetColumn)
+	{
+		this.targetRow = targetRow;
+		this.targetColumn = targetColumn;
+		valid = false;
+	}
+
+	/**
+	 * Returns the row of the tile this field leads to
+	 *
+	 * @return the target's row
+	 */
+	public int getTargetRow()
+	{
+		return targetRow;
+	}
+
+	/**
+	 * Returns the column of the tile this field leads to
+	 *
+	 * @return the target's column
+	 */
+	public int getTargetColumn()
+	{
+		return targetColumn;
+	}
+
+	/**
+	 * Returns whether or not the distances are up to date
+	 *
+	 * @return whether or not the field is valid
+	 */
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	/**
+	 * Marks the distances as out of date, so they are worked out again the
+	 * next time they are needed
+	 */
+	public void invalidate()
+	{
+		valid = false;
+	}
+
+	/**
+	 * Returns the number of steps from a tile to the target
+	 *
+	 * @param row The tile's row
+	 * @param column The tile's column
+	 * @return the number of steps, or UNREACHABLE
+	 */
+	public int getDistance(int row, int column)
+	{
+		return distances[row * noOfColumns + column];
+	}
+
+	/**
+	 * Works out every distance with a breadth-first search from the target
+	 *
+	 * @param open Which tiles can be walked on, row by row
+	 * @param noOfRows The number of rows in the map
+	 * @param noOfColumns The number of columns in the map
+	 */
+	public void compute(boolean[] open, int noOfRows, int noOfColumns)
+	{
+		if (distances == null || distances.length != open.length)
+		{
+			distances = new int[open.length];
+			queue = new int[open.length];
+		}
+		this.noOfRows = noOfRows;
+		this.noOfColumns = noOfColumns;
+		Arrays.fill(distances, UNREACHABLE);
+		valid = true;
+
+		int target = targetRow * noOfColumns + targetColumn;
+		if (!open[target])
+			return;
+		distances[target] = 0;
+		queue[0] = target;
+		spread(open, 0, 1);
+	}
+
+	/**
+	 * Updates the distances after a tile that used to be blocked can now be
+	 * walked on. Only tiles that get closer to the target are changed, so
+	 * this costs little when the tile does not open a shortcut
+	 *
+	 * @param open Which tiles can be walked on, row by row
+	 * @param row The row of the opened tile
+	 * @param column The column of the opened tile
+	 */
+	public void opened(boolean[] open, int row, int column)
+	{
+		if (!valid)
+			return;
+
+		// The target itself opening starts the field from scratch
+		int tile = row * noOfColumns + column;
+		if (row == targetRow && column == targetColumn)
+		{
+			compute(open, noOfRows, noOfColumns);
+			return;
+		}
+
+		// The new tile is one step further than its closest neighbour
+		int best = UNREACHABLE;
+		if (column > 0)
+			best = Math.min(best, distances[tile - 1]);
+		if (column < noOfColumns - 1)
+			best = Math.min(best, distances[tile + 1]);
+		if (row > 0)
+			best = Math.min(best, distances[tile - noOfColumns]);
+		if (row < noOfRows - 1)
+			best = Math.min(best, distances[tile + noOfColumns]);
+		if (best == UNREACHABLE || best + 1 >= distances[tile])
+			return;
+
+		distances[tile] = best + 1;
+		queue[0] = tile;
+		spread(open, 0, 1);
+	}
+
+	/**
+	 * Spreads distances out from the tiles in the queue to their neighbours
+	 * wherever that makes a neighbour closer
+	 *
+	 * @param open Which tiles can be walked on, row by row
+	 * @param head Where the first tile to spread from is in the queue
+	 * @param tail Where the next tile goes in the queue
+	 */
+	private void spread(boolean[] open, int head, int tail)
+	{
+		while (head < tail)
+		{
+			int tile = queue[head++];
+			int next = distances[tile] + 1;
+			int row = tile / noOfColumns;
+			int column = tile % noOfColumns;
+			if (column > 0 && open[tile - 1] && distances[tile - 1] > next)
+			{
+				distances[tile - 1] = next;
+				queue[tail++] = tile - 1;
+			}
+			if (column < noOfColumns - 1 && open[tile + 1]
+					&& distances[tile + 1] > next)
+			{
+				distances[tile + 1] = next;
+				queue[tail++] = tile + 1;
+			}
+			if (row > 0 && open[tile - noOfColumns]
+					&& distances[tile - noOfColumns] > next)
+			{
+				distances[tile - noOfColumns] = next;
+				queue[tail++] = tile - noOfColumns;
+			}
+			if (row < noOfRows - 1 && open[tile + noOfColumns]
+					&& distances[tile + noOfColumns] > next)
+			{
+				distances[tile + noOfColumns] = next;
+				queue[tail++] = tile + noOfColumns;
+			}
+		}
+	}
+}
@@ -0,0 +1,147 @@
+import java.util.Arrays;
+
+/**
+ * The EntityIndex class
+ *
+ * @author Jiawen
+ * Finds what is standing on a tile (a button, the question mark or a palette
+ * square) with one look-up, however many things a level has. Each tile's row
+ * and column are packed into one long (see key) and used to find a number for
+ * whatever is on it. The keys are kept in one array and the numbers in
+ * another, and a key that lands on a used slot goes in the next free one, so
+ * nothing is made per tile or per look-up
+ */
+public class EntityIndex
+{
+	// Returned by get() when nothing is on a tile
+	public static final int NONE = -1;
+
+	// Marks a slot that holds no key (no tile packs to it)
+	private final long FREE = Long.MIN_VALUE;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	/**
+	 * Creates a new, empty EntityIndex object
+	 *
+	 * @param expected About how many tiles will be added (more can be added)
+	 */
+	public EntityIndex(int expected)
+	{
+		allocate(Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1);
+	}
+
+	/**
+	 * Packs a tile's row and column into one key
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return the tile's key
+	 */
+	public static long key(int row, int column)
+	{
+		return (long) row << 32 | (column & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the number of whatever is on a tile
+	 *
+	 * @param key The tile's key
+	 * @return the number given to put(), or NONE
+	 */
+	public int get(long key)
+	{
+		int mask = keys.length - 1;
+		for (int slot = slot(key); ; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == key)
+				return values[slot];
+			if (keys[slot] == FREE)
+				return NONE;
+		}
+	}
+
+	/**
+	 * Puts something on a tile, replacing whatever was there
+	 *
+	 * @param key The tile's key
+	 * @param value The number of what is on the tile (anything but NONE)
+	 * @return the number of what was on the tile before, or NONE
+	 */
+	public int put(long key, int value)
+	{
+		// The table is never more than half full, so looking something up
+		// only ever checks a few slots
+		if ((size + 1) * 2 > keys.length)
+		{
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			allocate(keys.length * 2);
+			for (int slot = 0; slot < oldKeys.length; slot++)
+				if (oldKeys[slot] != FREE)
+					put(oldKeys[slot], oldValues[slot]);
+		}
+
+		int mask = keys.length - 1;
+		int slot = slot(key);
+		while (keys[slot] != FREE && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		if (keys[slot] == key)
+		{
+			int previous = values[slot];
+			values[slot] = value;
+			return previous;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		return NONE;
+	}
+
+	/**
+	 * Takes everything off every tile
+	 */
+	public void clear()
+	{
+		Arrays.fill(keys, FREE);
+		size = 0;
+	}
+
+	/**
+	 * Returns how many tiles have something on them
+	 *
+	 * @return the number of tiles
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Makes new, empty arrays
+	 *
+	 * @param capacity The number of slots (a power of two)
+	 */
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, FREE);
+		size = 0;
+	}
+
+	/**
+	 * Returns the slot a key is looked for first. The key's bits are mixed
+	 * so that tiles next to each other spread across the table
+	 *
+	 * @param key The tile's key
+	 * @return the first slot to look in
+	 */
+	private int slot(long key)
+	{
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		return (int) (mixed ^ (mixed >>> 32)) & (keys.length - 1);
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * The FloodFill class
+ *
+ * @author Jiawen
+ * Paints every tile joined to a starting tile (up, down, left or right)
+ * that is the same kind as it, like a paint bucket. Anything of another kind
+ * (walls, doors, other paints) stops the fill. The tiles are filled one
+ * horizontal run at a time: a run is grown left and right as far as it
+ * goes and filled in one go, then the rows above and below it are searched
+ * for runs still to fill, which wait on a stack. There is no recursion, so
+ * any size of area can be filled, and the stack and the list of filled runs
+ * are reused from fill to fill, so nothing is made per tile
+ */
+public class FloodFill
+{
+	// The runs still to fill, as a row and a column inside the run
+	private int[] stack;
+	private int stackSize;
+
+	// The runs filled by the last fill: a row, its first column and its
+	// last column for each run
+	private int[] spans;
+	private int noOfSpans;
+
+	/**
+	 * Creates a new FloodFill object
+	 */
+	public FloodFill()
+	{
+		stack = new int[64];
+		spans = new int[96];
+	}
+
+	/**
+	 * Fills the area joined to a tile
+	 *
+	 * @param grid The map to fill
+	 * @param row The row of the starting tile
+	 * @param column The column of the starting tile
+	 * @param kind What to fill the area with
+	 * @return the number of tiles that changed (0 if the starting tile is
+	 *         already that kind)
+	 */
+	public int fill(TileMap grid, int row, int column, int kind)
+	{
+		noOfSpans = 0;
+		stackSize = 0;
+		int target = grid.get(row, column);
+		if (target == kind)
+			return 0;
+
+		int lastRow = grid.getNoOfRows() - 1;
+		int lastColumn = grid.getNoOfColumns() - 1;
+		int filled = 0;
+		push(row, column);
+		while (stackSize > 0)
+		{
+			column = stack[--stackSize];
+			row = stack[--stackSize];
+
+			// Runs can be on the stack more than once; only the first fills
+			if (!grid.is(row, column, target))
+				continue;
+
+			int left = column;
+			while (left > 0 && grid.is(row, left - 1, target))
+				left--;
+			int right = column;
+			while (right < lastColumn && grid.is(row, right + 1, target))
+				right++;
+			grid.fill(kind, -1, row, left, row, right);
+			addSpan(row, left, right);
+			filled += right - left + 1;
+
+			if (row > 0)
+				pushRuns(grid, row - 1, left, right, target);
+			if (row < lastRow)
+				pushRuns(grid, row + 1, left, right, target);
+		}
+		return filled;
+	}
+
+	/**
+	 * Returns the number of runs the last fill filled
+	 *
+	 * @return the number of runs
+	 */
+	public int getNoOfSpans()
+	{
+		return noOfSpans;
+	}
+
+	/**
+	 * Returns the row of a run filled by the last fill
+	 *
+	 * @param span The run's number
+	 * @return the run's row
+	 */
+	public int getSpanRow(int span)
+	{
+		return spans[span * 3];
+	}
+
+	/**
+	 * Returns the first column of a run filled by the last fill
+	 *
+	 * @param span The run's number
+	 * @return the run's leftmost column
+	 */
+	public int getSpanLeft(int span)
+	{
+		return spans[span * 3 + 1];
+	}
+
+	/**
+	 * Returns the last column of a run filled by the last fill
+	 *
+	 * @param span The run's number
+	 * @return the run's rightmost column
+	 */
+	public int getSpanRight(int span)
+	{
+		return spans[span * 3 + 2];
+	}
+
+	/**
+	 * Puts one tile of every run of the target kind between two columns of
+	 * a row on the stack
+	 *
+	 * @param grid The map being filled
+	 * @param row The row to search
+	 * @param left The first column to search
+	 * @param right The last column to search
+	 * @param target The kind of tile being filled over
+	 */
+	private void pushRuns(TileMap grid, int row, int left, int right,
+			int target)
+	{
+		boolean inRun = false;
+		for (int column = left; column <= right; column++)
+			if (grid.is(row, column, target))
+			{
+				if (!inRun)
+					push(row, column);
+				inRun = true;
+			}
+			else
+				inRun = false;
+	}
+
+	/**
+	 * Puts a tile on the stack, making the stack bigger if it is full
+	 *
+	 * @param row The tile's row
+	 * @param column The tile's column
+	 */
+	private void push(int row, int column)
+	{
+		if (stackSize + 2 > stack.length)
+		{
+			int[] bigger = new int[stack.length * 2];
+			System.arraycopy(stack, 0, bigger, 0, stackSize);
+			stack = bigger;
+		}
+		stack[stackSize++] = row;
+		stack[stackSize++] = column;
+	}
+
+	/**
+	 * Adds a filled run to the list, making the list bigger if it is full
+	 *
+	 * @param row The run's row
+	 * @param left The run's first column
+	 * @param right The run's last column
+	 */
+	private void addSpan(int row, int left, int right)
+	{
+		if ((noOfSpans + 1) * 3 > spans.length)
+		{
+			int[] bigger = new int[spans.length * 2];
+			System.arraycopy(spans, 0, bigger, 0, noOfSpans * 3);
+			spans = bigger;
+		}
+		spans[noOfSpans * 3] = row;
+		spans[noOfSpans * 3 + 1] = left;
+		spans[noOfSpans * 3 + 2] = right;
+		noOfSpans++;
+	}
+}
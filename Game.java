@@ -6,21 +6,34 @@
 
 //Imports
 import java.io.*;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.applet.Applet;
-import java.applet.AudioClip;
 import java.awt.*;
 import javax.swing.*;
 import java.awt.event.*;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
 
 public class Game extends JFrame
 {
+	private GameArea gameArea;
+
+	// Only used with active rendering: draws the game on its own thread
+	private GameLoop gameLoop;
 
 	/**
 	 * Sets up the frame name, frame location and layout
 	 */
 	public Game()
+	{
+		this(false);
+	}
+
+	/**
+	 * Sets up the frame name, frame location and layout
+	 * 
+	 * @param activeRendering Whether the game should be updated and drawn by
+	 *            its own loop (see startGameLoop) instead of by Swing
+	 */
+	public Game(boolean activeRendering)
 	{
 		// Set up the frame and the grid
 		super("RGB");
@@ -28,22 +41,71 @@ public class Game extends JFrame
 
 		// Set up for the game area
 		Container contentPane = getContentPane();
-		contentPane.add(new GameArea(), BorderLayout.CENTER);
+		gameArea = new GameArea(activeRendering);
+		contentPane.add(gameArea, BorderLayout.CENTER);
+	}
+
+	/**
+	 * Starts drawing the game with active rendering. The frame must be
+	 * showing
+	 * 
+	 * @param noOfBuffers 2 for double buffering, 3 for triple buffering
+	 * @param framesPerSecond How many frames to draw each second
+	 */
+	public void startGameLoop(int noOfBuffers, int framesPerSecond)
+	{
+		Point offset = SwingUtilities.convertPoint(gameArea, 0, 0, this);
+		gameLoop = new GameLoop(this, gameArea, noOfBuffers, framesPerSecond);
+		gameLoop.start(offset.x, offset.y);
+	}
+
+	/**
+	 * Starts recording every key the game handles into an input journal,
+	 * which ReplayDriver can play back. The journal is finished when the
+	 * program ends. Must be called before the frame is shown, so that no key
+	 * is handled before the journal starts (a replay starts from a new game)
+	 * 
+	 * @param journalFile The journal file to write
+	 * @throws IOException if the journal cannot be created
+	 */
+	public void startRecording(File journalFile) throws IOException
+	{
+		final InputJournal journal = new InputJournal(journalFile,
+				Integer.getInteger("rgb.keyframes",
+						InputJournal.DEFAULT_KEYFRAME_INTERVAL), gameArea.engine
+						.getUndoMemory());
+		gameArea.journal = journal;
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					journal.close();
+				}
+				catch (IOException e)
+				{
+					System.err.println("Input journal not finished: "
+							+ e.getMessage());
+				}
+			}
+		});
 	}
 
-	// Inner class for the maze area
-	private class GameArea extends JPanel
+	// Inner class for the maze area. It is not private (and does not need a
+	// frame) so that GameBenchmark can draw the game into a picture
+	static class GameArea extends JPanel implements BackgroundLayer.Painter,
+			GameLoop.Simulation
 	{
 		// All arrays and values pertaining to the images needed in the game.
 		private final int IMAGE_SIZE = 32;
-		private Image[] gridImages;// For the walls, doors, and paths
-		// Each level will have its own unique map
-		private String[] mapFiles = { "default.txt", "maze.txt",
-				"pseudoButtons.txt", "canvas.txt", "default.txt", "level6.txt",
-				"default.txt", "default.txt", "default.txt", "default.txt" };
+		// All the walls, doors, paths, paint, buttons and the palette are
+		// packed into one image. Tiles use their grid value as their number,
+		// the buttons come after them
+		private SpriteAtlas sprites;
+		private final int BUTTON_SPRITES = 100;
+		private final int PALETTE_SPRITE = 107;
 		private Image[] questionImages;// Each level will have a unique question
-		private Image[] buttonImages;// The images for the three buttons, both
-										// pressed and not pressed
 		private Image[] hintImages;// Each level will have its own hint
 
 		// Each level will need its own image(s)
@@ -58,107 +120,277 @@ public class Game extends JFrame
 
 		// All other images including the player's image, the paint palette, and
 		// the different screens
-		private Image[] playerImage;
-		private Image paintPalette;
-		private Image warningImage, questionMark, helpScreen;
+		private Image warningImage;
+
+		// The animated pictures are split into frames once when they are
+		// loaded. With active rendering they are moved on by the game's
+		// ticks; otherwise the animation clock repaints each one's box when
+		// its frame changes (the times are in milliseconds)
+		private boolean activeRendering;
+		private SpriteAnimation[] playerAnimations;
+		private SpriteAnimation questionMarkAnimation, helpScreenAnimation;
+		private long animationTime, frameTime;
+		private AnimationClock clock;
+		private final int PLAYER_SPRITE = 0;
+		private final int QUESTION_MARK_SPRITE = 1;
+		private final int HELP_SCREEN_SPRITE = 2;
+		private KeyHandler keys;
 		private Image hintOn, hintOff, helpOn, helpOff, onSound, offSound,
 				introScreen;
 
-		// All audio variables
-		private AudioClip backGroundSound, buttonSound, bloop, hint;
-
-		// The different constant values of the different paints and buttons
-		private final int RED_PAINT = 10;
-		private final int GREEN_PAINT = 11;
-		private final int BLUE_PAINT = 12;
-		private final int NO_PAINT = 0;
-		private final int RED_BUTTON = 1;// Will help with the buttons to draw
-		private final int GREEN_BUTTON = 3;
-		private final int BLUE_BUTTON = 5;
-		private final int FAKE_RED_BUTTON = 7;// Will help with the buttons to
-												// draw
-		private final int FAKE_GREEN_BUTTON = 8;
-		private final int FAKE_BLUE_BUTTON = 9;
-		private final int HIDDEN_PATH = 4;
-
-		// The following constant integers and integer arrays help keep track of
-		// the player's response to calculate their personality colour at the
-		// very end
-		private final int RED_CHOICE = 1;
-		private final int BLUE_CHOICE = 2;
-		private final int GREEN_CHOICE = 3;
-		private int colourResult;
-		// Each element in this array pertains to which choice to add to each
-		// level if the player chooses the 'yes' door
-		private final int[] yesChoice = { 0, BLUE_CHOICE, RED_CHOICE,
-				BLUE_CHOICE, GREEN_CHOICE, BLUE_CHOICE, RED_CHOICE,
-				BLUE_CHOICE, BLUE_CHOICE };
-		// Will keep track of the choice values to add to if the player chooses
-		// the 'no' door
-		private final int[] noChoice = { 0, RED_CHOICE, GREEN_CHOICE,
-				RED_CHOICE, RED_CHOICE, GREEN_CHOICE, GREEN_CHOICE,
-				GREEN_CHOICE, 0 };
-
-		// Will keep track of the different scores (index 1 being red choice's
-		// total, index 2 being blue's, etc.).
-		private int[] choiceScores;
+		// All audio variables. The music is streamed from its file; the sound
+		// effects are played by a mixer and are known by their number in it
+		private MusicPlayer backGroundSound;
+		private SoundMixer effects;
+		private int buttonSound, bloop, hint;
 
 		// Imports the Arial font for the number written on the buttons
 		private final Font BUTTON_FONT = new Font("Arial.ttf", Font.PLAIN, 11);
 
-		// The different constants that will aid in collision and help with
-		// repainting the grid based on the text post
-		private final int EMPTY = 0;
-		private final int WALL = 1;
-		private final int DOOR = 2;
-
-		// Current level, total number of levels, whether or not level is
-		// finished
-		private int level = 1;
-		private final int NO_OF_LEVELS = 8;
-		private boolean levelCompleted;
-
-		// Booleans that will handle the different menus
-		private boolean warningMessage, hintScreenOn, helpScreenOn, soundOn,
-				questionScreen, introOn, resultOn;
-
-		// Variables to keep track of the grid and the player position
-		private char[][] grid;
-		private int currentRow;
-		private int currentColumn;
-
-		private char currentPaint;
-
-		private int paletteRow, paletteColumn;
-		private boolean palette;
-
-		// Create all objects and creates the buttons' array
-		private Button buttons[];
-		QuestionMark qMark;
-		Button redButton;
-		Button greenButton;
-		Button blueButton;
+		// All the rules of the game and everything that happens in it. The
+		// engine is only used by the logic thread (the game loop's thread
+		// with active rendering); Swing just queues the keys and clicks for
+		// it and draws the latest snapshot it published
+		private GameEngine engine;
+		private final int INPUT_QUEUE_SIZE = 256;
+		private InputQueue inputs;
+		private Thread logic;
+		private volatile RenderSnapshot snapshot;
+		private volatile boolean engineFailed;
+
+		// The snapshot the background layer was last brought up to date with
+		// (only used by whichever thread draws)
+		private RenderSnapshot shown;
+
+		// Keeps track of the parts of the screen that need to be repainted
+		// after a step, worked out by the logic thread by comparing each
+		// snapshot with the one before it
+		private TileDamage damage;
+
+		// Maps are scaled to fit the window, and maps too big for that
+		// scroll to keep the player in view. The drawing thread and the logic
+		// thread each have their own cameras (the logic thread's say what
+		// part of the map each snapshot shows, for repainting). Clicks are
+		// turned into tiles with the view last drawn
+		private final int VIEW_MARGIN = 100;
+		private Camera camera, shownCamera, previousCamera;
+		private volatile int viewX, viewY;
+		private volatile double viewScale = 1;
+
+		// The pictures resized for the scales the game is drawn at (the
+		// sprite atlas keeps its own)
+		private ScaledImageCache scaledImages;
+
+		// The menu screens showing over the map this frame. Whatever they
+		// hide is not drawn
+		private OverlayStack overlays;
+
+		// How long frames, keys and levels take (see Metrics)
+		private Metrics metrics;
+
+		// A pre-drawn copy of the walls, doors, paths and level pictures
+		private BackgroundLayer background;
+
+		// Reads the pictures and sounds in the background. Until everything
+		// is loaded only the intro screen is drawn and keys are ignored
+		private AssetLoader assets;
+		private Thread loading;
+		private volatile boolean assetsLoaded;
+
+		// Records every key handled (see startRecording), and the game's
+		// ticks: counted by the game loop with active rendering, otherwise
+		// worked out from the time since the game started
+		private volatile InputJournal journal;
+		private long ticks;
+		private final long startTime = System.nanoTime();
+
+		// Clicking a tile walks the player there one step at a time. The
+		// steps are timed by the logic thread, or by the game loop's ticks
+		// with active rendering. Clicks go through the same queue as the
+		// keys, as negative numbers holding the row and column
+		private final int WALK_DELAY = 90;
+		private PathFinder pathFinder;
+		private ArrayList<Input> walk;
+		private int walkStep, walkRow, walkColumn, walkTargetRow,
+				walkTargetColumn, walkTicks;
+		private long nextWalk;
 
 		// ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 		/**
 		 * Constructs a new MazeArea object
+		 * 
+		 * @param activeRendering Whether the game is updated and drawn by a
+		 *            GameLoop instead of by Swing
+		 */
+		public GameArea(boolean activeRendering)
+		{
+			this(activeRendering, new File(LevelPack.DEFAULT_PACK), Toolkit
+					.getDefaultToolkit().getScreenSize());
+		}
+
+		/**
+		 * Constructs a new MazeArea object that plays the maps of a level
+		 * pack
+		 * 
+		 * @param activeRendering Whether the game is updated and drawn by a
+		 *            GameLoop (or by whoever calls tick and render) instead
+		 *            of by Swing
+		 * @param packFile The level pack all the maps are read from
+		 * @param screen The size of the screen, which the area is never made
+		 *            bigger than
 		 */
-		public GameArea()
+		GameArea(boolean activeRendering, File packFile, Dimension screen)
 		{
+			this.activeRendering = activeRendering;
+			inputs = new InputQueue(INPUT_QUEUE_SIZE);
+
+			// With active rendering only the game loop's thread draws, so
+			// Swing must not paint this panel as well
+			if (activeRendering)
+				setIgnoreRepaint(true);
+
 			// Initialize the image arrays for the grid, hints, buttons, player,
 			// questions, individual level pictures, and final results
-			gridImages = new Image[200];
+			sprites = new SpriteAtlas(PALETTE_SPRITE + 1);
 			hintImages = new Image[11];
-			buttonImages = new Image[7];
-			playerImage = new Image[13];
+			playerAnimations = new SpriteAnimation[13];
 			questionImages = new Image[11];
 			results = new Image[4];
-			buttons = new Button[3];
 			levelImages = new Image[10][5];
+			damage = new TileDamage(IMAGE_SIZE);
+			background = new BackgroundLayer(this, IMAGE_SIZE);
+
+			// Starts reading every picture and sound on a few worker threads.
+			// The intro screen is asked for first since it is the first thing
+			// shown, then everything needed to draw the map, then the rest
+			assets = new AssetLoader(Math.max(2, Math.min(4, Runtime
+					.getRuntime().availableProcessors())));
+			assets.requestImages("intro.png");
+			assets.requestImages("path.png", "wall.png", "door.png",
+					"redPaint.png", "greenPaint.png", "bluePaint.png",
+					"redButton.png", "pressedRed.png", "greenButton.png",
+					"pressedGreen.png", "blueButton.png", "pressedBlue.png",
+					"palette.png");
+			assets.requestAnimations("ghostBlank.gif", "ghostRed.gif",
+					"ghostGreen.gif", "ghostBlue.gif", "questionMark.gif",
+					"helpScreen.gif");
+			assets.requestSamples("button.wav", "Bloop.wav", "Cowbell.wav");
+			assets.requestImages("level1_1.png", "level4_1.png",
+					"level5_1.gif", "level5_2.png", "level5_3.png",
+					"level7_1.png", "wordsearch.png", "warningMessage.png",
+					"hintOn.png", "hintOff.png",
+					"helpOff.png", "helpOn.png", "soundOff.png", "soundOn.png");
+			for (int number = 1; number <= GameEngine.NO_OF_LEVELS; number++)
+				assets.requestImages("hint" + number + ".png", "question"
+						+ number + ".png");
+			assets.requestImages("redChoice.png", "greenChoice.png",
+					"blueChoice.png");
+
+			// Only the intro screen is waited for before the window appears
+			introScreen = assets.getImage("intro.png");
+
+			// The game is always measured (see Metrics); the measurements
+			// can be watched over JMX, and -Drgb.metrics writes them to a
+			// file when the game closes
+			metrics = new Metrics();
+			metrics.register();
+			String metricsFile = System.getProperty("rgb.metrics");
+			if (metricsFile != null)
+				metrics.dumpOnExit(new File(metricsFile));
+
+			// Opens the level pack that all the maps are read from and starts
+			// a new game on level 1
+			try
+			{
+				engine = new GameEngine(new LevelPack(packFile), metrics);
+				engine.setUndoMemory(Integer.getInteger("rgb.undoMemory",
+						UndoJournal.DEFAULT_MEMORY));
+			}
+			catch (IOException e)
+			{
+				JOptionPane.showMessageDialog(this, e.getMessage(),
+						"Message - Invalid Level Pack",
+						JOptionPane.WARNING_MESSAGE);
+				System.exit(0);
+			}
+			catch (UncheckedIOException e)
+			{
+				showInvalidMap(e);
+			}
+
+			// Set the image height and width based on the path image size
+			// Also sizes this panel based on the image and grid size, but no
+			// bigger than the screen; bigger maps scroll
+			Dimension size = new Dimension(Math.min(engine.getNoOfColumns()
+					* IMAGE_SIZE, screen.width - VIEW_MARGIN), Math.min(
+					engine.getNoOfRows() * IMAGE_SIZE, screen.height
+							- VIEW_MARGIN));
+			this.setPreferredSize(size);
+			boolean wholeScales = Boolean.getBoolean("rgb.wholeScales");
+			camera = new Camera(IMAGE_SIZE, wholeScales);
+			shownCamera = new Camera(IMAGE_SIZE, wholeScales);
+			previousCamera = new Camera(IMAGE_SIZE, wholeScales);
+			scaledImages = new ScaledImageCache();
+			overlays = new OverlayStack(scaledImages);
+			if (!activeRendering)
+				clock = new AnimationClock(this, 3);
+
+			// Everything else finishes loading in the background
+			loading = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					loadAssets();
+				}
+			}, "rgb-asset-loading");
+			loading.setDaemon(true);
+			loading.start();
+
+			// Sets up for keyboard input (arrow keys) on this panel
+			this.setFocusable(true);
+			keys = new KeyHandler();
+			this.addKeyListener(keys);
+			this.requestFocusInWindow();
+
+			// Sets up for clicking on a tile to walk there
+			pathFinder = new PathFinder(engine);
+			this.addMouseListener(new MouseAdapter()
+			{
+				public void mousePressed(MouseEvent event)
+				{
+					requestFocusInWindow();
+					int x = (int) Math.floor(event.getX() / viewScale) + viewX;
+					int y = (int) Math.floor(event.getY() / viewScale) + viewY;
+					if (x >= 0 && y >= 0)
+						queueInput(-1 - ((long) (y / IMAGE_SIZE) << 32 | x
+								/ IMAGE_SIZE));
+				}
+			});
 
-			// Declares the initial value of each choice's score
-			choiceScores = new int[4];
+			// The first snapshot is the start of level 1. Without active
+			// rendering the game runs on its own logic thread from here on
+			publish();
+			if (!activeRendering)
+			{
+				logic = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						runLogic();
+					}
+				}, "rgb-logic");
+				logic.setDaemon(true);
+				logic.start();
+			}
+		}
 
+		/**
+		 * Waits for the rest of the pictures and sounds and puts them in
+		 * place. Runs on its own thread; the game starts reacting to keys once
+		 * it is done
+		 */
+		private void loadAssets()
+		{
 			// These will keep track of the different images for each individual
 			// level.
 			// Each row in the array is for each level and each column within
@@ -168,768 +400,950 @@ public class Game extends JFrame
 			// This will be parallel to the array of constants imagePositions,
 			// which will tell the paint component where to draw the different
 			// images
-			levelImages[0][0] = new ImageIcon("level1_1.png").getImage();
-			levelImages[3][0] = new ImageIcon("level4_1.png").getImage();
-			levelImages[4][0] = new ImageIcon("level5_1.gif").getImage();
-			levelImages[4][1] = new ImageIcon("level5_2.png").getImage();
-			levelImages[4][2] = new ImageIcon("level5_3.png").getImage();
-			levelImages[4][3] = new ImageIcon("level5_3.png").getImage();
-			levelImages[6][0] = new ImageIcon("level7_1.png").getImage();
-			levelImages[7][0] = new ImageIcon("wordsearch.png").getImage();
+			levelImages[0][0] = assets.getImage("level1_1.png");
+			levelImages[3][0] = assets.getImage("level4_1.png");
+			levelImages[4][0] = assets.getImage("level5_1.gif");
+			levelImages[4][1] = assets.getImage("level5_2.png");
+			levelImages[4][2] = assets.getImage("level5_3.png");
+			levelImages[4][3] = assets.getImage("level5_3.png");
+			levelImages[6][0] = assets.getImage("level7_1.png");
+			levelImages[7][0] = assets.getImage("wordsearch.png");
 
 			// These are the different images for the grid such as walls, doors,
 			// and paint, the path, and buttons
-			gridImages[0] = new ImageIcon("path.png").getImage();
-			gridImages[WALL] = new ImageIcon("wall.png").getImage();
-			gridImages[DOOR] = new ImageIcon("door.png").getImage();
-			gridImages[RED_PAINT] = new ImageIcon("redPaint.png").getImage();
-			gridImages[GREEN_PAINT] = new ImageIcon("greenPaint.png")
-					.getImage();
-			gridImages[BLUE_PAINT] = new ImageIcon("bluePaint.png").getImage();
-			gridImages[4] = new ImageIcon("path.png").getImage();
-			gridImages[7] = new ImageIcon("redButton.png").getImage();
-			gridImages[8] = new ImageIcon("greenButton.png").getImage();
-			gridImages[9] = new ImageIcon("blueButton.png").getImage();
+			sprites.add(GameEngine.EMPTY, assets.getImage("path.png"));
+			sprites.add(GameEngine.WALL, assets.getImage("wall.png"));
+			sprites.add(GameEngine.DOOR, assets.getImage("door.png"));
+			sprites.add(GameEngine.RED_PAINT,
+					assets.getImage("redPaint.png"));
+			sprites.add(GameEngine.GREEN_PAINT,
+					assets.getImage("greenPaint.png"));
+			sprites.add(GameEngine.BLUE_PAINT,
+					assets.getImage("bluePaint.png"));
+			sprites.alias(GameEngine.HIDDEN_PATH, GameEngine.EMPTY);
 
 			// The images for red, green, and blue buttons and their
-			// corresponding pressed images
-			buttonImages[RED_BUTTON] = new ImageIcon("redButton.png")
-					.getImage();
-			buttonImages[RED_BUTTON + 1] = new ImageIcon("pressedRed.png")
-					.getImage();
-			buttonImages[GREEN_BUTTON] = new ImageIcon("greenButton.png")
-					.getImage();
-			buttonImages[GREEN_BUTTON + 1] = new ImageIcon("pressedGreen.png")
-					.getImage();
-			buttonImages[BLUE_BUTTON] = new ImageIcon("blueButton.png")
-					.getImage();
-			buttonImages[BLUE_BUTTON + 1] = new ImageIcon("pressedBlue.png")
-					.getImage();
-			buttons[0] = redButton;
-			buttons[1] = blueButton;
-			buttons[2] = greenButton;
+			// corresponding pressed images. The fake buttons look the same as
+			// the real ones
+			sprites.add(BUTTON_SPRITES + GameEngine.RED_BUTTON,
+					assets.getImage("redButton.png"));
+			sprites.add(BUTTON_SPRITES + GameEngine.RED_BUTTON + 1,
+					assets.getImage("pressedRed.png"));
+			sprites.add(BUTTON_SPRITES + GameEngine.GREEN_BUTTON,
+					assets.getImage("greenButton.png"));
+			sprites.add(BUTTON_SPRITES + GameEngine.GREEN_BUTTON + 1,
+					assets.getImage("pressedGreen.png"));
+			sprites.add(BUTTON_SPRITES + GameEngine.BLUE_BUTTON,
+					assets.getImage("blueButton.png"));
+			sprites.add(BUTTON_SPRITES + GameEngine.BLUE_BUTTON + 1,
+					assets.getImage("pressedBlue.png"));
+			sprites.alias(GameEngine.FAKE_RED_BUTTON, BUTTON_SPRITES
+					+ GameEngine.RED_BUTTON);
+			sprites.alias(GameEngine.FAKE_GREEN_BUTTON, BUTTON_SPRITES
+					+ GameEngine.GREEN_BUTTON);
+			sprites.alias(GameEngine.FAKE_BLUE_BUTTON, BUTTON_SPRITES
+					+ GameEngine.BLUE_BUTTON);
+			sprites.add(PALETTE_SPRITE, assets.getImage("palette.png"));
+			sprites.pack();
+
+			// Loads up all the player images and its painted versions
+			playerAnimations[0] = assets.getAnimation("ghostBlank.gif");
+			playerAnimations[10] = assets.getAnimation("ghostRed.gif");
+			playerAnimations[11] = assets.getAnimation("ghostGreen.gif");
+			playerAnimations[12] = assets.getAnimation("ghostBlue.gif");
+			questionMarkAnimation = assets.getAnimation("questionMark.gif");
+			helpScreenAnimation = assets.getAnimation("helpScreen.gif");
 
 			// Initializes the music and sound effects
 			// "Planetarium Suite" composed by Chris Lennertz, Copyright:
-			// Nettwork Music Group
-			backGroundSound = Applet
-					.newAudioClip(getCompleteURL("Planetarium Suite.wav"));
-			// Sound effects from freesounds.org
-			buttonSound = Applet.newAudioClip(getCompleteURL("button.wav"));
-			bloop = Applet.newAudioClip(getCompleteURL("Bloop.wav"));
-			hint = Applet.newAudioClip(getCompleteURL("Cowbell.wav"));
-
-			// Loads up all the player images and its painted versions
-			playerImage[0] = new ImageIcon("ghostBlank.gif").getImage();
-			playerImage[10] = new ImageIcon("ghostRed.gif").getImage();
-			playerImage[11] = new ImageIcon("ghostGreen.gif").getImage();
-			playerImage[12] = new ImageIcon("ghostBlue.gif").getImage();
-
-			// Loads up any other images such as the paint palette and all the
-			// menu screens and warnings.
-			paintPalette = new ImageIcon("palette.png").getImage();
-			warningImage = new ImageIcon("warningMessage.png").getImage();
-			questionMark = new ImageIcon("questionMark.gif").getImage();
-			helpScreen = new ImageIcon("helpScreen.gif").getImage();
-			introScreen = new ImageIcon("intro.png").getImage();
-			hintOn = new ImageIcon("hintOn.png").getImage();
-			hintOff = new ImageIcon("hintOff.png").getImage();
-			helpOn = new ImageIcon("helpOff.png").getImage();
-			helpOff = new ImageIcon("helpOn.png").getImage();
-			offSound = new ImageIcon("soundOff.png").getImage();
-			onSound = new ImageIcon("soundOn.png").getImage();
+			// Nettwork Music Group. It is read a little at a time while it
+			// plays, so it is never loaded all at once
+			backGroundSound = new MusicPlayer("Planetarium Suite.wav");
+			// Sound effects from freesounds.org. Each one can play up to three
+			// times at once; -Drgb.soundBudget sets how many milliseconds
+			// starting a sound may take and -Drgb.soundStats=true prints how
+			// well that went when the game closes
+			effects = new SoundMixer(3, Integer.getInteger("rgb.soundBudget",
+					10));
+			buttonSound = effects.add(assets.getSample("button.wav"));
+			bloop = effects.add(assets.getSample("Bloop.wav"));
+			hint = effects.add(assets.getSample("Cowbell.wav"));
+			effects.start();
+			if (Boolean.getBoolean("rgb.soundStats"))
+				Runtime.getRuntime().addShutdownHook(new Thread()
+				{
+					public void run()
+					{
+						effects.printStats(System.out);
+					}
+				});
+
+			// Loads up any other images such as all the menu screens and
+			// warnings.
+			warningImage = assets.getImage("warningMessage.png");
+			hintOn = assets.getImage("hintOn.png");
+			hintOff = assets.getImage("hintOff.png");
+			helpOn = assets.getImage("helpOff.png");
+			helpOff = assets.getImage("helpOn.png");
+			offSound = assets.getImage("soundOff.png");
+			onSound = assets.getImage("soundOn.png");
 
 			// Load the 8 hint screens and question screens, with each level
 			// having its own hint and its own question
-			hintImages[1] = new ImageIcon("hint1.png").getImage();
-			hintImages[2] = new ImageIcon("hint2.png").getImage();
-			hintImages[3] = new ImageIcon("hint3.png").getImage();
-			hintImages[4] = new ImageIcon("hint4.png").getImage();
-			hintImages[5] = new ImageIcon("hint5.png").getImage();
-			hintImages[6] = new ImageIcon("hint6.png").getImage();
-			hintImages[7] = new ImageIcon("hint7.png").getImage();
-			hintImages[8] = new ImageIcon("hint8.png").getImage();
-			questionImages[1] = new ImageIcon("question1.png").getImage();
-			questionImages[2] = new ImageIcon("question2.png").getImage();
-			questionImages[3] = new ImageIcon("question3.png").getImage();
-			questionImages[4] = new ImageIcon("question4.png").getImage();
-			questionImages[5] = new ImageIcon("question5.png").getImage();
-			questionImages[6] = new ImageIcon("question6.png").getImage();
-			questionImages[7] = new ImageIcon("question7.png").getImage();
-			questionImages[8] = new ImageIcon("question8.png").getImage();
+			for (int number = 1; number <= GameEngine.NO_OF_LEVELS; number++)
+			{
+				hintImages[number] = assets.getImage("hint" + number + ".png");
+				questionImages[number] = assets.getImage("question" + number
+						+ ".png");
+			}
 
 			// Load up the different screens for the three possible personality
 			// results
-			results[1] = new ImageIcon("redChoice.png").getImage();
-			results[2] = new ImageIcon("greenChoice.png").getImage();
-			results[3] = new ImageIcon("blueChoice.png").getImage();
-
-			// Loads up a new level with that level's text file, setting the
-			// size of the grid array
-			newLevel(mapFiles[level - 1]);
-
-			// Set the image height and width based on the path image size
-			// Also sizes this panel based on the image and grid size
-			Dimension size = new Dimension(grid[0].length * IMAGE_SIZE,
-					grid.length * IMAGE_SIZE);
-			this.setPreferredSize(size);
-
-			// Sets all default values for when a game is started
-			// The intro/backstory screen will appear first, followed by the
-			// help screen. The sound will be turned on at the start of the game
-			soundOn = true;
-			introOn = true;
-			helpScreenOn = true;
-			backGroundSound.loop();
+			results[1] = assets.getImage("redChoice.png");
+			results[2] = assets.getImage("greenChoice.png");
+			results[3] = assets.getImage("blueChoice.png");
+
+			assets.shutdown();
+			if (Boolean.getBoolean("rgb.assetTimings"))
+				assets.printTimings(System.out);
+
+			// Everything is in place: start the music and draw the map. Keys
+			// are ignored until now, so the snapshot is still the first one
+			if (snapshot.isSoundOn())
+				backGroundSound.loop();
+			assetsLoaded = true;
+
+			// The game loop picks this up with its next frame
+			if (!activeRendering)
+				repaint();
+		}
 
-			// Sets up for keyboard input (arrow keys) on this panel
-			this.setFocusable(true);
-			this.addKeyListener(new KeyHandler());
-			this.requestFocusInWindow();
+		/**
+		 * Waits until every picture and sound is loaded (keys are ignored
+		 * until then)
+		 * 
+		 * @throws InterruptedException if the wait is interrupted
+		 */
+		void waitForAssets() throws InterruptedException
+		{
+			loading.join();
 		}
 
-		// Gets the URL needed for audio clips
-		public URL getCompleteURL(String fileName)
+		/**
+		 * Makes the next frame redraw the whole background layer, as a
+		 * snapshot that changes everything does. Only called by whichever
+		 * thread draws
+		 */
+		void redrawBackground()
 		{
-			try
-			{
-				return new URL("file:" + System.getProperty("user.dir") + "/"
-						+ fileName);
-			}
-			catch (MalformedURLException e)
-			{
-				System.err.println(e.getMessage());
-			}
-			return null;
+			background.invalidateAll();
 		}
 
 		/**
 		 * Draws the value on a button
 		 * 
 		 * @param g
-		 * @param button
-		 * @param level
+		 * @param state The snapshot being drawn
+		 * @param button Which button
 		 */
-		public void drawNumbers(Graphics g, Button button)
+		public void drawNumbers(Graphics g, RenderSnapshot state, int button)
 		{
 			// Gets the column and row of each button and draws the appropriate
 			// value. Will be drawn slightly to the left if the number is two
 			// digits (to centre)
-			if (level != 3)
+			int value = state.getButtonValue(button);
+			int column = state.getButtonColumn(button);
+			int row = state.getButtonRow(button);
+			if (state.getLevel() != 3)
 			{
-				if (button.getCurrentValue() < 10)
-					g.drawString("" + button.getCurrentValue(), IMAGE_SIZE
-							* button.getColumn() + 14,
-							IMAGE_SIZE * button.getRow() + IMAGE_SIZE / 2);
+				if (value < 10)
+					g.drawString("" + value, IMAGE_SIZE * column + 14,
+							IMAGE_SIZE * row + IMAGE_SIZE / 2);
 				else
-					g.drawString("" + button.getCurrentValue(), IMAGE_SIZE
-							* button.getColumn() + 11,
-							IMAGE_SIZE * button.getRow() + IMAGE_SIZE / 2);
+					g.drawString("" + value, IMAGE_SIZE * column + 11,
+							IMAGE_SIZE * row + IMAGE_SIZE / 2);
 			}
 			// Level 3 requires the values to not be shown on the button itself;
 			// it should be hidden. The numbers will appear on the bottom wall
 			// instead
 			else
-				g.drawString("" + button.getCurrentValue(),
-						IMAGE_SIZE * button.getColumn() + 14, IMAGE_SIZE
-								* (button.getRow() + 5) + IMAGE_SIZE / 2);
+				g.drawString("" + value, IMAGE_SIZE * column + 14, IMAGE_SIZE
+						* (row + 5) + IMAGE_SIZE / 2);
 		}
 
 		/**
-		 * Repaint the tile map with the new/changed images, paths, walls,
-		 * doors, characters, and buttons
+		 * Draws the part of the map that does not move (the grid, the level
+		 * pictures and the yes and no above the doors) into the background
+		 * layer, as of the snapshot being drawn
 		 * 
-		 * @param g The Graphics context
+		 * @param g The graphics context of the background layer
+		 * @param area The area that needs to be redrawn
 		 */
-		public void paintComponent(Graphics g)
+		public void paintBackground(Graphics g, Rectangle area)
 		{
-			super.paintComponent(g);
+			// Only the tiles inside the area are redrawn
+			int firstRow = Math.max(shown.getFirstKeptRow(), area.y
+					/ IMAGE_SIZE);
+			int lastRow = Math.min(shown.getLastKeptRow(),
+					(area.y + area.height - 1) / IMAGE_SIZE);
+			int firstColumn = Math.max(shown.getFirstKeptColumn(), area.x
+					/ IMAGE_SIZE);
+			int lastColumn = Math.min(shown.getLastKeptColumn(),
+					(area.x + area.width - 1) / IMAGE_SIZE);
 
 			// Redraw the grid with the corresponding array
-			for (int row = 0; row < grid.length; row++)
-				for (int column = 0; column < grid[0].length; column++)
+			for (int row = firstRow; row <= lastRow; row++)
+				for (int column = firstColumn; column <= lastColumn; column++)
 				{
 					// Put a path underneath everywhere
-					g.drawImage(gridImages[EMPTY], column * IMAGE_SIZE, row
-							* IMAGE_SIZE, this);
-					char imageNo = grid[row][column];
-					g.drawImage(gridImages[imageNo], column * IMAGE_SIZE, row
-							* IMAGE_SIZE, this);
+					sprites.draw(g, GameEngine.EMPTY, column * IMAGE_SIZE, row
+							* IMAGE_SIZE);
+					int imageNo = shown.getTile(row, column);
+					if (imageNo != GameEngine.EMPTY)
+						sprites.draw(g, imageNo, column * IMAGE_SIZE, row
+								* IMAGE_SIZE);
 
 				}
 
 			// Draw all images of the level using the image's index within the
 			// 2D array along with its positions from another parallel 2D array
 			// (imagePositions)
+			int level = shown.getLevel();
 			for (int image = 0; levelImages[level - 1][image] != null; image++)
 			{
-				g.drawImage(levelImages[level - 1][image],
+				drawImage(g, levelImages[level - 1][image],
 						imagePositions[level - 1][image * 2] * IMAGE_SIZE,
-						imagePositions[level - 1][image * 2 + 1] * IMAGE_SIZE,
-						this);
+						imagePositions[level - 1][image * 2 + 1] * IMAGE_SIZE);
 			}
 
 			// Draw the yes and no above the doors
+			g.setColor(getForeground());
+			g.setFont(getFont());
 			g.drawString("YES", 11 * IMAGE_SIZE + 5, IMAGE_SIZE);
 			g.drawString("NO", 13 * IMAGE_SIZE + 9, IMAGE_SIZE);
+		}
 
-			// Draw the appropriate states of all three buttons
-			g.drawImage(buttonImages[redButton.drawButton()],
-					redButton.getColumn() * IMAGE_SIZE, redButton.getRow()
-							* IMAGE_SIZE, this);
-			g.drawImage(buttonImages[greenButton.drawButton()],
-					greenButton.getColumn() * IMAGE_SIZE, greenButton.getRow()
-							* IMAGE_SIZE, this);
-			g.drawImage(buttonImages[blueButton.drawButton()],
-					blueButton.getColumn() * IMAGE_SIZE, blueButton.getRow()
-							* IMAGE_SIZE, this);
-
-			// Deals the the appearance of disappearance of certain elements
-			// Draws the question mark if the buttons are at the correct value
-			if (qMark.isVisible() && levelCompleted)
-				g.drawImage(questionMark, qMark.getColumn() * IMAGE_SIZE - 16,
-						qMark.getRow() * IMAGE_SIZE - 16, this);
-
-			// Draws a palette if the level needs it
-			if (palette)
-				g.drawImage(paintPalette, IMAGE_SIZE * paletteColumn,
-						IMAGE_SIZE * paletteRow, this);
-
-			// Draws the actual question if the question screen is on
-			if (questionScreen)
-				g.drawImage(questionImages[level], IMAGE_SIZE * 8,
-						IMAGE_SIZE * 7, this);
-
-			// Draw the moving player on its appropriate spot within the grid
-			g.drawImage(playerImage[currentPaint], currentColumn * IMAGE_SIZE
-					- 16, (currentRow) * IMAGE_SIZE - 26, this);
-
-			// Draws the current value of each button
-			g.setColor(Color.black);
-			g.setFont(BUTTON_FONT);
-			drawNumbers(g, redButton);
-			drawNumbers(g, greenButton);
-			drawNumbers(g, blueButton);
+		/**
+		 * Repaint the tile map with the new/changed images, paths, walls,
+		 * doors, characters, and buttons. With active rendering the game
+		 * loop draws everything on its own thread, so Swing draws nothing
+		 * (the game is not drawn from two threads at once)
+		 * 
+		 * @param g The Graphics context
+		 */
+		public void paintComponent(Graphics g)
+		{
+			if (activeRendering)
+				return;
+			super.paintComponent(g);
+			paintGame(g);
+		}
 
-			// Draws the credits on the last level
-			if (level == 8)
-				g.drawString("Game by: Jiawen Wang", IMAGE_SIZE * 10 + 16,
-						IMAGE_SIZE * 13 + 10);
+		/**
+		 * Draws the whole game for the game loop (active rendering)
+		 * 
+		 * @param g The graphics context of the frame's back buffer
+		 */
+		public void render(Graphics g)
+		{
+			g.setColor(getBackground());
+			g.fillRect(0, 0, getWidth(), getHeight());
+			g.setColor(getForeground());
+			g.setFont(getFont());
+			paintGame(g);
+		}
 
-			// /////Controls all screens
-			// Display the warning message if the player has not yet completed
-			// the level.
-			if (warningMessage)
-				g.drawImage(warningImage, IMAGE_SIZE * 8, IMAGE_SIZE * 4, this);
-
-			// Handles the drawing of all the menu screens including the
-			// level-not-completed warning screen, hint screens for each level,
-			// whether or not the sound is on, the help screen, the intro
-			// screen, and the final results screen
-			if (hintScreenOn)
+		/**
+		 * Moves the game on by one tick of the game loop (active rendering):
+		 * handles the keys and clicks since the last tick, takes the next
+		 * walking step when it is due and moves the animations on. The game
+		 * loop's thread is the logic thread with active rendering
+		 */
+		public void tick()
+		{
+			ticks++;
+			handleInputs();
+			if (walk != null && ++walkTicks * 1000 >= WALK_DELAY
+					* GameLoop.TICKS_PER_SECOND)
 			{
-				g.drawImage(hintOn, 0, 0, this);
-				g.drawImage(hintImages[level], IMAGE_SIZE * 8, IMAGE_SIZE * 4,
-						this);
+				walkTicks = 0;
+				walkStep();
 			}
-			else
-				g.drawImage(hintOff, 0, 0, this);
-			if (soundOn)
+			animationTime += 1000 / GameLoop.TICKS_PER_SECOND;
+		}
+
+		/**
+		 * Runs the game without active rendering: handles the keys and clicks
+		 * as they are queued and takes the walking steps on time, sleeping in
+		 * between
+		 */
+		private void runLogic()
+		{
+			while (!engineFailed)
 			{
-				g.drawImage(onSound, 0, 0, this);
+				handleInputs();
+				if (walk == null)
+					LockSupport.park(this);
+				else
+				{
+					long wait = nextWalk - System.nanoTime();
+					if (wait > 0)
+						LockSupport.parkNanos(this, wait);
+					else
+					{
+						nextWalk = System.nanoTime() + WALK_DELAY * 1000000L;
+						walkStep();
+					}
+				}
 			}
-			else
-				g.drawImage(offSound, 0, 0, this);
-			if (helpScreenOn)
+		}
+
+		/**
+		 * Handles every key and click in the queue, in the order they came.
+		 * Only called by the logic thread
+		 */
+		private void handleInputs()
+		{
+			long input;
+			while ((input = inputs.poll()) != InputQueue.EMPTY)
 			{
-				g.drawImage(helpOn, 0, 0, this);
-				g.drawImage(helpScreen, IMAGE_SIZE * 3 - 16, IMAGE_SIZE * 3,
-						this);
+				if (input >= 0)
+				{
+					// Any key stops walking to a clicked tile
+					stopWalking();
+					keys.handleKey((int) input);
+				}
+				else
+				{
+					// A click holds the tile's row in its high half and its
+					// column in its low half
+					long tile = -1 - input;
+					clickTile((int) (tile >>> 32), (int) tile);
+				}
 			}
-			else
-				g.drawImage(helpOff, 0, 0, this);
-			if (introOn)
-				g.drawImage(introScreen, 0, 0, this);
-			if (resultOn)
-				g.drawImage(results[colourResult], 0, 0, this);
-
-		} // paint component method
+		}
 
-		public void newLevel(String mazeFileName)
+		/**
+		 * Puts a key or click in the queue for the logic thread and wakes it.
+		 * Only called by Swing's thread
+		 * 
+		 * @param input A key code, or a click as a negative number
+		 */
+		private void queueInput(long input)
 		{
-			// Set the default values for each level (no palette, no paint)
-			palette = false;
-			currentPaint = NO_PAINT;
+			if (inputs.offer(input) && logic != null)
+				LockSupport.unpark(logic);
+		}
 
-			// Each of the following will levels will have its own starting
-			// column, starting row, button position and values, question
-			// mark position, and possible palette positions
-			if (level == 1 || level == 3)
-			{
-				currentRow = 5;
-				currentColumn = 5;
-				redButton = new Button(10, 17, 5, 2, 1);
-				greenButton = new Button(12, 17, 5, 1, 3);
-				blueButton = new Button(14, 17, 5, 2, 5);
-				qMark = new QuestionMark(17, 18);
+		/**
+		 * Draws the frame of an animated picture for the frame being drawn
+		 * 
+		 * @param g The graphics context
+		 * @param animation The animation's frames
+		 * @param x Where to draw the left side
+		 * @param y Where to draw the top
+		 */
+		private void drawAnimated(Graphics g, SpriteAnimation animation,
+				int x, int y)
+		{
+			if (animation != null)
+				drawImage(g, animation.getFrameAt(frameTime), x, y);
+		}
 
-			}
-			else if (level == 2)
+		/**
+		 * Tells the animation clock where an animated sprite is, so that its
+		 * box is repainted when its frame changes. With active rendering
+		 * every frame is drawn whole, so there is nothing to tell
+		 * 
+		 * @param sprite The sprite's number for the clock
+		 * @param animation The animation it shows (null if it is not showing)
+		 * @param x Where its left side is in the window (before scaling)
+		 * @param y Where its top is in the window (before scaling)
+		 * @param hidden Whether or not it is completely behind a menu screen
+		 */
+		private void showAnimated(int sprite, SpriteAnimation animation,
+				int x, int y, boolean hidden)
+		{
+			if (activeRendering)
+				return;
+			if (animation == null || hidden)
 			{
-				currentRow = 2;
-				currentColumn = 22;
-				redButton = new Button(8, 20, 5, 2, 1);
-				greenButton = new Button(12, 20, 5, 5, 3);
-				blueButton = new Button(16, 20, 5, 3, 5);
-				qMark = new QuestionMark(17, 18);
+				clock.hide(sprite);
+				return;
 			}
-			else if (level == 4)
-			{
-
-				currentRow = 8;
-				currentColumn = 10;
-				redButton = new Button(10, 21, 5, 1, 1);
-				greenButton = new Button(12, 21, 5, 3, 3);
-				blueButton = new Button(14, 21, 5, 4, 5);
-				qMark = new QuestionMark(17, 18);
-				palette = true;
-				paletteRow = 7;
-				paletteColumn = 7;
-				currentPaint = RED_PAINT;
 
-			}
-			if (level == 5)
-			{
-				currentRow = 5;
-				currentColumn = 5;
-				redButton = new Button(7, 17, 9, 5, 1);
-				greenButton = new Button(12, 17, 9, 3, 3);
-				blueButton = new Button(17, 17, 9, 7, 5);
-				qMark = new QuestionMark(12, 5);
+			// The box is grown to whole screen pixels, plus one for where
+			// the resized frame lands
+			double scale = camera.getScale();
+			int left = (int) Math.floor(x * scale);
+			int top = (int) Math.floor(y * scale);
+			clock.show(sprite, animation, frameTime, left, top, (int) Math
+					.ceil(animation.getWidth() * scale) + 1, (int) Math
+					.ceil(animation.getHeight() * scale) + 1);
+		}
 
-			}
-			if (level == 6)
-			{
-				currentRow = 2;
-				currentColumn = 1;
-				redButton = new Button(22, 4, 20, 5, 1);
-				greenButton = new Button(22, 10, 20, 13, 3);
-				blueButton = new Button(22, 16, 20, 8, 5);
-				qMark = new QuestionMark(22, 5);
+		/**
+		 * Draws a picture at its map position, from a copy already resized
+		 * for the scale the game is drawn at (see ScaledImageCache)
+		 * 
+		 * @param g The graphics context
+		 * @param image The picture
+		 * @param x Where to draw the left side
+		 * @param y Where to draw the top
+		 */
+		private void drawImage(Graphics g, Image image, int x, int y)
+		{
+			scaledImages.draw(g, image, x, y, this);
+		}
 
-			}
-			if (level == 7)
-			{
-				currentRow = 5;
-				currentColumn = 5;
-				redButton = new Button(10, 17, 26, 18, 1);
-				greenButton = new Button(12, 17, 26, 7, 3);
-				blueButton = new Button(14, 17, 26, 2, 5);
-				qMark = new QuestionMark(9, 8);
+		/**
+		 * Draws the game as of the latest snapshot, scaled to the window
+		 * 
+		 * @param g The Graphics context
+		 */
+		private void paintGame(Graphics g)
+		{
+			// Everything is drawn at map size; the graphics context does the
+			// scaling
+			long start = System.nanoTime();
+			RenderSnapshot state = snapshot;
+			camera.follow(getWidth(), getHeight(), state.getNoOfRows(),
+					state.getNoOfColumns(), state.getPlayerRow(),
+					state.getPlayerColumn());
+			viewX = camera.getX();
+			viewY = camera.getY();
+			viewScale = camera.getScale();
+			if (activeRendering)
+				frameTime = animationTime;
+			else
+				frameTime = clock.getTime();
+			Graphics2D scaled = (Graphics2D) g.create();
+			scaled.scale(camera.getScale(), camera.getScale());
+			paintView(scaled, state);
+			scaled.dispose();
+			metrics.framePainted(start, state.getSequence());
+		}
 
-			}
-			if (level == 8 || level == 9)
+		/**
+		 * Draws the map, buttons, player and menu screens of a snapshot, in
+		 * the camera's view
+		 * 
+		 * @param g The Graphics context, scaled to the window
+		 * @param state The snapshot to draw
+		 */
+		private void paintView(Graphics g, RenderSnapshot state)
+		{
+			// Only the intro screen can be shown while the rest is loading
+			if (!assetsLoaded)
 			{
-				currentRow = 5;
-				currentColumn = 5;
-				redButton = new Button(10, 17, 9, 2, 1);
-				greenButton = new Button(12, 17, 9, 2, 3);
-				blueButton = new Button(14, 17, 9, 3, 5);
-				qMark = new QuestionMark(9, 8);
-				palette = true;
-				paletteColumn = 6;
-				paletteRow = 5;
+				drawImage(g, introScreen, 0, 0);
+				return;
 			}
-			// The final free draw mode
-			if (level == 10)
+
+			// Bring the background layer up to date with the latest snapshot.
+			// Its changed tiles are only enough if it comes right after the
+			// one drawn last; if any were skipped the whole layer is redrawn
+			if (state != shown)
 			{
-				currentRow = 5;
-				currentColumn = 5;
-				redButton = new Button(-1, 17, 99, 100, 1);
-				greenButton = new Button(-1, 18, 99, 100, 3);
-				blueButton = new Button(-1, 19, 99, 100, 5);
-				qMark = new QuestionMark(9, 8);
-				palette = true;
-				paletteColumn = 1;
-				paletteRow = 2;
+				if (!state.follows(shown) || state.isEverythingChanged())
+					background.invalidateAll();
+				else
+					for (int tile = 0; tile < state.getNoOfChangedTiles(); tile++)
+						background.invalidateTile(state.getChangedRow(tile),
+								state.getChangedColumn(tile));
+				shown = state;
 			}
 
-			// First hides the question mark until the user has dialed the
-			// correct numbers
-			qMark.makeInvisible();
-			qMark.unobtain();
+			// The menu screens go over everything else. If they cover the
+			// whole area being repainted (the intro and results screens do
+			// on maps that fit the window), the map is not drawn at all
+			stackOverlays(state);
+
+			// The animated sprites on the map are repainted by the animation
+			// clock unless they are hidden
+			int playerX = state.getPlayerColumn() * IMAGE_SIZE - 16
+					- camera.getX();
+			int playerY = state.getPlayerRow() * IMAGE_SIZE - 26
+					- camera.getY();
+			showAnimated(PLAYER_SPRITE, playerAnimations[state
+					.getCurrentPaint()], playerX, playerY, overlays.hides(
+					playerX, playerY, 60, 60));
+			int questionMarkX = state.getQuestionMarkColumn() * IMAGE_SIZE
+					- 16 - camera.getX();
+			int questionMarkY = state.getQuestionMarkRow() * IMAGE_SIZE - 16
+					- camera.getY();
+			showAnimated(QUESTION_MARK_SPRITE,
+					state.isQuestionMarkShowing() ? questionMarkAnimation
+							: null, questionMarkX, questionMarkY, overlays
+							.hides(questionMarkX, questionMarkY, 64, 64));
+
+			Rectangle visible = g.getClipBounds();
+			if (visible == null)
+				visible = new Rectangle(0, 0, camera.getWidth(), camera
+						.getHeight());
+			if (!overlays.hides(visible.x, visible.y, visible.width,
+					visible.height))
+				paintMap(g, state, visible);
+			overlays.paint(g, this);
+
+		} // paint view method
 
-			// Every level starts off with the level not completed
-			levelCompleted = false;
+		/**
+		 * Draws the map, buttons and player of a snapshot, in the camera's
+		 * view. Sprites completely behind a menu screen are skipped
+		 * 
+		 * @param g The Graphics context, scaled to the window
+		 * @param state The snapshot to draw
+		 * @param visible The part of the window being repainted
+		 */
+		private void paintMap(Graphics g, RenderSnapshot state,
+				Rectangle visible)
+		{
+			// Only the part of the map around the player is drawn, and only
+			// what is inside the area being repainted
+			int viewLeft = camera.getX();
+			int viewTop = camera.getY();
+
+			// The walls, doors, paths and level pictures are all drawn at once
+			// from the background layer
+			background.paint(g, this, viewLeft, viewTop, camera.getWidth(),
+					camera.getHeight());
+
+			// Everything on the map is drawn at its map position, moved by
+			// the view
+			g.translate(-viewLeft, -viewTop);
+
+			// Draw the appropriate states of all buttons
+			for (int button = 0; button < state.getNoOfButtons(); button++)
+				if (isShown(visible, state.getButtonColumn(button)
+						* IMAGE_SIZE, state.getButtonRow(button) * IMAGE_SIZE,
+						IMAGE_SIZE, IMAGE_SIZE))
+					sprites.draw(g,
+							BUTTON_SPRITES + state.getButtonSprite(button),
+							state.getButtonColumn(button) * IMAGE_SIZE,
+							state.getButtonRow(button) * IMAGE_SIZE);
 
-			// Will handle all the screens/options that can be turned on and off
-			warningMessage = false;
-			hintScreenOn = false;
-			questionScreen = false;
-			helpScreenOn = false;
-			resultOn = false;
+			// Deals the the appearance of disappearance of certain elements
+			// Draws the question mark if the buttons are at the correct value
+			if (state.isQuestionMarkShowing())
+				drawAnimated(g, questionMarkAnimation,
+						state.getQuestionMarkColumn() * IMAGE_SIZE - 16,
+						state.getQuestionMarkRow() * IMAGE_SIZE - 16);
 
-			// Load up the file for the particular level
-			try
-			{
-				// Find the size of the file first to size the array
-				// Standard Java file input (better than hsa.TextInputFile)
-				BufferedReader mazeFile = new BufferedReader(new FileReader(
-						mazeFileName));
+			// Draws a palette if the level needs it
+			if (state.hasPalette()
+					&& isShown(visible, IMAGE_SIZE * state.getPaletteColumn(),
+							IMAGE_SIZE * state.getPaletteRow(), IMAGE_SIZE,
+							IMAGE_SIZE))
+				sprites.draw(g, PALETTE_SPRITE,
+						IMAGE_SIZE * state.getPaletteColumn(), IMAGE_SIZE
+								* state.getPaletteRow());
+
+			// Draws the actual question if the question screen is on (it
+			// stays in the same place in the window)
+			int level = state.getLevel();
+			if (state.isQuestionScreenOn())
+				drawImage(g, questionImages[level], viewLeft + IMAGE_SIZE * 8,
+						viewTop + IMAGE_SIZE * 7);
 
-				// Assume file has at least 1 line
-				int noOfRows = 1;
-				String rowStr = mazeFile.readLine();
-				int noOfColumns = rowStr.length();
+			// Draw the moving player on its appropriate spot within the grid
+			int currentPaint = state.getCurrentPaint();
+			drawAnimated(g, playerAnimations[currentPaint],
+					state.getPlayerColumn() * IMAGE_SIZE - 16,
+					state.getPlayerRow() * IMAGE_SIZE - 26);
 
-				while ((mazeFile.readLine()) != null)
-				{
-					noOfRows++;
-				}
-				mazeFile.close();
+			// Draws the current value of each button (level 3 writes them
+			// five rows further down)
+			g.setColor(Color.black);
+			g.setFont(BUTTON_FONT);
+			for (int button = 0; button < state.getNoOfButtons(); button++)
+				if (isShown(visible, state.getButtonColumn(button)
+						* IMAGE_SIZE, state.getButtonRow(button) * IMAGE_SIZE,
+						IMAGE_SIZE, IMAGE_SIZE * 6))
+					drawNumbers(g, state, button);
 
-				// Set up the array
-				grid = new char[noOfRows][noOfColumns];
+			// Draws the credits on the last level
+			if (level == 8)
+				g.drawString("Game by: Jiawen Wang", IMAGE_SIZE * 10 + 16,
+						IMAGE_SIZE * 13 + 10);
+			g.translate(viewLeft, viewTop);
+		}
 
-				// Load in the file data into the grid (Need to re-open first)
-				mazeFile = new BufferedReader(new FileReader(mazeFileName));
-				for (int row = 0; row < grid.length; row++)
-				{
-					rowStr = mazeFile.readLine();
-					for (int column = 0; column < grid[0].length; column++)
-					{
-						grid[row][column] = (char) (rowStr.charAt(column) - '0');
-					}
-				}
+		/**
+		 * Returns whether or not a rectangle on the map is inside the area
+		 * being repainted and not hidden behind a menu screen
+		 * 
+		 * @param visible The part of the window being repainted
+		 * @param left The rectangle's left side on the map
+		 * @param top The rectangle's top on the map
+		 * @param width The rectangle's width
+		 * @param height The rectangle's height
+		 * @return whether or not any of it would show
+		 */
+		private boolean isShown(Rectangle visible, int left, int top,
+				int width, int height)
+		{
+			return camera.isVisible(visible, left, top, width, height)
+					&& !overlays.hides(left - camera.getX(), top
+							- camera.getY(), width, height);
+		}
 
+		/**
+		 * Puts the menu screens a snapshot shows on the overlay stack, from
+		 * the bottom up: the level-not-completed warning screen, hint screens
+		 * for each level, whether or not the sound is on, the help screen,
+		 * the intro screen, and the final results screen
+		 * 
+		 * @param state The snapshot to draw
+		 */
+		private void stackOverlays(RenderSnapshot state)
+		{
+			int level = state.getLevel();
+			overlays.clear();
+			if (state.isWarningMessageOn())
+				overlays.add(warningImage, IMAGE_SIZE * 8, IMAGE_SIZE * 4);
+			if (state.isHintScreenOn())
+			{
+				overlays.add(hintOn, 0, 0);
+				overlays.add(hintImages[level], IMAGE_SIZE * 8, IMAGE_SIZE * 4);
 			}
-			catch (IOException e)
+			else
+				overlays.add(hintOff, 0, 0);
+			if (state.isSoundOn())
+				overlays.add(onSound, 0, 0);
+			else
+				overlays.add(offSound, 0, 0);
+			int helpLayer = -1;
+			if (state.isHelpScreenOn())
 			{
-				JOptionPane.showMessageDialog(this, mazeFileName
-						+ " not a valid maze file",
-						"Message - Invalid Maze File",
-						JOptionPane.WARNING_MESSAGE);
-				System.exit(0);
+				overlays.add(helpOn, 0, 0);
+				if (helpScreenAnimation != null)
+					helpLayer = overlays.addMoving(helpScreenAnimation
+							.getFrameAt(frameTime), IMAGE_SIZE * 3 - 16,
+							IMAGE_SIZE * 3);
 			}
+			else
+				overlays.add(helpOff, 0, 0);
+			if (state.isIntroOn())
+				overlays.add(introScreen, 0, 0);
+			if (state.isResultOn())
+				overlays.add(results[state.getColourResult()], 0, 0);
+
+			// The help screen keeps animating unless something covers it
+			showAnimated(HELP_SCREEN_SPRITE, helpLayer < 0 ? null
+					: helpScreenAnimation, IMAGE_SIZE * 3 - 16, IMAGE_SIZE * 3,
+					overlays.isHidden(helpLayer));
 		}
 
 		/**
-		 * Restarts the game
+		 * Plans a walk from the player to a tile and starts walking. Clicking
+		 * a wall or a tile that cannot be reached stops any walk
+		 * 
+		 * @param row The row of the tile that was clicked
+		 * @param column The column of the tile that was clicked
 		 */
-		public void restartGame()
+		private void clickTile(int row, int column)
 		{
+			if (!assetsLoaded)
+				return;
 
-			// Sets all colour choices to zero to prepare for a new result
-			for (int choice = 1; choice < choiceScores.length; choice++)
+			walk = pathFinder.findPath(row, column);
+			if (walk == null || walk.isEmpty())
 			{
-				choiceScores[choice] = 0;
+				stopWalking();
+				return;
 			}
-
-			// Sets the level to one and turns off the result screen
-			level = 1;
-			resultOn = false;
-			newLevel(mapFiles[level - 1]);
-
+			walkStep = 0;
+			walkRow = engine.getPlayerRow();
+			walkColumn = engine.getPlayerColumn();
+			walkTargetRow = row;
+			walkTargetColumn = column;
+			walkTicks = 0;
+			nextWalk = System.nanoTime() + WALK_DELAY * 1000000L;
 		}
 
-		// Inner class to handle key events
-		private class KeyHandler extends KeyAdapter
+		/**
+		 * Takes the next step of the walk. If the player is not where the walk
+		 * expects (the map changed under it), the rest of the walk is planned
+		 * again
+		 */
+		private void walkStep()
 		{
-			public void keyPressed(KeyEvent event)
+			if (walk == null)
+				return;
+			if (engine.getPlayerRow() != walkRow
+					|| engine.getPlayerColumn() != walkColumn)
 			{
-				// This handles the instant disappearing of numbers as soon as
-				// the player moves (level 6). Sets the whole grid (save for the
-				// walls on four side) to zero
-				if (level == 6)
-				{
-					for (int row = 2; row < grid.length - 1; row++)
-					{
-						for (int column = 1; column < grid[row].length - 1; column++)
-						{
-							if (grid[row][column] == 1)
-								grid[row][column] = 0;
-						}
-					}
-				}
+				clickTile(walkTargetRow, walkTargetColumn);
+				if (walk == null)
+					return;
+			}
 
-				// Will move the player left, right or down based on the arrow
-				// key
-				// pressed if there is no wall in that direction
-				if (event.getKeyCode() == KeyEvent.VK_LEFT
-						&& grid[currentRow][currentColumn - 1] != 1)
-				{
-					currentColumn--;
-				}
+			Input next = walk.get(walkStep++);
+			if (next == Input.LEFT)
+				walkColumn--;
+			else if (next == Input.RIGHT)
+				walkColumn++;
+			else if (next == Input.UP)
+				walkRow--;
+			else
+				walkRow++;
+			if (walkStep == walk.size())
+				stopWalking();
+			keys.handleKey(next.getKeyCode());
+		}
 
-				if (event.getKeyCode() == KeyEvent.VK_RIGHT
-						&& grid[currentRow][currentColumn + 1] != 1)
-				{
-					currentColumn++;
-				}
+		/**
+		 * Stops walking to a clicked tile
+		 */
+		private void stopWalking()
+		{
+			walk = null;
+		}
 
-				if (event.getKeyCode() == KeyEvent.VK_DOWN
-						&& grid[currentRow + 1][currentColumn] != 1)
-				{
-					currentRow += 1;
-				}
+		/**
+		 * Adds a key the game just handled to the input journal. If the
+		 * journal cannot be written, recording stops
+		 * 
+		 * @param keyCode The key that was handled
+		 */
+		private void recordKey(int keyCode)
+		{
+			long tick = ticks;
+			if (!activeRendering)
+				tick = (System.nanoTime() - startTime) / GameLoop.TICK_NANOS;
+			try
+			{
+				journal.record(tick, keyCode, engine);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Input journal stopped: " + e.getMessage());
+				journal = null;
+			}
+		}
 
-				// Pressing up will either signify that the player wants to move
-				// up or that they want to enter a door.
-				if (event.getKeyCode() == KeyEvent.VK_UP
-						&& grid[currentRow - 1][currentColumn] != 1)
-				{
+		/**
+		 * Tells the player a map could not be read and closes the game
+		 * 
+		 * @param e What went wrong while reading the map
+		 */
+		private void showInvalidMap(UncheckedIOException e)
+		{
+			JOptionPane.showMessageDialog(this, e.getMessage(),
+					"Message - Invalid Maze File", JOptionPane.WARNING_MESSAGE);
+			System.exit(0);
+		}
 
-					currentRow -= 1;
-
-					// This will handle the movement through the doors
-
-					// Displays a warning message if the player is trying to
-					// enter a door without having completed the level or
-					// obtaining the question mark
-					if (currentRow == 1
-							&& (currentColumn == 11 || currentColumn == 13)
-							&& (!levelCompleted || !qMark.isObtained()))
-						warningMessage = true;
-					// If the player has obtained the question mark, entering
-					// either the 'yes' door or 'no' door will add one to the
-					// appropriate colour and enters the next level
-					else if (levelCompleted && qMark.isObtained())
-					{
-						if (currentRow == 1 && currentColumn == 11)
-						{
-							choiceScores[yesChoice[level]]++;
-							level++;
-							newLevel(mapFiles[level - 1]);
-						}
-						else if (currentRow == 1 && currentColumn == 13)
-						{
-							choiceScores[noChoice[level]]++;
-							level++;
-							newLevel(mapFiles[level - 1]);
-						}
-					}
+		/**
+		 * Publishes a snapshot of the engine after a step for drawing, and
+		 * repaints only what changed since the previous one: the player's
+		 * old and new spots, any buttons pressed now or before, the question
+		 * mark and any changed tiles. A menu screen opening or closing
+		 * changes the whole area. Only called by the logic thread
+		 */
+		private void publish()
+		{
+			RenderSnapshot previous = snapshot;
+			RenderSnapshot next = new RenderSnapshot(engine, previous);
+			engine.getChanges().clear();
+			snapshot = next;
+			if (previous == null)
+				return;
+
+			// When the view scrolls everything in the window moves
+			previousCamera.follow(getWidth(), getHeight(),
+					previous.getNoOfRows(), previous.getNoOfColumns(),
+					previous.getPlayerRow(), previous.getPlayerColumn());
+			shownCamera.follow(getWidth(), getHeight(), next.getNoOfRows(),
+					next.getNoOfColumns(), next.getPlayerRow(),
+					next.getPlayerColumn());
+
+			if (next.isEverythingChanged()
+					|| next.getScreenState() != previous.getScreenState()
+					|| !shownCamera.sameView(previousCamera))
+				damage.markAll();
+			else
+				for (int tile = 0; tile < next.getNoOfChangedTiles(); tile++)
+					damage.markTile(next.getChangedRow(tile),
+							next.getChangedColumn(tile));
 
-				}
+			if (next.getPlayerRow() != previous.getPlayerRow()
+					|| next.getPlayerColumn() != previous.getPlayerColumn()
+					|| next.getCurrentPaint() != previous.getCurrentPaint())
+			{
+				markPlayer(previous.getPlayerRow(), previous.getPlayerColumn());
+				markPlayer(next.getPlayerRow(), next.getPlayerColumn());
+			}
 
-				if (event.getKeyCode() == KeyEvent.VK_SPACE)
-				{
-					// Will add values to the appropriate button
-					redButton.pressButton(currentRow, currentColumn);
-					blueButton.pressButton(currentRow, currentColumn);
-					greenButton.pressButton(currentRow, currentColumn);
-
-					// If the player is standing on any of the palette squares
-					// (the palette's square position or the three squares
-					// below it), the player will be painted that particular
-					// colour
-					if (currentColumn == paletteColumn
-							&& currentRow == paletteRow)
-						currentPaint = RED_PAINT;
-					else if (currentColumn == paletteColumn
-							&& currentRow == paletteRow + 1)
-						currentPaint = GREEN_PAINT;
-					else if (currentColumn == paletteColumn
-							&& currentRow == paletteRow + 2)
-						currentPaint = BLUE_PAINT;
-					else if (currentColumn == paletteColumn
-							&& currentRow == paletteRow + 3)
-						currentPaint = NO_PAINT;
-
-					// Paints the grid the colour the character is, erases if
-					// the character is not painted
-					if (currentPaint == RED_PAINT || currentPaint == BLUE_PAINT
-							|| currentPaint == GREEN_PAINT)
-					{
-						grid[currentRow][currentColumn] = (char) currentPaint;
-						bloop.play();
-					}
-					else if (palette)
-						grid[currentRow][currentColumn] = 0;
+			for (int button = 0; button < next.getNoOfButtons(); button++)
+				if (next.isButtonPressed(button)
+						|| button < previous.getNoOfButtons()
+						&& previous.isButtonPressed(button))
+					markButton(next, button);
 
-					// When the player figures out to 'paint outside the box',
-					// the whole grid will turn the currently painted colour,
-					// revealing the numbers required for level completion
-					if (level == 4)
-					{
-						// Player needs to be outside of the already-drawn box
-						if (currentPaint != 0
-								&& (currentColumn < 6 || currentColumn > 18
-										|| currentRow < 5 || currentRow > 12))
-						{
-							// Paints the whole map the colour except the
-							// numbers tiles that will spell out the clue
-							for (int row = 2; row < grid.length - 1; row++)
-								for (int column = 1; column < grid[row].length - 1; column++)
-									if (grid[row][column] != HIDDEN_PATH)
-										grid[row][column] = currentPaint;
-						}
-					}
+			if (next.isQuestionMarkShowing() != previous
+					.isQuestionMarkShowing())
+				damage.markArea(next.getQuestionMarkColumn() * IMAGE_SIZE - 16,
+						next.getQuestionMarkRow() * IMAGE_SIZE - 16, 64, 64);
 
-				}
+			flushDamage();
+		}
 
-				if (event.getKeyCode() == KeyEvent.VK_H)
-				{
-					if (hintScreenOn)
-						hintScreenOn = false;
-					else
-					{
-						hintScreenOn = true;
-						hint.play();
-					}
+		/**
+		 * Repaints everything that was marked as changed, moved by the view
+		 * (Swing's repaint can be asked for from any thread). With active
+		 * rendering every frame is drawn whole, so the marks are just dropped
+		 */
+		public void flushDamage()
+		{
+			if (activeRendering)
+				damage.clear();
+			else
+				damage.flush(this, shownCamera.getX(), shownCamera.getY(),
+						shownCamera.getScale());
+		}
 
-				}
-				// Deals with the help screen
-				if (event.getKeyCode() == KeyEvent.VK_J)
-				{
-					if (helpScreenOn)
-						helpScreenOn = false;
-					else
-						helpScreenOn = true;
-					bloop.play();
+		/**
+		 * Marks the area the player is drawn over to be repainted (the ghost
+		 * is bigger than one tile and is drawn above and to the left of it)
+		 * 
+		 * @param row The row the player is standing on
+		 * @param column The column the player is standing on
+		 */
+		public void markPlayer(int row, int column)
+		{
+			damage.markArea(column * IMAGE_SIZE - 16, row * IMAGE_SIZE - 26,
+					60, 60);
+		}
 
-				}
-				// The level is completed and the question mark automatically
-				// shows up when all three buttons are at the correct value
-				if (redButton.isCorrectValue() && blueButton.isCorrectValue()
-						&& greenButton.isCorrectValue() && !qMark.isObtained())
-				{
-					qMark.makeVisible();
-					levelCompleted = true;
-				}
+		/**
+		 * Marks a button and the value written on it to be repainted
+		 * 
+		 * @param state The snapshot the button is in
+		 * @param button Which button changed
+		 */
+		public void markButton(RenderSnapshot state, int button)
+		{
+			int row = state.getButtonRow(button);
+			int column = state.getButtonColumn(button);
+			damage.markTile(row, column);
 
-				// Obtains the question mark if the player's position matches
-				// that of the questions mark, the level is is completed, and
-				// the question mark has not yet been obtained
-				if (currentColumn == qMark.getColumn()
-						&& currentRow == qMark.getRow() && levelCompleted
-						&& !qMark.isObtained())
-				{
-					qMark.makeInvisible();
-					qMark.obtain();
-					questionScreen = true;
-					bloop.play();
+			// Level 3 writes the values on the bottom wall instead
+			if (state.getLevel() == 3)
+				damage.markTile(row + 5, column);
+		}
 
-				}
+		// Inner class to handle key events
+		private class KeyHandler extends KeyAdapter
+		{
+			public void keyPressed(KeyEvent event)
+			{
+				// The key is handled by the logic thread (on the game loop's
+				// next tick with active rendering), and timed until a frame
+				// shows what it did
+				if (assetsLoaded)
+					metrics.keyPressed(event.getWhen(), snapshot.getSequence());
+				queueInput(event.getKeyCode());
+			}
 
-				// Restarts the level by resetting the map
-				if (event.getKeyCode() == KeyEvent.VK_R)
-				{
-					bloop.play();
-					newLevel(mapFiles[level - 1]);
-				}
+			/**
+			 * Updates the game for a key press. Only called by the logic
+			 * thread
+			 * 
+			 * @param keyCode The key that was pressed
+			 */
+			public void handleKey(int keyCode)
+			{
+				if (!assetsLoaded || engineFailed)
+					return;
 
-				// This will restart the game if the final result screen is on
-				// and the player presses 'N' for a new game
-				if (event.getKeyCode() == KeyEvent.VK_N && resultOn)
+				// Let the engine play the key
+				int events = 0;
+				try
 				{
-					bloop.play();
-					restartGame();
+					events = engine.step(Input.fromKeyCode(keyCode));
 				}
-
-				// Deals with level two's inverse function (switches walls and
-				// paths)
-				if (level == 2 && event.getKeyCode() == KeyEvent.VK_I)
+				catch (final UncheckedIOException e)
 				{
-					// Inverses the whole grid
-					for (int row = 2; row < grid.length - 1; row++)
+					// The game stops here and Swing shows the message
+					engineFailed = true;
+					SwingUtilities.invokeLater(new Runnable()
 					{
-						for (int column = 1; column < grid[row].length - 1; column++)
+						public void run()
 						{
-							// Turns all the ones of the array to zeroes and
-							// vice versa (leaving the doors alone)
-							if (grid[row][column] == 0)
-								grid[row][column] = 1;
-							else if (grid[row][column] == 1)
-								grid[row][column] = 0;
-
+							showInvalidMap(e);
 						}
-					}
-				}
-
-				// This will handle the looping and muting of the background
-				// music, which can be toggled on or off with the 'S' key
-				if (event.getKeyCode() == KeyEvent.VK_S)
-				{
-					if (soundOn)
-						soundOn = false;
-					else
-					{
-						soundOn = true;
-						backGroundSound.loop();
-					}
+					});
+					return;
 				}
-				if (!soundOn)
+				if (journal != null)
+					recordKey(keyCode);
+
+				// Play the sounds the step made and start or stop the music
+				if ((events & GameEngine.BLOOP) != 0)
+					effects.play(bloop);
+				if ((events & GameEngine.HINT_SOUND) != 0)
+					effects.play(hint);
+				if ((events & GameEngine.BUTTON_SOUND) != 0)
+					effects.play(buttonSound);
+				if ((events & GameEngine.MUSIC_ON) != 0)
+					backGroundSound.loop();
+				if ((events & GameEngine.MUSIC_OFF) != 0)
 					backGroundSound.stop();
 
-				// Will play a short pressing sound every time a button is
-				// pressed.
-				if ((redButton.isPressed() || greenButton.isPressed() || blueButton
-						.isPressed()) && soundOn)
-					buttonSound.play();
-
-				// This will handle level three's erasing of the pseudo buttons
-				// The button will disappear as soon as the player stands on it,
-				// setting that element in the grid array to zero
-				if (level == 3)
-				{
-					if (grid[currentRow][currentColumn] >= FAKE_RED_BUTTON
-							&& grid[currentRow][currentColumn] <= FAKE_BLUE_BUTTON)
-						grid[currentRow][currentColumn] = 0;
-				}
-
-				// Deals the with toggling of the hint, intro, warning, and
-				// questions screens which can all be turned off with the enter
-				// key
-				if (event.getKeyCode() == KeyEvent.VK_ENTER)
-				{
-					if (warningMessage || hintScreenOn || questionScreen
-							|| introOn)
-					{
-						warningMessage = false;
-						hintScreenOn = false;
-						introOn = false;
-						questionScreen = false;
-						bloop.play();
-					}
-					// The player will be taken to the free draw mode (level 10)
-					// if the final result screen is on and the player presses
-					// enter
-					if (resultOn)
-					{
-						level++;
-						resultOn = false;
-						newLevel(mapFiles[level - 1]);
-						bloop.play();
-					}
-				}
-
-				// When the player surpasses the number of levels, the player
-				// has completed the game and the personality results are
-				// calculated
-				if (level == NO_OF_LEVELS + 1)
-				{
-					resultOn = true;
-					if (choiceScores[RED_CHOICE] > choiceScores[GREEN_CHOICE]
-							&& choiceScores[RED_CHOICE] > choiceScores[BLUE_CHOICE])
-						colourResult = RED_CHOICE;
-					else if (choiceScores[GREEN_CHOICE] > choiceScores[BLUE_CHOICE])
-						colourResult = GREEN_CHOICE;
-					else
-						colourResult = BLUE_CHOICE;
-				}
-				// Repaints the grid after every press of a key
-				repaint();
+				// Catch the path finder up, then hand the new state to
+				// whatever draws it
+				pathFinder.update();
+				publish();
 			}
 		}
 	}
 
 	// Sets up the main frame for the Game
+	// Start with -active (or -Drgb.activeRendering=true) to have the game
+	// drawn by its own loop; -Drgb.buffers and -Drgb.fps change the number of
+	// buffers (2 or 3) and the frame rate. Start with -record and a file name
+	// (or -Drgb.record=file) to record the keys for ReplayDriver;
+	// -Drgb.keyframes changes how many keys there are between keyframes.
+	// -Drgb.metrics=file writes the frame, key and level timings to a file
+	// when the game closes (they can also be watched over JMX).
+	// In the free draw mode B fills the area under the player with their
+	// paint. Z undoes painting and Y redoes it; -Drgb.undoMemory changes
+	// how many bytes what can be undone may take up (a megabyte unless set).
+	// The game is scaled to fit the window when it is resized;
+	// -Drgb.wholeScales=true only scales it by whole numbers
 	public static void main(String[] args)
 	{
-		Game frame = new Game();
+		boolean activeRendering = Boolean.getBoolean("rgb.activeRendering");
+		String journalFile = System.getProperty("rgb.record");
+		for (int arg = 0; arg < args.length; arg++)
+			if (args[arg].equals("-active"))
+				activeRendering = true;
+			else if (args[arg].equals("-record") && arg + 1 < args.length)
+				journalFile = args[++arg];
+
+		// Recording starts before the frame is shown, since no key can reach
+		// the game until then
+		Game frame = new Game(activeRendering);
+		if (journalFile != null)
+		{
+			try
+			{
+				frame.startRecording(new File(journalFile));
+			}
+			catch (IOException e)
+			{
+				System.err.println("Cannot record to " + journalFile + ": "
+						+ e.getMessage());
+			}
+		}
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.pack();
 		frame.setVisible(true);
+		if (activeRendering)
+			frame.startGameLoop(Integer.getInteger("rgb.buffers", 2),
+					Integer.getInteger("rgb.fps", 60));
 	} // main method
 } // Game class
 
@@ -0,0 +1,1231 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The GameEngine class
+ *
+ * @author Jiawen
+ * Holds all the rules of RGB: the grid, the player, the buttons, the question
+ * mark, the menus and the personality scores. It has nothing to do with the
+ * screen, so the game can be played without one (for testing, or to run many
+ * games quickly). Each call to step() is one key press; whatever draws the
+ * game reads the state afterwards through the get and is methods
+ */
+public class GameEngine
+{
+	// The different constants that will aid in collision and help with
+	// repainting the grid based on the text post
+	public static final int EMPTY = 0;
+	public static final int WALL = 1;
+	public static final int DOOR = 2;
+
+	// The different constant values of the different paints and buttons
+	public static final int RED_PAINT = 10;
+	public static final int GREEN_PAINT = 11;
+	public static final int BLUE_PAINT = 12;
+	public static final int NO_PAINT = 0;
+	public static final int RED_BUTTON = 1;// Will help with the buttons to draw
+	public static final int GREEN_BUTTON = 3;
+	public static final int BLUE_BUTTON = 5;
+	public static final int FAKE_RED_BUTTON = 7;// Will help with the buttons
+												// to draw
+	public static final int FAKE_GREEN_BUTTON = 8;
+	public static final int FAKE_BLUE_BUTTON = 9;
+	public static final int HIDDEN_PATH = 4;
+
+	// The following constant integers and integer arrays help keep track of
+	// the player's response to calculate their personality colour at the
+	// very end
+	public static final int RED_CHOICE = 1;
+	public static final int BLUE_CHOICE = 2;
+	public static final int GREEN_CHOICE = 3;
+
+	// Total number of levels (not counting the free draw mode)
+	public static final int NO_OF_LEVELS = 8;
+
+	// The free draw mode comes after the results screen's level
+	public static final int FREE_DRAW_LEVEL = NO_OF_LEVELS + 2;
+
+	// What step() returns: the sounds the step made and whether the music
+	// should start or stop
+	public static final int BLOOP = 1;
+	public static final int BUTTON_SOUND = 2;
+	public static final int HINT_SOUND = 4;
+	public static final int MUSIC_ON = 8;
+	public static final int MUSIC_OFF = 16;
+
+	// Each level is described by its own file, which names the level's map
+	// and where everything starts (see LevelDescriptor)
+	private static final String[] levelFiles = { "level1.lvl", "level2.lvl",
+			"level3.lvl", "level4.lvl", "level5.lvl", "level6.lvl",
+			"level7.lvl", "level8.lvl", "level9.lvl", "level10.lvl" };
+	// All the maps compiled into one file (see LevelCompiler), and the
+	// level descriptors read so far
+	private LevelPack levels;
+
+	// Each element in this array pertains to which choice to add to each
+	// level if the player chooses the 'yes' door
+	private final int[] yesChoice = { 0, BLUE_CHOICE, RED_CHOICE, BLUE_CHOICE,
+			GREEN_CHOICE, BLUE_CHOICE, RED_CHOICE, BLUE_CHOICE, BLUE_CHOICE };
+	// Will keep track of the choice values to add to if the player chooses
+	// the 'no' door
+	private final int[] noChoice = { 0, RED_CHOICE, GREEN_CHOICE, RED_CHOICE,
+			RED_CHOICE, GREEN_CHOICE, GREEN_CHOICE, GREEN_CHOICE, 0 };
+
+	// Will keep track of the different scores (index 1 being red choice's
+	// total, index 2 being blue's, etc.).
+	private int[] choiceScores;
+	private int colourResult;
+
+	// Current level, whether or not level is finished
+	private int level = 1;
+	private boolean levelCompleted;
+
+	// Booleans that will handle the different menus
+	private boolean warningMessage, hintScreenOn, helpScreenOn, soundOn,
+			questionScreen, introOn, resultOn;
+
+	// Variables to keep track of the grid and the player position
+	private TileMap grid;
+	private int currentRow;
+	private int currentColumn;
+
+	private int currentPaint;
+
+	private int paletteRow, paletteColumn;
+	private boolean palette;
+
+	// The level's buttons and question mark. What is on each tile (a
+	// button's number, or one of the spots below) is kept in an index, so
+	// the player's tile is only looked up once, and the number of buttons at
+	// their correct value is kept up to date as they are pressed, so the
+	// level is finished when it reaches the number of buttons
+	private Button[] buttons;
+	private EntityIndex entities;
+	private int buttonsCorrect;
+	private int pressedButton;
+	private QuestionMark qMark;
+
+	// The tiles that changed during the last step
+	private GridChanges changes;
+
+	// The paint bucket of the free draw mode (reused for every fill)
+	private FloodFill bucket;
+
+	// The painting that can be undone and redone
+	private UndoJournal undoJournal;
+
+	// Where the level load times and trips over the whole grid are counted
+	// (null if the game is not being measured)
+	private Metrics metrics;
+
+	// What the entity index holds for the question mark and the palette's
+	// squares (the red square is PALETTE_SPOT, the squares below it count
+	// down from there in the order of paletteColours)
+	private final int QUESTION_MARK_SPOT = -2;
+	private final int PALETTE_SPOT = -3;
+	private final int[] paletteColours = { RED_PAINT, GREEN_PAINT,
+			BLUE_PAINT, NO_PAINT };
+
+	/**
+	 * Returns the descriptor file of every level, in order
+	 *
+	 * @return the names of the descriptor files
+	 */
+	public static String[] getLevelFiles()
+	{
+		return levelFiles.clone();
+	}
+
+	/**
+	 * Creates a new game, starting on level 1 with the intro and help screens
+	 * showing and the sound on
+	 *
+	 * @param levels The level pack the maps are read from
+	 */
+	public GameEngine(LevelPack levels)
+	{
+		this(levels, null);
+	}
+
+	/**
+	 * Creates a new game, starting on level 1 with the intro and help screens
+	 * showing and the sound on, that counts its level load times and trips
+	 * over the whole grid
+	 *
+	 * @param levels The level pack the maps are read from
+	 * @param metrics Where to count them (null for nowhere)
+	 */
+	public GameEngine(LevelPack levels, Metrics metrics)
+	{
+		this.levels = levels;
+		this.metrics = metrics;
+		changes = new GridChanges();
+		bucket = new FloodFill();
+		undoJournal = new UndoJournal(UndoJournal.DEFAULT_MEMORY);
+
+		// Declares the initial value of each choice's score
+		choiceScores = new int[4];
+
+		// The buttons and question mark are made once and moved for every
+		// level (more buttons are made if a level needs them)
+		buttons = new Button[0];
+		entities = new EntityIndex(16);
+		pressedButton = -1;
+		qMark = new QuestionMark(0, 0);
+
+		// Loads up a new level with that level's map, setting the size of the
+		// grid
+		newLevel(levelFiles[level - 1]);
+
+		// Sets all default values for when a game is started
+		// The intro/backstory screen will appear first, followed by the
+		// help screen. The sound will be turned on at the start of the game
+		soundOn = true;
+		introOn = true;
+		helpScreenOn = true;
+	}
+
+	/**
+	 * Plays one key press
+	 *
+	 * @param input What the player did
+	 * @return the sounds to play and music changes (BLOOP, BUTTON_SOUND,
+	 *         HINT_SOUND, MUSIC_ON and MUSIC_OFF added together)
+	 * @throws UncheckedIOException if a new level's map cannot be read
+	 */
+	public int step(Input input)
+	{
+		int events = 0;
+		changes.clear();
+
+		// A button only counts as pressed for the step it was pressed in
+		if (pressedButton >= 0)
+		{
+			buttons[pressedButton].unpress();
+			pressedButton = -1;
+		}
+
+		// This handles the instant disappearing of numbers as soon as
+		// the player moves (level 6). Sets the whole grid (save for the
+		// walls on four side) to zero
+		if (level == 6)
+		{
+			countSweep();
+			if (grid.replace(WALL, EMPTY, 2, 1, grid.getNoOfRows() - 2,
+					grid.getNoOfColumns() - 2))
+				changes.markAll();
+		}
+
+		// Will move the player left, right or down based on the arrow
+		// key
+		// pressed if there is no wall in that direction
+		if (input == Input.LEFT && !grid.isWall(currentRow, currentColumn - 1))
+		{
+			currentColumn--;
+		}
+
+		if (input == Input.RIGHT && !grid.isWall(currentRow, currentColumn + 1))
+		{
+			currentColumn++;
+		}
+
+		if (input == Input.DOWN && !grid.isWall(currentRow + 1, currentColumn))
+		{
+			currentRow += 1;
+		}
+
+		// Pressing up will either signify that the player wants to move
+		// up or that they want to enter a door.
+		if (input == Input.UP && !grid.isWall(currentRow - 1, currentColumn))
+		{
+
+			currentRow -= 1;
+
+			// This will handle the movement through the doors
+
+			// Displays a warning message if the player is trying to
+			// enter a door without having completed the level or
+			// obtaining the question mark
+			if (currentRow == 1 && (currentColumn == 11 || currentColumn == 13)
+					&& (!levelCompleted || !qMark.isObtained()))
+				warningMessage = true;
+			// If the player has obtained the question mark, entering
+			// either the 'yes' door or 'no' door will add one to the
+			// appropriate colour and enters the next level
+			else if (levelCompleted && qMark.isObtained())
+			{
+				if (currentRow == 1 && currentColumn == 11)
+				{
+					choiceScores[yesChoice[level]]++;
+					level++;
+					newLevel(levelFiles[level - 1]);
+				}
+				else if (currentRow == 1 && currentColumn == 13)
+				{
+					choiceScores[noChoice[level]]++;
+					level++;
+					newLevel(levelFiles[level - 1]);
+				}
+			}
+
+		}
+
+		// Whatever the player is standing on (a button, the question mark,
+		// a palette square or nothing)
+		int entity = entities.get(EntityIndex.key(currentRow, currentColumn));
+
+		if (input == Input.SPACE)
+		{
+			// Everything one press paints is undone together
+			undoJournal.begin();
+
+			// Will add values to the button the player is standing on, and
+			// count it if it reached (or left) its correct value
+			if (entity >= 0)
+			{
+				buttonsCorrect += buttons[entity].pressButton(currentRow,
+						currentColumn);
+				pressedButton = entity;
+			}
+
+			// If the player is standing on any of the palette squares
+			// (the palette's square position or the three squares
+			// below it), the player will be painted that particular
+			// colour
+			if (entity <= PALETTE_SPOT)
+				currentPaint = paletteColours[PALETTE_SPOT - entity];
+
+			// Paints the grid the colour the character is, erases if
+			// the character is not painted
+			if (currentPaint == RED_PAINT || currentPaint == BLUE_PAINT
+					|| currentPaint == GREEN_PAINT)
+			{
+				paintTile(currentRow, currentColumn, currentPaint);
+				events |= BLOOP;
+			}
+			else if (palette)
+				paintTile(currentRow, currentColumn, 0);
+
+			// When the player figures out to 'paint outside the box',
+			// the whole grid will turn the currently painted colour,
+			// revealing the numbers required for level completion
+			if (level == 4)
+			{
+				// Player needs to be outside of the already-drawn box
+				if (currentPaint != 0
+						&& (currentColumn < 6 || currentColumn > 18
+								|| currentRow < 5 || currentRow > 12))
+				{
+					// Paints the whole map the colour except the
+					// numbers tiles that will spell out the clue
+					countSweep();
+					recordFill(currentPaint, HIDDEN_PATH, 2, 1,
+							grid.getNoOfRows() - 2, grid.getNoOfColumns() - 2);
+					grid.fill(currentPaint, HIDDEN_PATH, 2, 1,
+							grid.getNoOfRows() - 2, grid.getNoOfColumns() - 2);
+					changes.markAll();
+				}
+			}
+
+			undoJournal.end();
+		}
+
+		// In the free draw mode the bucket paints the whole area around the
+		// player that is the same as the tile they are on, stopping at the
+		// walls, the doors and anything else
+		if (input == Input.BUCKET && level == FREE_DRAW_LEVEL
+				&& (currentPaint == RED_PAINT || currentPaint == BLUE_PAINT
+						|| currentPaint == GREEN_PAINT)
+				&& !grid.isWall(currentRow, currentColumn)
+				&& !grid.is(currentRow, currentColumn, DOOR))
+		{
+			int target = grid.get(currentRow, currentColumn);
+			if (bucket.fill(grid, currentRow, currentColumn, currentPaint) > 0)
+			{
+				// The fill is undone one run at a time
+				undoJournal.begin();
+				for (int span = 0; span < bucket.getNoOfSpans(); span++)
+					undoJournal.record(bucket.getSpanRow(span)
+							* grid.getNoOfColumns() + bucket.getSpanLeft(span),
+							bucket.getSpanRight(span)
+									- bucket.getSpanLeft(span) + 1, target,
+							currentPaint);
+				undoJournal.end();
+
+				for (int span = 0; span < bucket.getNoOfSpans()
+						&& !changes.isEverything(); span++)
+					for (int column = bucket.getSpanLeft(span); column <= bucket
+							.getSpanRight(span); column++)
+						changes.markTile(bucket.getSpanRow(span), column);
+				events |= BLOOP;
+			}
+		}
+
+		// Takes back (or puts back) the last painting the player did
+		if (input == Input.UNDO && undoJournal.undo(grid, changes))
+			events |= BLOOP;
+		if (input == Input.REDO && undoJournal.redo(grid, changes))
+			events |= BLOOP;
+
+		if (input == Input.HINT)
+		{
+			if (hintScreenOn)
+				hintScreenOn = false;
+			else
+			{
+				hintScreenOn = true;
+				events |= HINT_SOUND;
+			}
+
+		}
+		// Deals with the help screen
+		if (input == Input.HELP)
+		{
+			if (helpScreenOn)
+				helpScreenOn = false;
+			else
+				helpScreenOn = true;
+			events |= BLOOP;
+
+		}
+		// The level is completed and the question mark automatically
+		// shows up when all the buttons are at the correct value
+		if (buttonsCorrect == buttons.length && !qMark.isObtained())
+		{
+			qMark.makeVisible();
+			levelCompleted = true;
+		}
+
+		// Obtains the question mark if the player's position matches
+		// that of the questions mark, the level is is completed, and
+		// the question mark has not yet been obtained
+		if (entity == QUESTION_MARK_SPOT && levelCompleted
+				&& !qMark.isObtained())
+		{
+			qMark.makeInvisible();
+			qMark.obtain();
+			questionScreen = true;
+			events |= BLOOP;
+
+		}
+
+		// Restarts the level by resetting the map
+		if (input == Input.RESTART)
+		{
+			events |= BLOOP;
+			newLevel(levelFiles[level - 1]);
+		}
+
+		// This will restart the game if the final result screen is on
+		// and the player presses 'N' for a new game
+		if (input == Input.NEW_GAME && resultOn)
+		{
+			events |= BLOOP;
+			restartGame();
+		}
+
+		// Deals with level two's inverse function (switches walls and
+		// paths)
+		if (level == 2 && input == Input.INVERT)
+		{
+			// Inverses the whole grid: turns all the walls into paths
+			// and vice versa (leaving the doors and the outer walls
+			// alone)
+			countSweep();
+			grid.swap(EMPTY, WALL, 2, 1, grid.getNoOfRows() - 2,
+					grid.getNoOfColumns() - 2);
+			changes.markAll();
+		}
+
+		// This will handle the looping and muting of the background
+		// music, which can be toggled on or off with the 'S' key
+		if (input == Input.SOUND)
+		{
+			if (soundOn)
+				soundOn = false;
+			else
+			{
+				soundOn = true;
+				events |= MUSIC_ON;
+			}
+		}
+		if (!soundOn)
+			events |= MUSIC_OFF;
+
+		// Will play a short pressing sound every time a button is
+		// pressed.
+		if (pressedButton >= 0 && soundOn)
+			events |= BUTTON_SOUND;
+
+		// This will handle level three's erasing of the pseudo buttons
+		// The button will disappear as soon as the player stands on it,
+		// setting that element in the grid array to zero
+		if (level == 3)
+		{
+			int tile = grid.get(currentRow, currentColumn);
+			if (tile >= FAKE_RED_BUTTON && tile <= FAKE_BLUE_BUTTON)
+				setTile(currentRow, currentColumn, 0);
+		}
+
+		// Deals the with toggling of the hint, intro, warning, and
+		// questions screens which can all be turned off with the enter
+		// key
+		if (input == Input.ENTER)
+		{
+			if (warningMessage || hintScreenOn || questionScreen || introOn)
+			{
+				warningMessage = false;
+				hintScreenOn = false;
+				introOn = false;
+				questionScreen = false;
+				events |= BLOOP;
+			}
+			// The player will be taken to the free draw mode (level 10)
+			// if the final result screen is on and the player presses
+			// enter
+			if (resultOn)
+			{
+				level++;
+				resultOn = false;
+				newLevel(levelFiles[level - 1]);
+				events |= BLOOP;
+			}
+		}
+
+		// When the player surpasses the number of levels, the player
+		// has completed the game and the personality results are
+		// calculated
+		if (level == NO_OF_LEVELS + 1)
+		{
+			resultOn = true;
+			if (choiceScores[RED_CHOICE] > choiceScores[GREEN_CHOICE]
+					&& choiceScores[RED_CHOICE] > choiceScores[BLUE_CHOICE])
+				colourResult = RED_CHOICE;
+			else if (choiceScores[GREEN_CHOICE] > choiceScores[BLUE_CHOICE])
+				colourResult = GREEN_CHOICE;
+			else
+				colourResult = BLUE_CHOICE;
+		}
+		return events;
+	}
+
+	/**
+	 * Skips straight to the start of a level, as if the player had just come
+	 * through a door into it (the choices made so far are kept). Lets a
+	 * level's steps be timed without playing the levels before it
+	 *
+	 * @param level The level to go to (1 to NO_OF_LEVELS + 2)
+	 * @throws IllegalArgumentException if there is no such level
+	 * @throws UncheckedIOException if the level's map cannot be read
+	 */
+	public void startLevel(int level)
+	{
+		if (level < 1 || level > levelFiles.length)
+			throw new IllegalArgumentException("no level " + level);
+		this.level = level;
+		newLevel(levelFiles[level - 1]);
+	}
+
+	/**
+	 * Sets up a level from its descriptor: the player's start, the buttons,
+	 * the question mark, the palette and the map
+	 *
+	 * @param levelFileName The level's descriptor file
+	 * @throws UncheckedIOException if the descriptor or map cannot be read
+	 */
+	private void newLevel(String levelFileName)
+	{
+		long start = System.nanoTime();
+
+		// A new level changes the whole grid
+		changes.markAll();
+
+		// Each level has its own starting position, buttons, question mark
+		// and palette, all read from its descriptor (only read once)
+		LevelDescriptor descriptor;
+		LevelTemplate template;
+		try
+		{
+			descriptor = levels.getDescriptor(levelFileName);
+			template = levels.getTemplate(descriptor.getMapFile());
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(levelFileName
+					+ " not a valid level", e);
+		}
+
+		currentRow = descriptor.getStartRow();
+		currentColumn = descriptor.getStartColumn();
+		currentPaint = descriptor.getPaint();
+		palette = descriptor.hasPalette();
+		paletteRow = descriptor.getPaletteRow();
+		paletteColumn = descriptor.getPaletteColumn();
+		qMark.moveTo(descriptor.getQuestionMarkColumn(),
+				descriptor.getQuestionMarkRow());
+
+		// The buttons already made are reused
+		setNoOfButtons(descriptor.getNoOfButtons());
+		for (int button = 0; button < buttons.length; button++)
+			buttons[button].reset(descriptor.getButtonColumn(button),
+					descriptor.getButtonRow(button),
+					descriptor.getMaxValue(button),
+					descriptor.getCorrectValue(button),
+					descriptor.getColour(button));
+
+		// First hides the question mark until the user has dialed the
+		// correct numbers
+		qMark.makeInvisible();
+		qMark.unobtain();
+
+		// Every level starts off with the level not completed
+		levelCompleted = false;
+
+		// Will handle all the screens/options that can be turned on and off
+		warningMessage = false;
+		hintScreenOn = false;
+		questionScreen = false;
+		helpScreenOn = false;
+		resultOn = false;
+
+		// Copy the untouched map for the particular level into the grid.
+		// Each map is only read from the level pack once; restarting a
+		// level reuses the same grid
+		if (grid == null || grid.getNoOfRows() != template.getNoOfRows()
+				|| grid.getNoOfColumns() != template.getNoOfColumns())
+		{
+			if (grid != null)
+				grid.close();
+			grid = template.newGrid();
+		}
+		template.copyInto(grid);
+		countSweep();
+		indexEntities();
+
+		// Nothing from an earlier level (or before restarting) can be undone
+		undoJournal.clear();
+		if (metrics != null)
+			metrics.levelLoaded(System.nanoTime() - start);
+	}
+
+	/**
+	 * Counts one trip over every tile of the grid, if the game is being
+	 * measured
+	 */
+	private void countSweep()
+	{
+		if (metrics != null)
+			metrics.gridSwept();
+	}
+
+	/**
+	 * Makes sure there are exactly as many buttons as a level needs, keeping
+	 * the ones already made
+	 *
+	 * @param noOfButtons The number of buttons
+	 */
+	private void setNoOfButtons(int noOfButtons)
+	{
+		pressedButton = -1;
+		if (buttons.length == noOfButtons)
+			return;
+
+		Button[] resized = new Button[noOfButtons];
+		for (int button = 0; button < noOfButtons; button++)
+			if (button < buttons.length)
+				resized[button] = buttons[button];
+			else
+				resized[button] = new Button(0, 0, 0, 0, RED_BUTTON);
+		buttons = resized;
+	}
+
+	/**
+	 * Works out what is on each tile (the buttons, the question mark and the
+	 * palette's squares) and how many buttons are already at their correct
+	 * value. Buttons off the map cannot be pressed
+	 */
+	private void indexEntities()
+	{
+		int noOfRows = grid.getNoOfRows();
+		int noOfColumns = grid.getNoOfColumns();
+		entities.clear();
+
+		buttonsCorrect = 0;
+		for (int button = 0; button < buttons.length; button++)
+		{
+			Button next = buttons[button];
+			if (next.getRow() >= 0 && next.getRow() < noOfRows
+					&& next.getColumn() >= 0
+					&& next.getColumn() < noOfColumns)
+				entities.put(EntityIndex.key(next.getRow(), next.getColumn()),
+						button);
+			if (next.isCorrectValue())
+				buttonsCorrect++;
+		}
+
+		entities.put(EntityIndex.key(qMark.getRow(), qMark.getColumn()),
+				QUESTION_MARK_SPOT);
+		if (palette)
+			for (int square = 0; square < paletteColours.length; square++)
+				entities.put(EntityIndex.key(paletteRow + square,
+						paletteColumn), PALETTE_SPOT - square);
+	}
+
+	/**
+	 * Restarts the game
+	 */
+	private void restartGame()
+	{
+
+		// Sets all colour choices to zero to prepare for a new result
+		for (int choice = 1; choice < choiceScores.length; choice++)
+		{
+			choiceScores[choice] = 0;
+		}
+
+		// Sets the level to one and turns off the result screen
+		level = 1;
+		resultOn = false;
+		newLevel(levelFiles[level - 1]);
+
+	}
+
+	/**
+	 * Changes one tile of the grid and records the change
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @param tile The new value of the tile
+	 */
+	private void setTile(int row, int column, int tile)
+	{
+		if (grid.get(row, column) != tile)
+		{
+			grid.set(row, column, tile);
+			changes.markTile(row, column);
+		}
+	}
+
+	/**
+	 * Paints one tile of the grid, so that it can be undone
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @param tile The new value of the tile
+	 */
+	private void paintTile(int row, int column, int tile)
+	{
+		int old = grid.get(row, column);
+		if (old != tile)
+			undoJournal.record(row * grid.getNoOfColumns() + column, 1, old,
+					tile);
+		setTile(row, column, tile);
+	}
+
+	/**
+	 * Notes what a fill of a box of the grid is about to paint over, so that
+	 * it can be undone: each row is split into runs of the same tile, and
+	 * the runs the fill changes are recorded
+	 *
+	 * @param kind What the box will be filled with
+	 * @param keep The kind of tile the fill leaves alone
+	 * @param top The top row of the box
+	 * @param left The leftmost column of the box
+	 * @param bottom The bottom row of the box
+	 * @param right The rightmost column of the box
+	 */
+	private void recordFill(int kind, int keep, int top, int left,
+			int bottom, int right)
+	{
+		for (int row = top; row <= bottom; row++)
+		{
+			int column = left;
+			while (column <= right)
+			{
+				int old = grid.get(row, column);
+				int end = column;
+				while (end < right && grid.is(row, end + 1, old))
+					end++;
+				if (old != kind && old != keep)
+					undoJournal.record(row * grid.getNoOfColumns() + column,
+							end - column + 1, old, kind);
+				column = end + 1;
+			}
+		}
+	}
+
+	/**
+	 * Sets how much memory the painting that can be undone may take up.
+	 * What could be undone before is forgotten
+	 *
+	 * @param bytes About how many bytes (UndoJournal.DEFAULT_MEMORY unless
+	 *            this is called)
+	 */
+	public void setUndoMemory(int bytes)
+	{
+		undoJournal = new UndoJournal(bytes);
+	}
+
+	/**
+	 * Returns how much memory the painting that can be undone may take up
+	 *
+	 * @return the number of bytes
+	 */
+	public int getUndoMemory()
+	{
+		return undoJournal.getMemory();
+	}
+
+	/**
+	 * Writes everything about the game that step() depends on, so the game
+	 * can be put back exactly as it was with readState()
+	 *
+	 * @param out Where to write the game's state
+	 * @throws IOException if the state cannot be written
+	 */
+	public void writeState(DataOutput out) throws IOException
+	{
+		out.writeByte(level);
+		out.writeBoolean(levelCompleted);
+		out.writeByte(colourResult);
+		for (int choice = 1; choice < choiceScores.length; choice++)
+			out.writeShort(choiceScores[choice]);
+		out.writeShort(getScreenState());
+
+		out.writeInt(currentRow);
+		out.writeInt(currentColumn);
+		out.writeByte(currentPaint);
+		out.writeBoolean(palette);
+		out.writeInt(paletteRow);
+		out.writeInt(paletteColumn);
+
+		out.writeShort(buttons.length);
+		for (Button button : buttons)
+		{
+			out.writeByte(button.getColour());
+			out.writeInt(button.getColumn());
+			out.writeInt(button.getRow());
+			out.writeShort(button.getMaxValue());
+			out.writeShort(button.getCorrectValue());
+			out.writeShort(button.getCurrentValue());
+		}
+		out.writeInt(qMark.getColumn());
+		out.writeInt(qMark.getRow());
+		out.writeBoolean(qMark.isVisible());
+		out.writeBoolean(qMark.isObtained());
+
+		// The grid's size, then only the tiles that differ from the level's
+		// untouched map: each run of them in a row is written as its row,
+		// first column, length and tiles, and a row of -1 ends the list
+		int noOfRows = grid.getNoOfRows();
+		int noOfColumns = grid.getNoOfColumns();
+		out.writeInt(noOfRows);
+		out.writeInt(noOfColumns);
+		LevelTemplate template = getLevelTemplate();
+		countSweep();
+		for (int row = 0; row < noOfRows; row++)
+		{
+			int column = 0;
+			while (column < noOfColumns)
+			{
+				if (grid.get(row, column) == template.getTile(row, column))
+				{
+					column++;
+					continue;
+				}
+				int end = column;
+				while (end + 1 < noOfColumns
+						&& grid.get(row, end + 1) != template.getTile(row,
+								end + 1))
+					end++;
+				out.writeInt(row);
+				out.writeInt(column);
+				out.writeInt(end - column + 1);
+				for (; column <= end; column++)
+					out.writeByte(grid.get(row, column));
+			}
+		}
+		out.writeInt(-1);
+
+		undoJournal.write(out);
+	}
+
+	/**
+	 * Puts the game back to a state written by writeState()
+	 *
+	 * @param in Where to read the game's state from
+	 * @throws IOException if the state cannot be read
+	 */
+	public void readState(DataInput in) throws IOException
+	{
+		level = in.readByte();
+		if (level < 1 || level > levelFiles.length)
+			throw new IOException("no level " + level);
+		levelCompleted = in.readBoolean();
+		colourResult = in.readByte();
+		for (int choice = 1; choice < choiceScores.length; choice++)
+			choiceScores[choice] = in.readShort();
+		int screens = in.readShort();
+		warningMessage = (screens & 1) != 0;
+		hintScreenOn = (screens & 2) != 0;
+		helpScreenOn = (screens & 4) != 0;
+		soundOn = (screens & 8) != 0;
+		questionScreen = (screens & 16) != 0;
+		introOn = (screens & 32) != 0;
+		resultOn = (screens & 64) != 0;
+
+		currentRow = in.readInt();
+		currentColumn = in.readInt();
+		currentPaint = in.readByte();
+		palette = in.readBoolean();
+		paletteRow = in.readInt();
+		paletteColumn = in.readInt();
+
+		setNoOfButtons(in.readShort());
+		for (Button button : buttons)
+		{
+			int colour = in.readByte();
+			int column = in.readInt();
+			int row = in.readInt();
+			int maxValue = in.readShort();
+			int correctValue = in.readShort();
+			button.reset(column, row, maxValue, correctValue, colour);
+			button.setCurrentValue(in.readShort());
+		}
+		qMark.moveTo(in.readInt(), in.readInt());
+		if (in.readBoolean())
+			qMark.makeVisible();
+		else
+			qMark.makeInvisible();
+		if (in.readBoolean())
+			qMark.obtain();
+		else
+			qMark.unobtain();
+
+		// The level's untouched map, with the tiles that were changed put
+		// back over it
+		int noOfRows = in.readInt();
+		int noOfColumns = in.readInt();
+		LevelTemplate template = getLevelTemplate();
+		if (template.getNoOfRows() != noOfRows
+				|| template.getNoOfColumns() != noOfColumns)
+			throw new IOException("the map saved is not the size of level "
+					+ level + "'s map");
+		if (grid.getNoOfRows() != noOfRows
+				|| grid.getNoOfColumns() != noOfColumns)
+		{
+			grid.close();
+			grid = template.newGrid();
+		}
+		template.copyInto(grid);
+		for (int row = in.readInt(); row >= 0; row = in.readInt())
+		{
+			int column = in.readInt();
+			int length = in.readInt();
+			if (row >= noOfRows || column < 0 || length < 0
+					|| length > noOfColumns - column)
+				throw new IOException("changed tiles outside the map");
+			for (int tile = 0; tile < length; tile++)
+				grid.set(row, column + tile, in.readUnsignedByte());
+		}
+		undoJournal.read(in);
+		countSweep();
+		indexEntities();
+		changes.markAll();
+	}
+
+	/**
+	 * Returns the untouched map of the current level
+	 *
+	 * @return the level's template
+	 * @throws IOException if the level or its map cannot be read
+	 */
+	private LevelTemplate getLevelTemplate() throws IOException
+	{
+		return levels.getTemplate(levels.getDescriptor(
+				levelFiles[level - 1]).getMapFile());
+	}
+
+	/**
+	 * Returns the tiles that changed during the last step
+	 *
+	 * @return the changed tiles
+	 */
+	public GridChanges getChanges()
+	{
+		return changes;
+	}
+
+	/**
+	 * Returns one tile of the grid
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return the tile's value
+	 */
+	public int getTile(int row, int column)
+	{
+		return grid.get(row, column);
+	}
+
+	/**
+	 * Returns the number of rows in the current map
+	 *
+	 * @return the number of rows
+	 */
+	public int getNoOfRows()
+	{
+		return grid.getNoOfRows();
+	}
+
+	/**
+	 * Returns the number of columns in the current map
+	 *
+	 * @return the number of columns
+	 */
+	public int getNoOfColumns()
+	{
+		return grid.getNoOfColumns();
+	}
+
+	/**
+	 * Returns the current level
+	 *
+	 * @return the level (9 is the result screen, 10 the free draw mode)
+	 */
+	public int getLevel()
+	{
+		return level;
+	}
+
+	/**
+	 * Returns the row the player is standing on
+	 *
+	 * @return the player's row
+	 */
+	public int getPlayerRow()
+	{
+		return currentRow;
+	}
+
+	/**
+	 * Returns the column the player is standing on
+	 *
+	 * @return the player's column
+	 */
+	public int getPlayerColumn()
+	{
+		return currentColumn;
+	}
+
+	/**
+	 * Returns the colour the player is painted
+	 *
+	 * @return RED_PAINT, GREEN_PAINT, BLUE_PAINT or NO_PAINT
+	 */
+	public int getCurrentPaint()
+	{
+		return currentPaint;
+	}
+
+	/**
+	 * Returns whether or not the level has a palette
+	 *
+	 * @return whether or not there is a palette
+	 */
+	public boolean hasPalette()
+	{
+		return palette;
+	}
+
+	/**
+	 * Returns the row of the palette's top (red) square
+	 *
+	 * @return the palette's row
+	 */
+	public int getPaletteRow()
+	{
+		return paletteRow;
+	}
+
+	/**
+	 * Returns the column of the palette
+	 *
+	 * @return the palette's column
+	 */
+	public int getPaletteColumn()
+	{
+		return paletteColumn;
+	}
+
+	/**
+	 * Returns the number of buttons in the level
+	 *
+	 * @return the number of buttons
+	 */
+	public int getNoOfButtons()
+	{
+		return buttons.length;
+	}
+
+	/**
+	 * Returns one of the level's buttons (red, green and blue, in that order)
+	 *
+	 * @param button Which button
+	 * @return the button
+	 */
+	public Button getButton(int button)
+	{
+		return buttons[button];
+	}
+
+	/**
+	 * Returns the level's question mark
+	 *
+	 * @return the question mark
+	 */
+	public QuestionMark getQuestionMark()
+	{
+		return qMark;
+	}
+
+	/**
+	 * Returns whether or not the question mark should be drawn
+	 *
+	 * @return whether or not the question mark is showing
+	 */
+	public boolean isQuestionMarkShowing()
+	{
+		return qMark.isVisible() && levelCompleted;
+	}
+
+	/**
+	 * Returns whether or not all buttons have reached their correct values
+	 *
+	 * @return whether or not the level is completed
+	 */
+	public boolean isLevelCompleted()
+	{
+		return levelCompleted;
+	}
+
+	/**
+	 * Returns a personality colour's score
+	 *
+	 * @param choice RED_CHOICE, BLUE_CHOICE or GREEN_CHOICE
+	 * @return the score
+	 */
+	public int getChoiceScore(int choice)
+	{
+		return choiceScores[choice];
+	}
+
+	/**
+	 * Returns the player's personality colour once the game is finished
+	 *
+	 * @return RED_CHOICE, BLUE_CHOICE or GREEN_CHOICE (0 before the end)
+	 */
+	public int getColourResult()
+	{
+		return colourResult;
+	}
+
+	/**
+	 * Returns whether or not the level-not-completed warning is showing
+	 *
+	 * @return whether or not the warning is showing
+	 */
+	public boolean isWarningMessageOn()
+	{
+		return warningMessage;
+	}
+
+	/**
+	 * Returns whether or not the hint screen is showing
+	 *
+	 * @return whether or not the hint is showing
+	 */
+	public boolean isHintScreenOn()
+	{
+		return hintScreenOn;
+	}
+
+	/**
+	 * Returns whether or not the help screen is showing
+	 *
+	 * @return whether or not the help is showing
+	 */
+	public boolean isHelpScreenOn()
+	{
+		return helpScreenOn;
+	}
+
+	/**
+	 * Returns whether or not the sound is on
+	 *
+	 * @return whether or not the sound is on
+	 */
+	public boolean isSoundOn()
+	{
+		return soundOn;
+	}
+
+	/**
+	 * Returns whether or not the level's question is showing
+	 *
+	 * @return whether or not the question is showing
+	 */
+	public boolean isQuestionScreenOn()
+	{
+		return questionScreen;
+	}
+
+	/**
+	 * Returns whether or not the intro screen is showing
+	 *
+	 * @return whether or not the intro is showing
+	 */
+	public boolean isIntroOn()
+	{
+		return introOn;
+	}
+
+	/**
+	 * Returns whether or not the final result screen is showing
+	 *
+	 * @return whether or not the result is showing
+	 */
+	public boolean isResultOn()
+	{
+		return resultOn;
+	}
+
+	/**
+	 * Combines all the screens and menus into one number so that a change
+	 * in any of them can be noticed
+	 *
+	 * @return a number that changes whenever a screen is turned on or off
+	 */
+	public int getScreenState()
+	{
+		int state = colourResult << 7;
+		if (warningMessage)
+			state |= 1;
+		if (hintScreenOn)
+			state |= 2;
+		if (helpScreenOn)
+			state |= 4;
+		if (soundOn)
+			state |= 8;
+		if (questionScreen)
+			state |= 16;
+		if (introOn)
+			state |= 32;
+		if (resultOn)
+			state |= 64;
+		return state;
+	}
+}
@@ -0,0 +1,173 @@
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.JFrame;
+
+/**
+ * The GameLoop class
+ *
+ * @author Jiawen
+ * Runs the game with active rendering: the game is updated a fixed number of
+ * times per second and drawn straight into the frame's buffer strategy at a
+ * steady frame rate, instead of waiting for Swing to repaint. Only used when
+ * the game is started with active rendering turned on
+ */
+public class GameLoop implements Runnable
+{
+	/**
+	 * What the loop updates and draws
+	 */
+	public interface Simulation
+	{
+		/**
+		 * Moves the game forward by one tick
+		 */
+		void tick();
+
+		/**
+		 * Draws the whole game
+		 *
+		 * @param g The graphics context of the frame's back buffer, moved so
+		 *            that (0, 0) is the top left of the game area
+		 */
+		void render(Graphics g);
+	}
+
+	// How many times per second the game is updated, and the most updates
+	// that will be run at once to catch up after a slow frame
+	public static final int TICKS_PER_SECOND = 60;
+	public static final long TICK_NANOS = 1000000000L / TICKS_PER_SECOND;
+	private final int MAX_CATCH_UP = 5;
+
+	private JFrame frame;
+	private Simulation simulation;
+	private int noOfBuffers;
+	private long frameNanos;
+
+	// Where the game area starts within the frame
+	private int offsetX, offsetY;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	/**
+	 * Creates a new GameLoop object
+	 *
+	 * @param frame The frame to draw into
+	 * @param simulation What to update and draw
+	 * @param noOfBuffers 2 for double buffering, 3 for triple buffering
+	 * @param framesPerSecond How many frames to draw each second
+	 */
+	public GameLoop(JFrame frame, Simulation simulation, int noOfBuffers,
+			int framesPerSecond)
+	{
+		this.frame = frame;
+		this.simulation = simulation;
+		this.noOfBuffers = noOfBuffers;
+		this.frameNanos = 1000000000L / framesPerSecond;
+	}
+
+	/**
+	 * Starts the loop on its own thread. The frame must already be showing
+	 *
+	 * @param offsetX Where the game area's left side is within the frame
+	 * @param offsetY Where the game area's top is within the frame
+	 */
+	public void start(int offsetX, int offsetY)
+	{
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+
+		// Swing no longer paints the frame; this loop does all the drawing
+		frame.setIgnoreRepaint(true);
+		frame.createBufferStrategy(noOfBuffers);
+
+		running = true;
+		thread = new Thread(this, "rgb-game-loop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the loop after the current frame
+	 */
+	public void stop()
+	{
+		running = false;
+	}
+
+	/**
+	 * Updates the game on fixed ticks and draws one frame per pass, sleeping
+	 * until it is time for the next frame
+	 */
+	public void run()
+	{
+		long previous = System.nanoTime();
+		long lag = 0;
+		while (running)
+		{
+			long frameStart = System.nanoTime();
+			lag += frameStart - previous;
+			previous = frameStart;
+
+			// Run as many ticks as the time that passed calls for. If the game
+			// fell too far behind, the missed time is dropped
+			int updates = 0;
+			while (lag >= TICK_NANOS && updates < MAX_CATCH_UP)
+			{
+				simulation.tick();
+				lag -= TICK_NANOS;
+				updates++;
+			}
+			if (updates == MAX_CATCH_UP)
+				lag = 0;
+
+			render();
+
+			// Wait until the next frame is due
+			long wait = frameStart + frameNanos - System.nanoTime();
+			while (wait > 0)
+			{
+				LockSupport.parkNanos(wait);
+				wait = frameStart + frameNanos - System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * Draws one frame into the back buffer and shows it. The frame is drawn
+	 * again if the buffer's contents were lost while drawing
+	 */
+	private void render()
+	{
+		BufferStrategy strategy = frame.getBufferStrategy();
+		if (strategy == null)
+			return;
+
+		do
+		{
+			do
+			{
+				Graphics g = strategy.getDrawGraphics();
+				try
+				{
+					g.translate(offsetX, offsetY);
+					simulation.render(g);
+				}
+				finally
+				{
+					g.dispose();
+				}
+			}
+			while (strategy.contentsRestored());
+
+			strategy.show();
+		}
+		while (strategy.contentsLost());
+
+		// Makes sure the frame reaches the screen right away on systems that
+		// buffer drawing commands
+		Toolkit.getDefaultToolkit().sync();
+	}
+}
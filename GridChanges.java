@@ -0,0 +1,109 @@
+/**
+ * The GridChanges class
+ *
+ * @author Jiawen
+ * Keeps a list of the tiles of the grid that changed during a step of the
+ * game, so whatever draws the grid only has to update those tiles. Once too
+ * many tiles have changed (or the whole grid changed) it just remembers that
+ * everything changed
+ */
+public class GridChanges
+{
+	// The most tiles that are listed one by one
+	private final int MAX_TILES = 64;
+
+	private int[] rows, columns;
+	private int noOfTiles;
+	private boolean everything;
+
+	/**
+	 * Creates a new, empty GridChanges object
+	 */
+	public GridChanges()
+	{
+		rows = new int[MAX_TILES];
+		columns = new int[MAX_TILES];
+		noOfTiles = 0;
+		everything = false;
+	}
+
+	/**
+	 * Adds one changed tile
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 */
+	public void markTile(int row, int column)
+	{
+		if (everything)
+			return;
+		if (noOfTiles == MAX_TILES)
+		{
+			markAll();
+			return;
+		}
+		rows[noOfTiles] = row;
+		columns[noOfTiles] = column;
+		noOfTiles++;
+	}
+
+	/**
+	 * Marks the whole grid as changed
+	 */
+	public void markAll()
+	{
+		everything = true;
+		noOfTiles = 0;
+	}
+
+	/**
+	 * Returns whether or not the whole grid changed
+	 *
+	 * @return whether or not everything changed
+	 */
+	public boolean isEverything()
+	{
+		return everything;
+	}
+
+	/**
+	 * Returns the number of tiles listed as changed
+	 *
+	 * @return the number of changed tiles
+	 */
+	public int getNoOfTiles()
+	{
+		return noOfTiles;
+	}
+
+	/**
+	 * Returns the row of a changed tile
+	 *
+	 * @param tile Which changed tile
+	 * @return the tile's row
+	 */
+	public int getRow(int tile)
+	{
+		return rows[tile];
+	}
+
+	/**
+	 * Returns the column of a changed tile
+	 *
+	 * @param tile Which changed tile
+	 * @return the tile's column
+	 */
+	public int getColumn(int tile)
+	{
+		return columns[tile];
+	}
+
+	/**
+	 * Forgets all changes
+	 */
+	public void clear()
+	{
+		everything = false;
+		noOfTiles = 0;
+	}
+}
@@ -0,0 +1,292 @@
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Histogram class
+ *
+ * @author Jiawen
+ * Counts how often times (or any other numbers that are never negative) fall
+ * into each of a fixed set of ranges, so that the average, the slowest and
+ * the percentiles can be worked out later without keeping every value. Each
+ * doubling of the value is split into SUB_BUCKETS ranges, so a percentile is
+ * never more than about 6% off, whatever the size of the values.
+ *
+ * Any number of threads can record at once without a lock: every range's
+ * count is its own atomic number. Recording never makes any objects
+ */
+public class Histogram
+{
+	// How many ranges each doubling of the value is split into (a power of
+	// two), and how many ranges there are in all (enough for any long)
+	public static final int SUB_BUCKETS = 16;
+	private final int SUB_BITS = 4;
+	private final int NO_OF_BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private String name;
+	private AtomicLongArray buckets;
+	private AtomicLong count, total, maximum;
+
+	/**
+	 * The numbers that sum up a histogram at one moment, in milliseconds
+	 * (how it is shown over JMX)
+	 */
+	public static class Summary
+	{
+		private long count;
+		private double mean, median, percentile90, percentile99, max;
+
+		/**
+		 * Creates a new Summary object
+		 *
+		 * @param count How many values were recorded
+		 * @param mean Their average
+		 * @param median Half of them were at most this
+		 * @param percentile90 90% of them were at most this
+		 * @param percentile99 99% of them were at most this
+		 * @param max The biggest
+		 */
+		public Summary(long count, double mean, double median,
+				double percentile90, double percentile99, double max)
+		{
+			this.count = count;
+			this.mean = mean;
+			this.median = median;
+			this.percentile90 = percentile90;
+			this.percentile99 = percentile99;
+			this.max = max;
+		}
+
+		/**
+		 * Returns how many values were recorded
+		 *
+		 * @return the number
+		 */
+		public long getCount()
+		{
+			return count;
+		}
+
+		/**
+		 * Returns the average value
+		 *
+		 * @return the value in milliseconds
+		 */
+		public double getMeanMillis()
+		{
+			return mean;
+		}
+
+		/**
+		 * Returns the value half of the values were at or below
+		 *
+		 * @return the value in milliseconds
+		 */
+		public double getMedianMillis()
+		{
+			return median;
+		}
+
+		/**
+		 * Returns the value 90% of the values were at or below
+		 *
+		 * @return the value in milliseconds
+		 */
+		public double getPercentile90Millis()
+		{
+			return percentile90;
+		}
+
+		/**
+		 * Returns the value 99% of the values were at or below
+		 *
+		 * @return the value in milliseconds
+		 */
+		public double getPercentile99Millis()
+		{
+			return percentile99;
+		}
+
+		/**
+		 * Returns the biggest value
+		 *
+		 * @return the value in milliseconds
+		 */
+		public double getMaxMillis()
+		{
+			return max;
+		}
+	}
+
+	/**
+	 * Creates a new, empty Histogram object
+	 *
+	 * @param name What the values are (for the report)
+	 */
+	public Histogram(String name)
+	{
+		this.name = name;
+		buckets = new AtomicLongArray(NO_OF_BUCKETS);
+		count = new AtomicLong();
+		total = new AtomicLong();
+		maximum = new AtomicLong();
+	}
+
+	/**
+	 * Returns what the values are
+	 *
+	 * @return the histogram's name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Adds a value (negative values count as zero)
+	 *
+	 * @param value The value, for example a time in nanoseconds
+	 */
+	public void record(long value)
+	{
+		if (value < 0)
+			value = 0;
+		buckets.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long max = maximum.get();
+		while (value > max && !maximum.compareAndSet(max, value))
+			max = maximum.get();
+	}
+
+	/**
+	 * Returns how many values were recorded
+	 *
+	 * @return the number of values
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * Returns the average of the values
+	 *
+	 * @return the average, or 0 if there are none
+	 */
+	public double getMean()
+	{
+		long values = count.get();
+		return values == 0 ? 0 : (double) total.get() / values;
+	}
+
+	/**
+	 * Returns the biggest value
+	 *
+	 * @return the biggest value, or 0 if there are none
+	 */
+	public long getMax()
+	{
+		return maximum.get();
+	}
+
+	/**
+	 * Returns a value that a fraction of the values are at or below (the
+	 * top of the range it falls in, but never more than the biggest value)
+	 *
+	 * @param fraction The fraction, from 0 to 1 (0.99 for the 99th
+	 *            percentile)
+	 * @return the value, or 0 if there are none
+	 */
+	public long getPercentile(double fraction)
+	{
+		long values = 0;
+		for (int bucket = 0; bucket < NO_OF_BUCKETS; bucket++)
+			values += buckets.get(bucket);
+		if (values == 0)
+			return 0;
+
+		long wanted = Math.max(1, (long) Math.ceil(values * fraction));
+		long seen = 0;
+		for (int bucket = 0; bucket < NO_OF_BUCKETS; bucket++)
+		{
+			seen += buckets.get(bucket);
+			if (seen >= wanted)
+				return Math.min(highest(bucket), maximum.get());
+		}
+		return maximum.get();
+	}
+
+	/**
+	 * Sums the histogram up, for values in nanoseconds
+	 *
+	 * @return the summary, in milliseconds
+	 */
+	public Summary summarize()
+	{
+		return new Summary(getCount(), getMean() / 1e6,
+				getPercentile(0.5) / 1e6, getPercentile(0.9) / 1e6,
+				getPercentile(0.99) / 1e6, getMax() / 1e6);
+	}
+
+	/**
+	 * Prints the histogram's summary on one line, for values in nanoseconds
+	 *
+	 * @param out Where to print it
+	 */
+	public void print(PrintStream out)
+	{
+		Summary summary = summarize();
+		out.printf("  %-22s %8d  mean %9.3f  50%% %9.3f  90%% %9.3f  "
+				+ "99%% %9.3f  max %9.3f ms%n", name, summary.getCount(),
+				summary.getMeanMillis(), summary.getMedianMillis(),
+				summary.getPercentile90Millis(),
+				summary.getPercentile99Millis(), summary.getMaxMillis());
+	}
+
+	/**
+	 * Forgets every value. Values recorded while it is being cleared may or
+	 * may not be kept
+	 */
+	public void clear()
+	{
+		for (int bucket = 0; bucket < NO_OF_BUCKETS; bucket++)
+			buckets.set(bucket, 0);
+		count.set(0);
+		total.set(0);
+		maximum.set(0);
+	}
+
+	/**
+	 * Returns the range a value falls in. Values below SUB_BUCKETS each have
+	 * their own range; above that the range is picked by the value's
+	 * highest bit and the SUB_BITS bits below it
+	 *
+	 * @param value The value (not negative)
+	 * @return the range's number
+	 */
+	private int bucket(long value)
+	{
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int highBit = 63 - Long.numberOfLeadingZeros(value);
+		int shift = highBit - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS
+				+ (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Returns the biggest value that falls in a range
+	 *
+	 * @param bucket The range's number
+	 * @return the biggest value in it
+	 */
+	private long highest(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long low = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return low + (1L << shift) - 1;
+	}
+}
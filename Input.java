@@ -0,0 +1,86 @@
+import java.awt.event.KeyEvent;
+
+/**
+ * The Input enum
+ *
+ * @author Jiawen
+ * Everything the player can do in one step of the game. Each one matches a
+ * key on the keyboard; any other key is OTHER (the game still reacts to it,
+ * for example level 6 clears its numbers on any key)
+ */
+public enum Input
+{
+	LEFT(KeyEvent.VK_LEFT), RIGHT(KeyEvent.VK_RIGHT), UP(KeyEvent.VK_UP),
+	DOWN(KeyEvent.VK_DOWN), SPACE(KeyEvent.VK_SPACE), HINT(KeyEvent.VK_H),
+	HELP(KeyEvent.VK_J), RESTART(KeyEvent.VK_R), NEW_GAME(KeyEvent.VK_N),
+	INVERT(KeyEvent.VK_I), SOUND(KeyEvent.VK_S), ENTER(KeyEvent.VK_ENTER),
+	BUCKET(KeyEvent.VK_B), UNDO(KeyEvent.VK_Z), REDO(KeyEvent.VK_Y),
+	OTHER(KeyEvent.VK_UNDEFINED);
+
+	private final int keyCode;
+
+	/**
+	 * Creates an input for a key
+	 *
+	 * @param keyCode The key's code (from KeyEvent)
+	 */
+	private Input(int keyCode)
+	{
+		this.keyCode = keyCode;
+	}
+
+	/**
+	 * Returns the code of the key for this input
+	 *
+	 * @return the key's code (from KeyEvent)
+	 */
+	public int getKeyCode()
+	{
+		return keyCode;
+	}
+
+	/**
+	 * Finds the input for a key
+	 *
+	 * @param keyCode The key's code (from KeyEvent)
+	 * @return the input for that key
+	 */
+	public static Input fromKeyCode(int keyCode)
+	{
+		switch (keyCode)
+		{
+		case KeyEvent.VK_LEFT:
+			return LEFT;
+		case KeyEvent.VK_RIGHT:
+			return RIGHT;
+		case KeyEvent.VK_UP:
+			return UP;
+		case KeyEvent.VK_DOWN:
+			return DOWN;
+		case KeyEvent.VK_SPACE:
+			return SPACE;
+		case KeyEvent.VK_H:
+			return HINT;
+		case KeyEvent.VK_J:
+			return HELP;
+		case KeyEvent.VK_R:
+			return RESTART;
+		case KeyEvent.VK_N:
+			return NEW_GAME;
+		case KeyEvent.VK_I:
+			return INVERT;
+		case KeyEvent.VK_S:
+			return SOUND;
+		case KeyEvent.VK_ENTER:
+			return ENTER;
+		case KeyEvent.VK_B:
+			return BUCKET;
+		case KeyEvent.VK_Z:
+			return UNDO;
+		case KeyEvent.VK_Y:
+			return REDO;
+		default:
+			return OTHER;
+		}
+	}
+}
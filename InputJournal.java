@@ -0,0 +1,193 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The InputJournal class
+ *
+ * @author Jiawen
+ * Records every key the game handles, along with the tick it was handled on,
+ * so a session can be played back exactly by a ReplayDriver. Every so many
+ * keys (and whenever the level changes) the whole state of the game is saved
+ * as well, so a replay can jump straight to any level.
+ *
+ * A journal starts with MAGIC, VERSION, the keyframe interval and how much
+ * memory the game's undo journal had (so a replay can undo exactly as far
+ * back as the game could), followed by records. An INPUT record holds how
+ * many ticks passed since the last key and the key's code. A KEYFRAME record
+ * holds its length, then the number of keys before it, its tick, the level
+ * and the game's state (see GameEngine.writeState). All numbers in records
+ * except the state are variable-length, so most keys take three bytes
+ */
+public class InputJournal
+{
+	public static final int MAGIC = 0x5247424A;
+	// Version 2 saves every button's colour and any number of buttons;
+	// version 3 saves what can be undone and how much memory it may take;
+	// version 4 saves positions and the map's size as ints, and only the
+	// tiles changed since the level started
+	public static final int VERSION = 4;
+
+	// The kinds of records
+	public static final int INPUT = 0;
+	public static final int KEYFRAME = 1;
+
+	// How many keys there are between keyframes unless told otherwise
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+
+	private DataOutputStream out;
+	private int keyframeInterval;
+	private int noOfInputs;
+	private long lastTick;
+	private int lastLevel;
+
+	// Reused for every keyframe
+	private ByteArrayOutputStream keyframeBytes;
+	private DataOutputStream keyframeOut;
+
+	/**
+	 * Creates a new journal file
+	 *
+	 * @param journalFile The file to write
+	 * @param keyframeInterval How many keys there are between keyframes
+	 * @param undoMemory How much memory the game's undo journal has (see
+	 *            GameEngine.getUndoMemory)
+	 * @throws IOException if the file cannot be created
+	 */
+	public InputJournal(File journalFile, int keyframeInterval,
+			int undoMemory) throws IOException
+	{
+		this.keyframeInterval = keyframeInterval;
+		out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(journalFile)));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		writeVarInt(out, keyframeInterval);
+		writeVarInt(out, undoMemory);
+
+		keyframeBytes = new ByteArrayOutputStream();
+		keyframeOut = new DataOutputStream(keyframeBytes);
+		lastLevel = -1;
+	}
+
+	/**
+	 * Records a key after the game has handled it, followed by a keyframe if
+	 * one is due
+	 *
+	 * @param tick The tick the key was handled on
+	 * @param keyCode The key's code (from KeyEvent)
+	 * @param engine The game, after it has handled the key
+	 * @throws IOException if the journal cannot be written
+	 */
+	public synchronized void record(long tick, int keyCode, GameEngine engine)
+			throws IOException
+	{
+		if (out == null)
+			return;
+
+		out.writeByte(INPUT);
+		writeVarLong(out, tick - lastTick);
+		writeVarInt(out, keyCode);
+		lastTick = tick;
+		noOfInputs++;
+
+		if (noOfInputs % keyframeInterval == 0
+				|| engine.getLevel() != lastLevel)
+			writeKeyframe(tick, engine);
+	}
+
+	/**
+	 * Writes the game's whole state
+	 *
+	 * @param tick The current tick
+	 * @param engine The game
+	 * @throws IOException if the journal cannot be written
+	 */
+	private void writeKeyframe(long tick, GameEngine engine)
+			throws IOException
+	{
+		keyframeBytes.reset();
+		writeVarInt(keyframeOut, noOfInputs);
+		writeVarLong(keyframeOut, tick);
+		keyframeOut.writeByte(engine.getLevel());
+		engine.writeState(keyframeOut);
+		keyframeOut.flush();
+
+		out.writeByte(KEYFRAME);
+		writeVarInt(out, keyframeBytes.size());
+		keyframeBytes.writeTo(out);
+		lastLevel = engine.getLevel();
+	}
+
+	/**
+	 * Writes everything recorded so far to the file
+	 *
+	 * @throws IOException if the journal cannot be written
+	 */
+	public synchronized void flush() throws IOException
+	{
+		if (out != null)
+			out.flush();
+	}
+
+	/**
+	 * Finishes the journal. Nothing more is recorded afterwards
+	 *
+	 * @throws IOException if the journal cannot be written
+	 */
+	public synchronized void close() throws IOException
+	{
+		if (out != null)
+		{
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * Returns the number of keys recorded
+	 *
+	 * @return the number of keys
+	 */
+	public synchronized int getNoOfInputs()
+	{
+		return noOfInputs;
+	}
+
+	/**
+	 * Writes a number that is never negative in as few bytes as it needs,
+	 * seven bits at a time
+	 *
+	 * @param out Where to write the number
+	 * @param value The number
+	 * @throws IOException if it cannot be written
+	 */
+	public static void writeVarInt(OutputStream out, int value)
+			throws IOException
+	{
+		writeVarLong(out, value & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Writes a number that is never negative in as few bytes as it needs,
+	 * seven bits at a time
+	 *
+	 * @param out Where to write the number
+	 * @param value The number
+	 * @throws IOException if it cannot be written
+	 */
+	public static void writeVarLong(OutputStream out, long value)
+			throws IOException
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+}
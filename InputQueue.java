@@ -0,0 +1,81 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The InputQueue class
+ *
+ * @author Jiawen
+ * A queue of numbers (key codes and clicks) passed from the Swing thread to
+ * the thread that runs the game. Exactly one thread adds to it and exactly
+ * one thread takes from it, so it needs no locks: each side only moves its
+ * own end, and the other side's end tells it how full the queue is
+ */
+public class InputQueue
+{
+	// Returned by poll() when the queue is empty
+	public static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] slots;
+	private int mask;
+
+	// How many numbers have ever been added and taken. The adding thread only
+	// changes tail and the taking thread only changes head
+	private AtomicLong head, tail;
+
+	/**
+	 * Creates a new, empty InputQueue object
+	 *
+	 * @param capacity The most numbers that can wait at once (rounded up to
+	 *            a power of two)
+	 */
+	public InputQueue(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		slots = new long[size];
+		mask = size - 1;
+		head = new AtomicLong();
+		tail = new AtomicLong();
+	}
+
+	/**
+	 * Adds a number to the end of the queue. Only called by the one thread
+	 * that adds
+	 *
+	 * @param value The number to add (anything but EMPTY)
+	 * @return false if the queue was full and the number was dropped
+	 */
+	public boolean offer(long value)
+	{
+		long position = tail.get();
+		if (position - head.get() == slots.length)
+			return false;
+		slots[(int) position & mask] = value;
+		tail.lazySet(position + 1);
+		return true;
+	}
+
+	/**
+	 * Takes the number at the front of the queue. Only called by the one
+	 * thread that takes
+	 *
+	 * @return the number, or EMPTY if there is none
+	 */
+	public long poll()
+	{
+		long position = head.get();
+		if (position == tail.get())
+			return EMPTY;
+		long value = slots[(int) position & mask];
+		head.lazySet(position + 1);
+		return value;
+	}
+
+	/**
+	 * Returns whether or not the queue is empty
+	 *
+	 * @return whether or not there is nothing to take
+	 */
+	public boolean isEmpty()
+	{
+		return head.get() == tail.get();
+	}
+}
@@ -0,0 +1,216 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * The LevelCompiler class
+ *
+ * @author Jiawen
+ * Turns the text map files into one binary level pack that the game can read
+ * in a single pass. The text files stay the source of every map; run this
+ * again after changing one:
+ *
+ * java LevelCompiler levels.pack default.txt maze.txt ...
+ *
+ * With no map files given, every .txt file in the current folder is packed.
+ * The pack starts with "RGBL", a version number and the number of maps. Each
+ * map is then its file name, its number of rows and columns, and one byte per
+ * tile (the same number the text file has for that tile). Maps are read and
+ * written a row at a time, so a map too big for memory never is all in it
+ */
+public class LevelCompiler
+{
+	// Marks a file as a level pack ("RGBL") and the version of the format
+	public static final int MAGIC = 0x5247424C;
+	public static final int VERSION = 1;
+
+	/**
+	 * Reads a text map file into a grid made for its size (see
+	 * LevelTemplate.newGrid), a few rows at a time
+	 *
+	 * @param mapFile The text map file
+	 * @return the map's tiles
+	 * @throws IOException if the file cannot be read or is not a valid map
+	 */
+	public static TileMap parseText(File mapFile) throws IOException
+	{
+		int[] size = measureText(mapFile);
+		int noOfRows = size[0];
+		int noOfColumns = size[1];
+		TileMap tiles = LevelTemplate.newGrid(noOfRows, noOfColumns);
+		int rowsPerLoad = Math.min(noOfRows,
+				ChunkedTileStore.rowsPerLoad(noOfColumns));
+		byte[] rows = new byte[rowsPerLoad * noOfColumns];
+		BufferedReader in = Files.newBufferedReader(mapFile.toPath(),
+				StandardCharsets.ISO_8859_1);
+		try
+		{
+			for (int top = 0; top < noOfRows; top += rowsPerLoad)
+			{
+				int bottom = Math.min(top + rowsPerLoad, noOfRows) - 1;
+				for (int row = top; row <= bottom; row++)
+					readRow(in, mapFile, row, rows, (row - top) * noOfColumns,
+							noOfColumns);
+				tiles.load(ByteBuffer.wrap(rows), top, bottom);
+			}
+		}
+		catch (IOException e)
+		{
+			tiles.close();
+			throw e;
+		}
+		finally
+		{
+			in.close();
+		}
+		return tiles;
+	}
+
+	/**
+	 * Finds out how big a text map file's map is without keeping any of it
+	 *
+	 * @param mapFile The text map file
+	 * @return the number of rows and the number of columns
+	 * @throws IOException if the file cannot be read or is empty
+	 */
+	public static int[] measureText(File mapFile) throws IOException
+	{
+		BufferedReader in = Files.newBufferedReader(mapFile.toPath(),
+				StandardCharsets.ISO_8859_1);
+		try
+		{
+			// The first row decides how wide the map is, and blank lines at
+			// the end of the file are not part of the map
+			int noOfColumns = 0;
+			int noOfRows = 0;
+			int noOfLines = 0;
+			for (String line = in.readLine(); line != null; line = in
+					.readLine())
+			{
+				if (noOfLines == 0)
+					noOfColumns = line.length();
+				noOfLines++;
+				if (!line.isEmpty())
+					noOfRows = noOfLines;
+			}
+			if (noOfRows == 0)
+				throw new IOException(mapFile + " is empty");
+			return new int[] { noOfRows, noOfColumns };
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the next row of a text map file
+	 *
+	 * @param in The file, just before the row
+	 * @param mapFile The text map file (for errors)
+	 * @param row Which row it is
+	 * @param tiles Where the row's tiles are put, one byte each
+	 * @param start Where the first tile is put
+	 * @param noOfColumns The number of columns in the map
+	 * @throws IOException if the file cannot be read or the row is too short
+	 */
+	private static void readRow(BufferedReader in, File mapFile, int row,
+			byte[] tiles, int start, int noOfColumns) throws IOException
+	{
+		String rowStr = in.readLine();
+		if (rowStr == null || rowStr.length() < noOfColumns)
+			throw new IOException(mapFile + " row " + (row + 1)
+					+ " is shorter than the first row");
+		for (int column = 0; column < noOfColumns; column++)
+			tiles[start + column] = (byte) (rowStr.charAt(column) - '0');
+	}
+
+	/**
+	 * Writes a level pack
+	 *
+	 * @param packFile The file to write
+	 * @param mapFiles The text map files to put in it
+	 * @throws IOException if a map cannot be read or the pack cannot be
+	 *             written
+	 */
+	public static void compile(File packFile, File[] mapFiles)
+			throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(packFile)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(mapFiles.length);
+
+			for (File mapFile : mapFiles)
+			{
+				int[] size = measureText(mapFile);
+				byte[] name = mapFile.getName().getBytes(
+						StandardCharsets.UTF_8);
+				out.writeShort(name.length);
+				out.write(name);
+				out.writeInt(size[0]);
+				out.writeInt(size[1]);
+
+				byte[] row = new byte[size[1]];
+				BufferedReader in = Files.newBufferedReader(mapFile.toPath(),
+						StandardCharsets.ISO_8859_1);
+				try
+				{
+					for (int rowNo = 0; rowNo < size[0]; rowNo++)
+					{
+						readRow(in, mapFile, rowNo, row, 0, size[1]);
+						out.write(row);
+					}
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Compiles the text map files named on the command line
+	 *
+	 * @param args The pack file to write followed by the map files
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		File packFile = new File(args.length > 0 ? args[0]
+				: LevelPack.DEFAULT_PACK);
+		File[] mapFiles;
+		if (args.length > 1)
+		{
+			mapFiles = new File[args.length - 1];
+			for (int file = 1; file < args.length; file++)
+				mapFiles[file - 1] = new File(args[file]);
+		}
+		else
+			mapFiles = new File(".").listFiles(new FilenameFilter()
+			{
+				public boolean accept(File folder, String name)
+				{
+					return name.endsWith(".txt");
+				}
+			});
+
+		compile(packFile, mapFiles);
+		System.out.println("Packed " + mapFiles.length + " maps into "
+				+ packFile);
+	}
+}
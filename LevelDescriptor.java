@@ -0,0 +1,346 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The LevelDescriptor class
+ *
+ * @author Jiawen
+ * Describes everything about a level that is not in its map: which map it
+ * uses, where the player starts, its buttons, the question mark, the palette
+ * and the paint the player starts with. Each level has a small text file
+ * (level1.lvl, level2.lvl, ...) with one thing per line:
+ *
+ * map default.txt
+ * start 5 5
+ * button red 10 17 5 2
+ * question 17 18
+ * palette 7 7
+ * paint red
+ *
+ * Positions are always the column followed by the row. A button line gives
+ * its colour (red, green or blue), its position, its highest value and its
+ * correct value; a level can have any number of them. The palette and paint
+ * lines can be left out. Blank lines and lines starting with # are skipped.
+ * No two things (buttons, the question mark or the palette's four squares)
+ * can be on the same tile
+ */
+public class LevelDescriptor
+{
+	private String mapFile;
+	private int startRow, startColumn;
+
+	// One element per button
+	private int[] buttonColumns, buttonRows, maxValues, correctValues,
+			colours;
+
+	private int questionMarkColumn, questionMarkRow;
+	private boolean palette;
+	private int paletteColumn, paletteRow;
+	private int paint;
+
+	/**
+	 * Reads a level's descriptor file
+	 *
+	 * @param file The descriptor file
+	 * @throws IOException if the file cannot be read or is not valid
+	 */
+	public LevelDescriptor(File file) throws IOException
+	{
+		List<String> lines = Files.readAllLines(file.toPath(),
+				StandardCharsets.ISO_8859_1);
+		ArrayList<int[]> buttons = new ArrayList<int[]>();
+		boolean started = false, questionMark = false;
+		paint = GameEngine.NO_PAINT;
+
+		for (int line = 0; line < lines.size(); line++)
+		{
+			String text = lines.get(line).trim();
+			if (text.isEmpty() || text.startsWith("#"))
+				continue;
+			String[] words = text.split("\\s+");
+			String where = file + " line " + (line + 1);
+
+			try
+			{
+				if (words[0].equals("map") && words.length == 2)
+					mapFile = words[1];
+				else if (words[0].equals("start") && words.length == 3)
+				{
+					startColumn = Integer.parseInt(words[1]);
+					startRow = Integer.parseInt(words[2]);
+					started = true;
+				}
+				else if (words[0].equals("button") && words.length == 6)
+				{
+					int[] button = { Integer.parseInt(words[2]),
+							Integer.parseInt(words[3]),
+							Integer.parseInt(words[4]),
+							Integer.parseInt(words[5]),
+							buttonColour(words[1], where), line + 1 };
+					buttons.add(button);
+				}
+				else if (words[0].equals("question") && words.length == 3)
+				{
+					questionMarkColumn = Integer.parseInt(words[1]);
+					questionMarkRow = Integer.parseInt(words[2]);
+					questionMark = true;
+				}
+				else if (words[0].equals("palette") && words.length == 3)
+				{
+					paletteColumn = Integer.parseInt(words[1]);
+					paletteRow = Integer.parseInt(words[2]);
+					palette = true;
+				}
+				else if (words[0].equals("paint") && words.length == 2)
+					paint = paintColour(words[1], where);
+				else
+					throw new IOException(where + ": cannot understand \""
+							+ text + "\"");
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IOException(where + ": not a number", e);
+			}
+		}
+
+		if (mapFile == null || !started || !questionMark)
+			throw new IOException(file
+					+ " needs a map, a start and a question mark");
+
+		// Buttons placed off the map (column -1) are never stood on, so they
+		// can share
+		EntityIndex taken = new EntityIndex(buttons.size() + 5);
+		taken.put(EntityIndex.key(questionMarkRow, questionMarkColumn), 0);
+		if (palette)
+			for (int square = 0; square < 4; square++)
+				if (taken.put(EntityIndex.key(paletteRow + square,
+						paletteColumn), 0) != EntityIndex.NONE)
+					throw new IOException(file
+							+ ": the palette is on the question mark");
+		for (int[] button : buttons)
+		{
+			long key = EntityIndex.key(button[1], button[0]);
+			if (button[0] >= 0 && taken.put(key, 0) != EntityIndex.NONE)
+				throw new IOException(file + " line " + button[5]
+						+ ": the button is on the same tile as something else");
+		}
+
+		int noOfButtons = buttons.size();
+		buttonColumns = new int[noOfButtons];
+		buttonRows = new int[noOfButtons];
+		maxValues = new int[noOfButtons];
+		correctValues = new int[noOfButtons];
+		colours = new int[noOfButtons];
+		for (int button = 0; button < noOfButtons; button++)
+		{
+			int[] next = buttons.get(button);
+			buttonColumns[button] = next[0];
+			buttonRows[button] = next[1];
+			maxValues[button] = next[2];
+			correctValues[button] = next[3];
+			colours[button] = next[4];
+		}
+	}
+
+	/**
+	 * Turns a colour's name into the number a button of that colour is drawn
+	 * with
+	 *
+	 * @param name red, green or blue
+	 * @param where The file and line, for the error message
+	 * @return RED_BUTTON, GREEN_BUTTON or BLUE_BUTTON
+	 * @throws IOException if the colour is not one of the three
+	 */
+	private static int buttonColour(String name, String where)
+			throws IOException
+	{
+		if (name.equals("red"))
+			return GameEngine.RED_BUTTON;
+		if (name.equals("green"))
+			return GameEngine.GREEN_BUTTON;
+		if (name.equals("blue"))
+			return GameEngine.BLUE_BUTTON;
+		throw new IOException(where + ": no button colour \"" + name + "\"");
+	}
+
+	/**
+	 * Turns a colour's name into a paint
+	 *
+	 * @param name red, green, blue or none
+	 * @param where The file and line, for the error message
+	 * @return RED_PAINT, GREEN_PAINT, BLUE_PAINT or NO_PAINT
+	 * @throws IOException if the colour is not one of the four
+	 */
+	private static int paintColour(String name, String where)
+			throws IOException
+	{
+		if (name.equals("red"))
+			return GameEngine.RED_PAINT;
+		if (name.equals("green"))
+			return GameEngine.GREEN_PAINT;
+		if (name.equals("blue"))
+			return GameEngine.BLUE_PAINT;
+		if (name.equals("none"))
+			return GameEngine.NO_PAINT;
+		throw new IOException(where + ": no paint colour \"" + name + "\"");
+	}
+
+	/**
+	 * Returns the name of the level's map file
+	 *
+	 * @return the map file's name
+	 */
+	public String getMapFile()
+	{
+		return mapFile;
+	}
+
+	/**
+	 * Returns the row the player starts on
+	 *
+	 * @return the starting row
+	 */
+	public int getStartRow()
+	{
+		return startRow;
+	}
+
+	/**
+	 * Returns the column the player starts on
+	 *
+	 * @return the starting column
+	 */
+	public int getStartColumn()
+	{
+		return startColumn;
+	}
+
+	/**
+	 * Returns the number of buttons in the level
+	 *
+	 * @return the number of buttons
+	 */
+	public int getNoOfButtons()
+	{
+		return colours.length;
+	}
+
+	/**
+	 * Returns the column a button is in
+	 *
+	 * @param button Which button
+	 * @return the button's column
+	 */
+	public int getButtonColumn(int button)
+	{
+		return buttonColumns[button];
+	}
+
+	/**
+	 * Returns the row a button is in
+	 *
+	 * @param button Which button
+	 * @return the button's row
+	 */
+	public int getButtonRow(int button)
+	{
+		return buttonRows[button];
+	}
+
+	/**
+	 * Returns the highest value a button can reach
+	 *
+	 * @param button Which button
+	 * @return the button's highest value
+	 */
+	public int getMaxValue(int button)
+	{
+		return maxValues[button];
+	}
+
+	/**
+	 * Returns the value the player must set a button to
+	 *
+	 * @param button Which button
+	 * @return the button's correct value
+	 */
+	public int getCorrectValue(int button)
+	{
+		return correctValues[button];
+	}
+
+	/**
+	 * Returns the colour of a button
+	 *
+	 * @param button Which button
+	 * @return RED_BUTTON, GREEN_BUTTON or BLUE_BUTTON
+	 */
+	public int getColour(int button)
+	{
+		return colours[button];
+	}
+
+	/**
+	 * Returns the column of the question mark
+	 *
+	 * @return the question mark's column
+	 */
+	public int getQuestionMarkColumn()
+	{
+		return questionMarkColumn;
+	}
+
+	/**
+	 * Returns the row of the question mark
+	 *
+	 * @return the question mark's row
+	 */
+	public int getQuestionMarkRow()
+	{
+		return questionMarkRow;
+	}
+
+	/**
+	 * Returns whether or not the level has a palette
+	 *
+	 * @return whether or not there is a palette
+	 */
+	public boolean hasPalette()
+	{
+		return palette;
+	}
+
+	/**
+	 * Returns the column of the palette
+	 *
+	 * @return the palette's column
+	 */
+	public int getPaletteColumn()
+	{
+		return paletteColumn;
+	}
+
+	/**
+	 * Returns the row of the palette's top (red) square
+	 *
+	 * @return the palette's row
+	 */
+	public int getPaletteRow()
+	{
+		return paletteRow;
+	}
+
+	/**
+	 * Returns the paint the player starts the level with
+	 *
+	 * @return RED_PAINT, GREEN_PAINT, BLUE_PAINT or NO_PAINT
+	 */
+	public int getPaint()
+	{
+		return paint;
+	}
+}
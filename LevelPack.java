@@ -0,0 +1,182 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * The LevelPack class
+ *
+ * @author Jiawen
+ * Reads the maps of a level pack made by LevelCompiler. Opening the pack only
+ * reads where each map is; the first time a map is asked for, its tiles are
+ * read with NIO a band of rows at a time into a template that is kept for the
+ * rest of the game (a map too big for memory goes into a ChunkedTileStore,
+ * so no more than a band of it is ever in memory, however big the pack is).
+ * Maps that are not in the pack (or whose text file is newer than the pack)
+ * are read from their text file instead. The level descriptors that name the
+ * maps are read from their own files and kept the same way
+ */
+public class LevelPack
+{
+	// The pack the game looks for
+	public static final String DEFAULT_PACK = "levels.pack";
+
+	// The pack, and where each map is in it. Each entry holds the number of
+	// rows, the number of columns and where the tiles start
+	private File packFile;
+	private HashMap<String, long[]> maps;
+	private long packModified;
+
+	// The maps and level descriptors that have already been read, by file
+	// name
+	private HashMap<String, LevelTemplate> templates;
+	private HashMap<String, LevelDescriptor> descriptors;
+
+	/**
+	 * Opens a level pack. A missing pack is not an error: every map will then
+	 * come from its text file
+	 *
+	 * @param packFile The level pack
+	 * @throws IOException if the pack exists but cannot be read
+	 */
+	public LevelPack(File packFile) throws IOException
+	{
+		this.packFile = packFile;
+		maps = new HashMap<String, long[]>();
+		templates = new HashMap<String, LevelTemplate>();
+		descriptors = new HashMap<String, LevelDescriptor>();
+		if (!packFile.isFile())
+			return;
+		packModified = packFile.lastModified();
+
+		// Read the header and find where every map is, skipping over the
+		// tiles
+		RandomAccessFile pack = new RandomAccessFile(packFile, "r");
+		try
+		{
+			if (pack.length() < 8 || pack.readInt() != LevelCompiler.MAGIC)
+				throw new IOException(packFile + " is not a level pack");
+			int version = pack.readShort();
+			if (version != LevelCompiler.VERSION)
+				throw new IOException(packFile + " is version " + version
+						+ ", expected " + LevelCompiler.VERSION);
+
+			int noOfMaps = pack.readShort();
+			for (int map = 0; map < noOfMaps; map++)
+			{
+				byte[] name = new byte[pack.readShort()];
+				pack.readFully(name);
+				int noOfRows = pack.readInt();
+				int noOfColumns = pack.readInt();
+				long start = pack.getFilePointer();
+				long end = start + (long) noOfRows * noOfColumns;
+				if (noOfRows < 0 || noOfColumns < 0 || end > pack.length())
+					throw new IOException(packFile + " is cut short");
+				maps.put(new String(name, StandardCharsets.UTF_8),
+						new long[] { noOfRows, noOfColumns, start });
+				pack.seek(end);
+			}
+		}
+		finally
+		{
+			pack.close();
+		}
+	}
+
+	/**
+	 * Returns the untouched map of a level. Each map is only read once; after
+	 * that the same template is returned without touching any files
+	 *
+	 * @param mapFileName The name of the map's text file
+	 * @return the map's template
+	 * @throws IOException if the map cannot be read
+	 */
+	public LevelTemplate getTemplate(String mapFileName) throws IOException
+	{
+		LevelTemplate template = templates.get(mapFileName);
+		if (template != null)
+			return template;
+
+		long[] map = maps.get(mapFileName);
+		File textFile = new File(mapFileName);
+
+		// The text file is the source, so a newer text file wins
+		if (map == null
+				|| (textFile.isFile() && textFile.lastModified() > packModified))
+			template = new LevelTemplate(LevelCompiler.parseText(textFile));
+		else
+			template = new LevelTemplate(readMap((int) map[0], (int) map[1],
+					map[2]));
+
+		templates.put(mapFileName, template);
+		return template;
+	}
+
+	/**
+	 * Reads a map's tiles out of the pack, a few rows at a time, into a grid
+	 * made for its size (see LevelTemplate.newGrid)
+	 *
+	 * @param noOfRows The number of rows in the map
+	 * @param noOfColumns The number of columns in the map
+	 * @param start Where the map's tiles start in the pack
+	 * @return the map's tiles
+	 * @throws IOException if the pack cannot be read
+	 */
+	private TileMap readMap(int noOfRows, int noOfColumns, long start)
+			throws IOException
+	{
+		TileMap tiles = LevelTemplate.newGrid(noOfRows, noOfColumns);
+		int rowsPerLoad = Math.min(noOfRows,
+				ChunkedTileStore.rowsPerLoad(noOfColumns));
+		ByteBuffer rows = ByteBuffer.allocate(rowsPerLoad * noOfColumns);
+		FileChannel channel = new RandomAccessFile(packFile, "r")
+				.getChannel();
+		try
+		{
+			for (int top = 0; top < noOfRows; top += rowsPerLoad)
+			{
+				int bottom = Math.min(top + rowsPerLoad, noOfRows) - 1;
+				long position = start + (long) top * noOfColumns;
+				rows.clear();
+				rows.limit((bottom - top + 1) * noOfColumns);
+				while (rows.hasRemaining())
+					if (channel.read(rows, position + rows.position()) < 0)
+						throw new IOException(packFile + " is cut short");
+				rows.flip();
+				tiles.load(rows, top, bottom);
+			}
+		}
+		catch (IOException e)
+		{
+			tiles.close();
+			throw e;
+		}
+		finally
+		{
+			channel.close();
+		}
+		return tiles;
+	}
+
+	/**
+	 * Returns a level's descriptor. Each one is only read once
+	 *
+	 * @param levelFileName The name of the level's descriptor file
+	 * @return the level's descriptor
+	 * @throws IOException if the descriptor cannot be read
+	 */
+	public LevelDescriptor getDescriptor(String levelFileName)
+			throws IOException
+	{
+		LevelDescriptor descriptor = descriptors.get(levelFileName);
+		if (descriptor == null)
+		{
+			descriptor = new LevelDescriptor(new File(levelFileName));
+			descriptors.put(levelFileName, descriptor);
+		}
+		return descriptor;
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * The LevelTemplate class
+ *
+ * @author Jiawen
+ * Holds the untouched map of a level, as it was read from the level pack.
+ * Templates never change, so one template can be copied into the game's grid
+ * every time its level starts or restarts. Copying only copies the layers of
+ * bits of the map, so it does not depend on each tile. Maps too big to keep
+ * in memory (see ChunkedTileStore) are kept in a ChunkedTileStore of their
+ * own, and copying one copies its scratch file straight into the game's
+ */
+public class LevelTemplate
+{
+	private int noOfRows, noOfColumns;
+
+	// The tiles of the map (made by newGrid, so a TileGrid or a
+	// ChunkedTileStore depending on the map's size)
+	private TileMap tiles;
+
+	/**
+	 * Creates a new LevelTemplate object
+	 *
+	 * @param tiles The tiles of the map, in a grid made by newGrid that is
+	 *            not changed afterwards
+	 */
+	public LevelTemplate(TileMap tiles)
+	{
+		this.tiles = tiles;
+		this.noOfRows = tiles.getNoOfRows();
+		this.noOfColumns = tiles.getNoOfColumns();
+	}
+
+	/**
+	 * Makes an empty grid for a map, kept in memory or in a file depending on
+	 * how big the map is
+	 *
+	 * @param noOfRows The number of rows in the map
+	 * @param noOfColumns The number of columns in the map
+	 * @return the new grid
+	 */
+	public static TileMap newGrid(int noOfRows, int noOfColumns)
+	{
+		if ((long) noOfRows * noOfColumns > ChunkedTileStore.LARGE_MAP)
+			return new ChunkedTileStore(noOfRows, noOfColumns);
+		return new TileGrid(noOfRows, noOfColumns);
+	}
+
+	/**
+	 * Returns the number of rows in the map
+	 *
+	 * @return the number of rows
+	 */
+	public int getNoOfRows()
+	{
+		return noOfRows;
+	}
+
+	/**
+	 * Returns the number of columns in the map
+	 *
+	 * @return the number of columns
+	 */
+	public int getNoOfColumns()
+	{
+		return noOfColumns;
+	}
+
+	/**
+	 * Returns whether or not the map is too big to keep in memory
+	 *
+	 * @return whether or not the map needs a ChunkedTileStore
+	 */
+	public boolean isLarge()
+	{
+		return (long) noOfRows * noOfColumns > ChunkedTileStore.LARGE_MAP;
+	}
+
+	/**
+	 * Returns one tile of the map
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return the tile's value
+	 */
+	public int getTile(int row, int column)
+	{
+		return tiles.get(row, column);
+	}
+
+	/**
+	 * Makes an empty grid the size of the map, kept in memory or in a file
+	 * depending on how big the map is
+	 *
+	 * @return the new grid
+	 */
+	public TileMap newGrid()
+	{
+		return newGrid(noOfRows, noOfColumns);
+	}
+
+	/**
+	 * Copies the map into a grid of the same size (made by newGrid)
+	 *
+	 * @param grid The grid to copy into
+	 */
+	public void copyInto(TileMap grid)
+	{
+		if (isLarge())
+			((ChunkedTileStore) grid).copyFrom((ChunkedTileStore) tiles);
+		else
+			((TileGrid) grid).copyFrom((TileGrid) tiles);
+	}
+}
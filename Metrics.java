@@ -0,0 +1,246 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The Metrics class
+ *
+ * @author Jiawen
+ * Keeps the game's measurements: how long each frame takes to draw, how
+ * long it takes from a key being pressed to the end of drawing the first
+ * frame that shows what it did, how long each level takes to set up, and how
+ * many times the game went over the whole grid. They can be watched over
+ * JMX while the game runs (see register) and written to a file when it
+ * closes (see dumpOnExit).
+ *
+ * Everything is recorded without locks or making any objects, so it can be
+ * left on all the time, from any thread
+ */
+public class Metrics implements MetricsMXBean
+{
+	// The name the measurements are registered under in JMX
+	public static final String NAME = "RGB:type=Metrics";
+
+	private Histogram paintTimes, keyLatencies, levelLoadTimes;
+	private AtomicLong fullGridSweeps;
+
+	// The oldest key pressed that no frame has shown yet (when it was
+	// pressed, in milliseconds like KeyEvent.getWhen(), or 0 for none), and
+	// the snapshot that was showing then. Keys are only noted by Swing's
+	// thread and only cleared by whichever thread draws
+	private volatile long keyWhen, keySequence;
+
+	/**
+	 * Creates a new Metrics object with nothing measured yet
+	 */
+	public Metrics()
+	{
+		paintTimes = new Histogram("Paint time");
+		keyLatencies = new Histogram("Key to frame latency");
+		levelLoadTimes = new Histogram("Level load time");
+		fullGridSweeps = new AtomicLong();
+	}
+
+	/**
+	 * Makes the measurements visible over JMX. If that cannot be done the
+	 * game carries on without it
+	 */
+	public void register()
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName(NAME));
+		}
+		catch (JMException e)
+		{
+			System.err.println("Metrics not shown over JMX: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes every measurement to a file when the program ends
+	 *
+	 * @param file The file to write to
+	 */
+	public void dumpOnExit(final File file)
+	{
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					dump(file.getPath());
+				}
+				catch (IOException e)
+				{
+					System.err.println("Cannot write the metrics to " + file
+							+ ": " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Notes that a key was pressed. Only the oldest key not shown yet is
+	 * timed. Only called by Swing's thread
+	 *
+	 * @param when When the key was pressed (KeyEvent.getWhen())
+	 * @param sequence The sequence number of the snapshot showing when the
+	 *            key was pressed
+	 */
+	public void keyPressed(long when, long sequence)
+	{
+		if (keyWhen != 0)
+			return;
+		keySequence = sequence;
+		keyWhen = when;
+	}
+
+	/**
+	 * Records a frame that was just drawn: how long it took and, if it is
+	 * the first to show a key that was pressed, how long ago the key was
+	 * pressed. Only called by whichever thread draws
+	 *
+	 * @param start When drawing started (System.nanoTime())
+	 * @param sequence The sequence number of the snapshot that was drawn
+	 */
+	public void framePainted(long start, long sequence)
+	{
+		paintTimes.record(System.nanoTime() - start);
+		long when = keyWhen;
+		if (when != 0 && sequence > keySequence)
+		{
+			keyLatencies.record((System.currentTimeMillis() - when) * 1000000);
+			keyWhen = 0;
+		}
+	}
+
+	/**
+	 * Records how long a level took to set up
+	 *
+	 * @param nanos The time, in nanoseconds
+	 */
+	public void levelLoaded(long nanos)
+	{
+		levelLoadTimes.record(nanos);
+	}
+
+	/**
+	 * Counts one trip over every tile of the grid
+	 */
+	public void gridSwept()
+	{
+		fullGridSweeps.incrementAndGet();
+	}
+
+	/**
+	 * Returns how long drawing a frame takes
+	 *
+	 * @return the summary of the frame times
+	 */
+	public Histogram.Summary getPaintTime()
+	{
+		return paintTimes.summarize();
+	}
+
+	/**
+	 * Returns how long it takes from a key being pressed to the end of
+	 * drawing the first frame that shows what it did
+	 *
+	 * @return the summary of the key latencies
+	 */
+	public Histogram.Summary getKeyLatency()
+	{
+		return keyLatencies.summarize();
+	}
+
+	/**
+	 * Returns how long setting up a level takes
+	 *
+	 * @return the summary of the level load times
+	 */
+	public Histogram.Summary getLevelLoadTime()
+	{
+		return levelLoadTimes.summarize();
+	}
+
+	/**
+	 * Returns how many times the game went over every tile of the grid
+	 *
+	 * @return the number of full-grid sweeps
+	 */
+	public long getFullGridSweeps()
+	{
+		return fullGridSweeps.get();
+	}
+
+	/**
+	 * Returns every measurement as text
+	 *
+	 * @return the report
+	 */
+	public String getReport()
+	{
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(text);
+		printStats(out);
+		out.flush();
+		return text.toString();
+	}
+
+	/**
+	 * Writes every measurement to a file
+	 *
+	 * @param fileName The file to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	public void dump(String fileName) throws IOException
+	{
+		PrintStream out = new PrintStream(new FileOutputStream(fileName));
+		try
+		{
+			printStats(out);
+		}
+		finally
+		{
+			out.close();
+		}
+		if (out.checkError())
+			throw new IOException("error writing " + fileName);
+	}
+
+	/**
+	 * Forgets every measurement
+	 */
+	public void reset()
+	{
+		paintTimes.clear();
+		keyLatencies.clear();
+		levelLoadTimes.clear();
+		fullGridSweeps.set(0);
+	}
+
+	/**
+	 * Prints every measurement
+	 *
+	 * @param out Where to print them
+	 */
+	public void printStats(PrintStream out)
+	{
+		out.println("Metrics:");
+		paintTimes.print(out);
+		keyLatencies.print(out);
+		levelLoadTimes.print(out);
+		out.printf("  %-22s %8d%n", "Full-grid sweeps", fullGridSweeps
+				.get());
+	}
+}
@@ -0,0 +1,61 @@
+import java.io.IOException;
+
+/**
+ * The MetricsMXBean interface
+ *
+ * @author Jiawen
+ * What the game's measurements look like over JMX (for example in JConsole,
+ * under RGB:type=Metrics). Each histogram is shown as its count, average,
+ * percentiles and biggest value, in milliseconds
+ */
+public interface MetricsMXBean
+{
+	/**
+	 * Returns how long drawing a frame takes
+	 *
+	 * @return the summary of the frame times
+	 */
+	Histogram.Summary getPaintTime();
+
+	/**
+	 * Returns how long it takes from a key being pressed to the end of
+	 * drawing the first frame that shows what it did
+	 *
+	 * @return the summary of the key latencies
+	 */
+	Histogram.Summary getKeyLatency();
+
+	/**
+	 * Returns how long setting up a level takes
+	 *
+	 * @return the summary of the level load times
+	 */
+	Histogram.Summary getLevelLoadTime();
+
+	/**
+	 * Returns how many times the game went over every tile of the grid
+	 *
+	 * @return the number of full-grid sweeps
+	 */
+	long getFullGridSweeps();
+
+	/**
+	 * Returns every measurement as text
+	 *
+	 * @return the report
+	 */
+	String getReport();
+
+	/**
+	 * Writes every measurement to a file
+	 *
+	 * @param fileName The file to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	void dump(String fileName) throws IOException;
+
+	/**
+	 * Forgets every measurement
+	 */
+	void reset();
+}
@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.IOException;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * The MusicPlayer class
+ *
+ * @author Jiawen
+ * Plays the background music straight from its file on its own thread, a
+ * small piece at a time, so the music starts right away and never has to fit
+ * in memory. When the file ends it is opened again from the start while the
+ * sound line is still playing what it already has, so the loop has no gap
+ */
+public class MusicPlayer implements Runnable
+{
+	// How much of the file is read at once, and how much the sound line holds
+	// (in milliseconds of sound)
+	private final int CHUNK_SIZE = 16384;
+	private final int LINE_BUFFER = 250;
+
+	private String fileName;
+	private Thread thread;
+
+	// Whether the music should be playing, and whether it should start over
+	// from the beginning (after being stopped)
+	private boolean playing;
+	private boolean restart;
+	private boolean closed;
+
+	/**
+	 * Creates a new MusicPlayer object. Nothing is read until the music is
+	 * played
+	 *
+	 * @param fileName The music file (a WAV file)
+	 */
+	public MusicPlayer(String fileName)
+	{
+		this.fileName = fileName;
+		thread = new Thread(this, "rgb-music");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Plays the music from the start, over and over
+	 */
+	public synchronized void loop()
+	{
+		playing = true;
+		restart = true;
+		notifyAll();
+	}
+
+	/**
+	 * Stops the music. Does nothing if it is already stopped
+	 */
+	public synchronized void stop()
+	{
+		if (!playing)
+			return;
+		playing = false;
+		notifyAll();
+	}
+
+	/**
+	 * Stops the music for good and lets go of the sound line
+	 */
+	public synchronized void close()
+	{
+		playing = false;
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the music is played, then reads the file into the sound
+	 * line piece by piece until it is stopped
+	 */
+	public void run()
+	{
+		SourceDataLine line = null;
+		AudioInputStream in = null;
+		byte[] chunk = new byte[CHUNK_SIZE];
+		try
+		{
+			while (waitUntilPlaying())
+			{
+				synchronized (this)
+				{
+					if (restart)
+					{
+						restart = false;
+						if (in != null)
+							in.close();
+						in = null;
+					}
+				}
+
+				if (in == null)
+				{
+					in = open();
+					if (line == null)
+					{
+						AudioFormat format = in.getFormat();
+						line = AudioSystem.getSourceDataLine(format);
+						line.open(format, (int) (format.getFrameRate()
+								* LINE_BUFFER / 1000)
+								* format.getFrameSize());
+					}
+					line.start();
+				}
+
+				// Whole frames only, so the left and right channels stay in
+				// step
+				int read = in.read(chunk, 0, chunk.length
+						- chunk.length % in.getFormat().getFrameSize());
+				if (read < 0)
+				{
+					// The end of the file: start reading it again while the
+					// line plays what is left
+					in.close();
+					in = open();
+					continue;
+				}
+				line.write(chunk, 0, read);
+
+				if (!isPlaying())
+				{
+					line.stop();
+					line.flush();
+					in.close();
+					in = null;
+				}
+			}
+		}
+		catch (IOException | LineUnavailableException
+				| IllegalArgumentException e)
+		{
+			System.err.println(fileName + " cannot be played: "
+					+ e.getMessage());
+		}
+		finally
+		{
+			if (line != null)
+				line.close();
+			try
+			{
+				if (in != null)
+					in.close();
+			}
+			catch (IOException e)
+			{
+			}
+		}
+	}
+
+	/**
+	 * Waits until the music should be playing
+	 *
+	 * @return false if the player was closed
+	 */
+	private synchronized boolean waitUntilPlaying()
+	{
+		while (!playing && !closed)
+		{
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				return false;
+			}
+		}
+		return !closed;
+	}
+
+	/**
+	 * Returns whether or not the music should be playing
+	 *
+	 * @return whether or not the music is on
+	 */
+	private synchronized boolean isPlaying()
+	{
+		return playing && !closed;
+	}
+
+	/**
+	 * Opens the music file at its start, as 16-bit PCM
+	 *
+	 * @return the stream of sound
+	 * @throws IOException if the file cannot be read or is not a sound
+	 */
+	private AudioInputStream open() throws IOException
+	{
+		AudioInputStream in;
+		try
+		{
+			in = AudioSystem.getAudioInputStream(new File(fileName));
+		}
+		catch (UnsupportedAudioFileException e)
+		{
+			throw new IOException(fileName + " is not a valid sound", e);
+		}
+
+		AudioFormat source = in.getFormat();
+		if (source.getEncoding() != AudioFormat.Encoding.PCM_SIGNED
+				|| source.getSampleSizeInBits() != 16)
+		{
+			AudioFormat pcm = new AudioFormat(source.getSampleRate(), 16,
+					source.getChannels(), true, false);
+			in = AudioSystem.getAudioInputStream(pcm, in);
+		}
+		return in;
+	}
+}
@@ -0,0 +1,358 @@
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.awt.image.WritableRaster;
+import java.util.IdentityHashMap;
+
+/**
+ * The OverlayStack class
+ *
+ * @author Jiawen
+ * Draws the menu screens that go over the map (the intro, the hint and help
+ * screens, the sound switch, the results, etc.). Each frame the screens that
+ * are showing are added from the bottom up, then drawn together:
+ *
+ * - Every picture's solid part is worked out once (a picture with no
+ * see-through pixels is solid all over). Anything completely behind a solid
+ * picture is not drawn, and whatever draws the map can ask whether the map
+ * or a sprite is hidden before drawing it.
+ *
+ * - Pictures that do not move next to each other in the stack are drawn
+ * into one picture the first time they show up together, and that picture
+ * is kept, so the hint switch, the sound switch and the help switch (or the
+ * hint switch and the level's hint) are drawn with one call. Only the
+ * MAX_COMPOSITES used most recently are kept.
+ *
+ * Positions are in window pixels before scaling; the pictures are drawn
+ * through a ScaledImageCache. Only used by the thread that draws
+ */
+public class OverlayStack
+{
+	// The most pictures one frame can have, and the most combined pictures
+	// kept
+	public static final int MAX_LAYERS = 16;
+	public static final int MAX_COMPOSITES = 8;
+
+	private ScaledImageCache scaled;
+
+	// This frame's pictures from the bottom up, where they go and whether
+	// they stay the same from frame to frame (animations do not)
+	private Image[] images;
+	private int[] layerX, layerY;
+	private boolean[] still;
+	private int noOfLayers;
+
+	// The solid part of every picture seen so far, relative to the
+	// picture's top left (an empty rectangle if no part is solid all over)
+	private IdentityHashMap<Image, Rectangle> solidParts;
+	private Rectangle solid, bounds;
+
+	// The combined pictures kept: the pictures each is made of and where,
+	// where the combined picture goes, and when it was last drawn
+	private Image[][] compositeImages;
+	private int[][] compositePositions;
+	private Image[] composites;
+	private int[] compositeX, compositeY;
+	private long[] compositeUsed;
+	private long frame;
+
+	/**
+	 * Creates a new, empty OverlayStack object
+	 *
+	 * @param scaled Where the pictures resized for each scale are kept
+	 */
+	public OverlayStack(ScaledImageCache scaled)
+	{
+		this.scaled = scaled;
+		images = new Image[MAX_LAYERS];
+		layerX = new int[MAX_LAYERS];
+		layerY = new int[MAX_LAYERS];
+		still = new boolean[MAX_LAYERS];
+		solidParts = new IdentityHashMap<Image, Rectangle>();
+		solid = new Rectangle();
+		bounds = new Rectangle();
+		compositeImages = new Image[MAX_COMPOSITES][];
+		compositePositions = new int[MAX_COMPOSITES][];
+		composites = new Image[MAX_COMPOSITES];
+		compositeX = new int[MAX_COMPOSITES];
+		compositeY = new int[MAX_COMPOSITES];
+		compositeUsed = new long[MAX_COMPOSITES];
+	}
+
+	/**
+	 * Empties the stack for the next frame
+	 */
+	public void clear()
+	{
+		for (int layer = 0; layer < noOfLayers; layer++)
+			images[layer] = null;
+		noOfLayers = 0;
+	}
+
+	/**
+	 * Adds a picture that looks the same every frame on top of the stack
+	 *
+	 * @param image The picture (nothing is added if it is null)
+	 * @param x Where its left side goes
+	 * @param y Where its top goes
+	 * @return the picture's layer, or -1 if it was not added
+	 */
+	public int add(Image image, int x, int y)
+	{
+		return add(image, x, y, true);
+	}
+
+	/**
+	 * Adds a picture that changes from frame to frame (an animation) on top
+	 * of the stack. It is never combined with other pictures
+	 *
+	 * @param image The picture or current frame (nothing is added if it is
+	 *            null)
+	 * @param x Where its left side goes
+	 * @param y Where its top goes
+	 * @return the picture's layer, or -1 if it was not added
+	 */
+	public int addMoving(Image image, int x, int y)
+	{
+		return add(image, x, y, false);
+	}
+
+	/**
+	 * Adds a picture on top of the stack
+	 *
+	 * @param image The picture
+	 * @param x Where its left side goes
+	 * @param y Where its top goes
+	 * @param isStill Whether or not it can be combined with others
+	 * @return the picture's layer, or -1 if it was not added
+	 */
+	private int add(Image image, int x, int y, boolean isStill)
+	{
+		if (image == null || noOfLayers == MAX_LAYERS)
+			return -1;
+		images[noOfLayers] = image;
+		layerX[noOfLayers] = x;
+		layerY[noOfLayers] = y;
+		still[noOfLayers] = isStill && image instanceof BufferedImage;
+		return noOfLayers++;
+	}
+
+	/**
+	 * Returns whether or not a rectangle is completely hidden behind a solid
+	 * picture in the stack
+	 *
+	 * @param x The rectangle's left side
+	 * @param y The rectangle's top
+	 * @param width The rectangle's width
+	 * @param height The rectangle's height
+	 * @return whether or not nothing drawn there would show
+	 */
+	public boolean hides(int x, int y, int width, int height)
+	{
+		return hiddenAbove(-1, x, y, width, height);
+	}
+
+	/**
+	 * Returns whether or not a picture in the stack is completely hidden
+	 * behind a solid picture above it
+	 *
+	 * @param layer The picture's layer (-1 is never hidden)
+	 * @return whether or not none of it would show
+	 */
+	public boolean isHidden(int layer)
+	{
+		return layer >= 0
+				&& hiddenAbove(layer, layerX[layer], layerY[layer],
+						images[layer].getWidth(null), images[layer]
+								.getHeight(null));
+	}
+
+	/**
+	 * Draws every picture in the stack that is not hidden, from the bottom
+	 * up
+	 *
+	 * @param g The graphics context (scaled to the window)
+	 * @param observer Told when more of a picture is loaded
+	 */
+	public void paint(Graphics g, ImageObserver observer)
+	{
+		frame++;
+		int layer = 0;
+		while (layer < noOfLayers)
+		{
+			if (isHidden(layer))
+			{
+				layer++;
+				continue;
+			}
+
+			// Still pictures next to each other (and not hidden) are drawn
+			// as one
+			int end = layer + 1;
+			if (still[layer])
+				while (end < noOfLayers && still[end] && !isHidden(end))
+					end++;
+
+			if (end - layer == 1)
+				scaled.draw(g, images[layer], layerX[layer], layerY[layer],
+						observer);
+			else
+			{
+				int composite = composite(layer, end);
+				scaled.draw(g, composites[composite], compositeX[composite],
+						compositeY[composite], observer);
+			}
+			layer = end;
+		}
+	}
+
+	/**
+	 * Returns whether or not a rectangle is completely hidden behind a solid
+	 * picture higher in the stack than a layer
+	 *
+	 * @param layer Only the pictures above this layer count (-1 for all)
+	 * @param x The rectangle's left side
+	 * @param y The rectangle's top
+	 * @param width The rectangle's width
+	 * @param height The rectangle's height
+	 * @return whether or not the rectangle is hidden
+	 */
+	private boolean hiddenAbove(int layer, int x, int y, int width,
+			int height)
+	{
+		for (int above = layer + 1; above < noOfLayers; above++)
+		{
+			solid.setBounds(solidPart(images[above]));
+			solid.translate(layerX[above], layerY[above]);
+			if (!solid.isEmpty()
+					&& solid.contains(x, y, Math.max(width, 0), Math.max(
+							height, 0)))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the part of a picture that is solid all over, working it out
+	 * the first time the picture is seen. Pictures that are not yet loaded,
+	 * or are not BufferedImages, are treated as see-through
+	 *
+	 * @param image The picture
+	 * @return the solid part, relative to the picture's top left
+	 */
+	private Rectangle solidPart(Image image)
+	{
+		Rectangle part = solidParts.get(image);
+		if (part != null)
+			return part;
+
+		part = new Rectangle();
+		if (image instanceof BufferedImage)
+		{
+			BufferedImage picture = (BufferedImage) image;
+			WritableRaster alpha = picture.getAlphaRaster();
+			boolean allSolid = picture.getTransparency() == Transparency.OPAQUE
+					|| alpha == null;
+			if (!allSolid)
+			{
+				allSolid = true;
+				int[] row = new int[picture.getWidth()];
+				for (int y = 0; y < picture.getHeight() && allSolid; y++)
+				{
+					alpha.getSamples(0, y, picture.getWidth(), 1, 0, row);
+					for (int x = 0; x < row.length && allSolid; x++)
+						allSolid = row[x] == 255;
+				}
+			}
+			if (allSolid)
+				part.setBounds(0, 0, picture.getWidth(), picture.getHeight());
+		}
+		solidParts.put(image, part);
+		return part;
+	}
+
+	/**
+	 * Finds the combined picture of some layers of the stack, drawing it if
+	 * it is not kept (in place of the one drawn longest ago)
+	 *
+	 * @param first The first layer
+	 * @param end One past the last layer
+	 * @return which combined picture it is
+	 */
+	private int composite(int first, int end)
+	{
+		int oldest = 0;
+		for (int composite = 0; composite < MAX_COMPOSITES; composite++)
+		{
+			if (isComposite(composite, first, end))
+			{
+				compositeUsed[composite] = frame;
+				return composite;
+			}
+			if (compositeUsed[composite] < compositeUsed[oldest])
+				oldest = composite;
+		}
+
+		// Everything is drawn into the smallest rectangle around all of it
+		bounds.setBounds(layerX[first], layerY[first], images[first]
+				.getWidth(null), images[first].getHeight(null));
+		for (int layer = first + 1; layer < end; layer++)
+			bounds.add(new Rectangle(layerX[layer], layerY[layer],
+					images[layer].getWidth(null), images[layer]
+							.getHeight(null)));
+
+		// The picture it replaces is never drawn again, at any scale
+		if (composites[oldest] != null)
+		{
+			scaled.forget(composites[oldest]);
+			composites[oldest].flush();
+		}
+		Image combined = SpriteAtlas.createImage(bounds.width, bounds.height);
+		Graphics combinedGraphics = combined.getGraphics();
+		Image[] parts = new Image[end - first];
+		int[] positions = new int[(end - first) * 2];
+		for (int layer = first; layer < end; layer++)
+		{
+			combinedGraphics.drawImage(images[layer], layerX[layer]
+					- bounds.x, layerY[layer] - bounds.y, null);
+			parts[layer - first] = images[layer];
+			positions[(layer - first) * 2] = layerX[layer];
+			positions[(layer - first) * 2 + 1] = layerY[layer];
+		}
+		combinedGraphics.dispose();
+
+		compositeImages[oldest] = parts;
+		compositePositions[oldest] = positions;
+		composites[oldest] = combined;
+		compositeX[oldest] = bounds.x;
+		compositeY[oldest] = bounds.y;
+		compositeUsed[oldest] = frame;
+		return oldest;
+	}
+
+	/**
+	 * Returns whether or not a kept combined picture is made of exactly some
+	 * layers of the stack
+	 *
+	 * @param composite Which combined picture
+	 * @param first The first layer
+	 * @param end One past the last layer
+	 * @return whether or not they match
+	 */
+	private boolean isComposite(int composite, int first, int end)
+	{
+		Image[] parts = compositeImages[composite];
+		if (parts == null || parts.length != end - first)
+			return false;
+		int[] positions = compositePositions[composite];
+		for (int layer = first; layer < end; layer++)
+			if (parts[layer - first] != images[layer]
+					|| positions[(layer - first) * 2] != layerX[layer]
+					|| positions[(layer - first) * 2 + 1] != layerY[layer])
+				return false;
+		return true;
+	}
+}
@@ -0,0 +1,501 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * The PathFinder class
+ *
+ * @author Jiawen
+ * Plans the arrow key presses that walk the player from where it is to a
+ * tile of the map, going around the walls. The tiles the player heads for
+ * most often (the buttons, the question mark, the doors and the palette)
+ * keep a distance field for the level, so reaching them is just a matter of
+ * walking downhill; any other tile is found with an A* search. It is kept up
+ * to date with update() after every step of the game, which only redoes the
+ * work for tiles that stopped or started being walls.
+ *
+ * Its copy of the map and its fields take about 25 bytes per tile, so on a
+ * map big enough to need a ChunkedTileStore it keeps neither. There every
+ * path is found with an A* search over a square of WINDOW_SIZE tiles around
+ * the player and the target, read from the engine when the path is asked
+ * for. A tile too far from the player to fit in one window with it is
+ * turned down (it is well outside the view anyway), and so is one whose
+ * only way there leaves the window
+ */
+public class PathFinder
+{
+	private GameEngine engine;
+
+	// Which tiles can be walked on, row by row, as of the last update (null
+	// if the map is too big to plan paths on)
+	private boolean[] open;
+	private int noOfRows, noOfColumns;
+
+	// The distance fields for the current level and the level they are for.
+	// Only the first few buttons get one; a level with many buttons would
+	// otherwise spend more time on its fields than they save
+	private final int MAX_BUTTON_FIELDS = 8;
+	private ArrayList<DistanceField> fields;
+	private int level;
+
+	// The rows and columns of the square searched on a big map
+	private final int WINDOW_SIZE = 256;
+
+	// Which tiles an A* search can walk on, row by row: the whole map, or on
+	// a big map the window, which starts at firstRow and firstColumn
+	private boolean[] area;
+	private int firstRow, firstColumn, areaRows, areaColumns;
+
+	// Reused for every A* search
+	private int[] cost;
+	private int[] cameFrom;
+
+	/**
+	 * Creates a new PathFinder object for a game
+	 *
+	 * @param engine The game
+	 */
+	public PathFinder(GameEngine engine)
+	{
+		this.engine = engine;
+		fields = new ArrayList<DistanceField>();
+		level = -1;
+		rebuild();
+	}
+
+	/**
+	 * Catches up with the last step of the game. Must be called after every
+	 * step, before the engine's changes are cleared
+	 */
+	public void update()
+	{
+		GridChanges changes = engine.getChanges();
+		if (engine.getLevel() != level
+				|| engine.getNoOfRows() != noOfRows
+				|| engine.getNoOfColumns() != noOfColumns)
+		{
+			rebuild();
+			return;
+		}
+		if (open == null)
+			return;
+
+		if (changes.isEverything())
+		{
+			// Find out which tiles changed by comparing the whole map. Tiles
+			// that opened only shorten paths, but a tile that closed can make
+			// any path longer, so the fields are worked out again
+			boolean closed = false;
+			for (int row = 0; row < noOfRows; row++)
+				for (int column = 0; column < noOfColumns; column++)
+					closed |= updateTile(row, column);
+			if (closed)
+				invalidateFields();
+		}
+		else
+		{
+			for (int tile = 0; tile < changes.getNoOfTiles(); tile++)
+				if (updateTile(changes.getRow(tile), changes.getColumn(tile)))
+					invalidateFields();
+		}
+
+		// The targets can move (for example a new level's buttons)
+		updateTargets();
+	}
+
+	/**
+	 * Plans the key presses that walk the player to a tile
+	 *
+	 * @param row The row to go to
+	 * @param column The column to go to
+	 * @return the keys to press in order (empty if the player is already
+	 *         there), or null if the tile cannot be reached (or, on a big
+	 *         map, not within a window around the player)
+	 */
+	public ArrayList<Input> findPath(int row, int column)
+	{
+		if (row < 0 || row >= noOfRows || column < 0
+				|| column >= noOfColumns)
+			return null;
+		if (open == null)
+			return searchWindow(row, column);
+		if (!open[row * noOfColumns + column])
+			return null;
+
+		for (DistanceField field : fields)
+			if (field.getTargetRow() == row
+					&& field.getTargetColumn() == column)
+				return walkDownhill(field);
+		return search(row, column);
+	}
+
+	/**
+	 * Returns the number of distance fields kept for the level
+	 *
+	 * @return the number of distance fields
+	 */
+	public int getNoOfFields()
+	{
+		return fields.size();
+	}
+
+	/**
+	 * Returns how many distance fields are up to date
+	 *
+	 * @return the number of valid distance fields
+	 */
+	public int getNoOfValidFields()
+	{
+		int valid = 0;
+		for (DistanceField field : fields)
+			if (field.isValid())
+				valid++;
+		return valid;
+	}
+
+	/**
+	 * Starts over for a new level: reads the whole map and drops every
+	 * distance field. On a map too big to keep in memory only the window's
+	 * arrays are kept instead
+	 */
+	private void rebuild()
+	{
+		level = engine.getLevel();
+		noOfRows = engine.getNoOfRows();
+		noOfColumns = engine.getNoOfColumns();
+		fields.clear();
+		if ((long) noOfRows * noOfColumns > ChunkedTileStore.LARGE_MAP)
+		{
+			open = null;
+			if (area == null || area.length != WINDOW_SIZE * WINDOW_SIZE)
+			{
+				area = new boolean[WINDOW_SIZE * WINDOW_SIZE];
+				cost = new int[area.length];
+				cameFrom = new int[area.length];
+			}
+			return;
+		}
+		if (open == null || open.length != noOfRows * noOfColumns)
+		{
+			open = new boolean[noOfRows * noOfColumns];
+			cost = new int[open.length];
+			cameFrom = new int[open.length];
+		}
+		area = open;
+		firstRow = 0;
+		firstColumn = 0;
+		areaRows = noOfRows;
+		areaColumns = noOfColumns;
+		for (int row = 0; row < noOfRows; row++)
+			for (int column = 0; column < noOfColumns; column++)
+				open[row * noOfColumns + column] = engine.getTile(row,
+						column) != GameEngine.WALL;
+		updateTargets();
+	}
+
+	/**
+	 * Reads one tile of the map again
+	 *
+	 * @param row The tile's row
+	 * @param column The tile's column
+	 * @return true if the tile became a wall
+	 */
+	private boolean updateTile(int row, int column)
+	{
+		int tile = row * noOfColumns + column;
+		boolean nowOpen = engine.getTile(row, column) != GameEngine.WALL;
+		if (nowOpen == open[tile])
+			return false;
+
+		open[tile] = nowOpen;
+		if (!nowOpen)
+			return true;
+
+		// An opened tile can only bring tiles closer to a target
+		for (DistanceField field : fields)
+			field.opened(open, row, column);
+		return false;
+	}
+
+	/**
+	 * Marks every distance field as out of date
+	 */
+	private void invalidateFields()
+	{
+		for (DistanceField field : fields)
+			field.invalidate();
+	}
+
+	/**
+	 * Makes sure there is a distance field for every tile the player often
+	 * heads for, keeping the fields whose target has not moved
+	 */
+	private void updateTargets()
+	{
+		ArrayList<DistanceField> targets = new ArrayList<DistanceField>();
+		for (int button = 0; button < Math.min(MAX_BUTTON_FIELDS,
+				engine.getNoOfButtons()); button++)
+		{
+			Button next = engine.getButton(button);
+			keepTarget(targets, next.getRow(), next.getColumn());
+		}
+		QuestionMark qMark = engine.getQuestionMark();
+		keepTarget(targets, qMark.getRow(), qMark.getColumn());
+
+		// The 'yes' and 'no' doors
+		keepTarget(targets, 1, 11);
+		keepTarget(targets, 1, 13);
+
+		// The palette's four squares
+		if (engine.hasPalette())
+			for (int square = 0; square < 4; square++)
+				keepTarget(targets, engine.getPaletteRow() + square,
+						engine.getPaletteColumn());
+
+		fields = targets;
+	}
+
+	/**
+	 * Adds the distance field for a target to a list, reusing the current
+	 * one if there is one
+	 *
+	 * @param targets The list to add to
+	 * @param row The target's row
+	 * @param column The target's column
+	 */
+	private void keepTarget(ArrayList<DistanceField> targets, int row,
+			int column)
+	{
+		if (row < 0 || row >= noOfRows || column < 0 || column >= noOfColumns)
+			return;
+		for (DistanceField field : targets)
+			if (field.getTargetRow() == row
+					&& field.getTargetColumn() == column)
+				return;
+		for (DistanceField field : fields)
+			if (field.getTargetRow() == row
+					&& field.getTargetColumn() == column)
+			{
+				targets.add(field);
+				return;
+			}
+		targets.add(new DistanceField(row, column));
+	}
+
+	/**
+	 * Follows a distance field from the player to its target
+	 *
+	 * @param field The distance field
+	 * @return the keys to press, or null if the target cannot be reached
+	 */
+	private ArrayList<Input> walkDownhill(DistanceField field)
+	{
+		if (!field.isValid())
+			field.compute(open, noOfRows, noOfColumns);
+
+		int row = engine.getPlayerRow();
+		int column = engine.getPlayerColumn();
+		int distance = field.getDistance(row, column);
+
+		// The player can be standing inside a wall (after level 2's
+		// inversion) and still walk out of it
+		if (distance == DistanceField.UNREACHABLE)
+		{
+			if (column > 0)
+				distance = Math.min(distance, field.getDistance(row,
+						column - 1));
+			if (column < noOfColumns - 1)
+				distance = Math.min(distance, field.getDistance(row,
+						column + 1));
+			if (row > 0)
+				distance = Math.min(distance, field.getDistance(row - 1,
+						column));
+			if (row < noOfRows - 1)
+				distance = Math.min(distance, field.getDistance(row + 1,
+						column));
+			if (distance == DistanceField.UNREACHABLE)
+				return null;
+			distance++;
+		}
+
+		ArrayList<Input> keys = new ArrayList<Input>(distance);
+		while (distance > 0)
+		{
+			if (column > 0 && field.getDistance(row, column - 1) < distance)
+			{
+				keys.add(Input.LEFT);
+				column--;
+			}
+			else if (column < noOfColumns - 1
+					&& field.getDistance(row, column + 1) < distance)
+			{
+				keys.add(Input.RIGHT);
+				column++;
+			}
+			else if (row > 0 && field.getDistance(row - 1, column) < distance)
+			{
+				keys.add(Input.UP);
+				row--;
+			}
+			else
+			{
+				keys.add(Input.DOWN);
+				row++;
+			}
+			distance--;
+		}
+		return keys;
+	}
+
+	/**
+	 * Plans a walk on a big map: reads the window around the player and the
+	 * tile from the engine and searches it
+	 *
+	 * @param row The row to go to
+	 * @param column The column to go to
+	 * @return the keys to press, or null if the tile cannot be reached
+	 *         within the window or is too far away to fit in it
+	 */
+	private ArrayList<Input> searchWindow(int row, int column)
+	{
+		int playerRow = engine.getPlayerRow();
+		int playerColumn = engine.getPlayerColumn();
+		if (Math.abs(row - playerRow) >= WINDOW_SIZE - 1
+				|| Math.abs(column - playerColumn) >= WINDOW_SIZE - 1)
+			return null;
+
+		areaRows = Math.min(WINDOW_SIZE, noOfRows);
+		areaColumns = Math.min(WINDOW_SIZE, noOfColumns);
+		firstRow = windowStart(playerRow, row, areaRows, noOfRows);
+		firstColumn = windowStart(playerColumn, column, areaColumns,
+				noOfColumns);
+		for (int areaRow = 0; areaRow < areaRows; areaRow++)
+			for (int areaColumn = 0; areaColumn < areaColumns; areaColumn++)
+				area[areaRow * areaColumns + areaColumn] = engine.getTile(
+						firstRow + areaRow, firstColumn + areaColumn)
+						!= GameEngine.WALL;
+
+		if (!area[(row - firstRow) * areaColumns + column - firstColumn])
+			return null;
+		return search(row, column);
+	}
+
+	/**
+	 * Works out where the window starts along one direction: centred between
+	 * the player and the target, but not past the edges of the map
+	 *
+	 * @param player The player's row or column
+	 * @param target The target's row or column
+	 * @param size The size of the window in that direction
+	 * @param mapSize The size of the map in that direction
+	 * @return the first row or column in the window
+	 */
+	private int windowStart(int player, int target, int size, int mapSize)
+	{
+		int start = (player + target) / 2 - size / 2;
+		return Math.max(0, Math.min(mapSize - size, start));
+	}
+
+	/**
+	 * Finds the shortest path to a tile with an A* search over the area. The
+	 * guess of how far a tile is from the target is the number of rows plus
+	 * columns between them, which is never too much since the player only
+	 * moves up, down, left and right
+	 *
+	 * @param targetRow The row to go to (on the map)
+	 * @param targetColumn The column to go to (on the map)
+	 * @return the keys to press, or null if the tile cannot be reached
+	 */
+	private ArrayList<Input> search(int targetRow, int targetColumn)
+	{
+		int start = (engine.getPlayerRow() - firstRow) * areaColumns
+				+ engine.getPlayerColumn() - firstColumn;
+		int target = (targetRow - firstRow) * areaColumns + targetColumn
+				- firstColumn;
+		Arrays.fill(cost, Integer.MAX_VALUE);
+		Arrays.fill(cameFrom, -1);
+
+		// Each entry is the estimated total length (high half) and the tile
+		// (low half), so the queue hands out the most promising tile first
+		PriorityQueue<Long> queue = new PriorityQueue<Long>();
+		cost[start] = 0;
+		queue.add(((long) estimate(start, target) << 32) | start);
+		int[] neighbours = new int[4];
+		while (!queue.isEmpty())
+		{
+			long entry = queue.poll();
+			int tile = (int) entry;
+			if (tile == target)
+				return keysTo(start, target);
+
+			// Skip entries left behind after a shorter way was found
+			if ((int) (entry >>> 32) > cost[tile] + estimate(tile, target))
+				continue;
+
+			int row = tile / areaColumns;
+			int column = tile % areaColumns;
+			int noOfNeighbours = 0;
+			if (column > 0)
+				neighbours[noOfNeighbours++] = tile - 1;
+			if (column < areaColumns - 1)
+				neighbours[noOfNeighbours++] = tile + 1;
+			if (row > 0)
+				neighbours[noOfNeighbours++] = tile - areaColumns;
+			if (row < areaRows - 1)
+				neighbours[noOfNeighbours++] = tile + areaColumns;
+			for (int next = 0; next < noOfNeighbours; next++)
+			{
+				int neighbour = neighbours[next];
+				if (area[neighbour] && cost[tile] + 1 < cost[neighbour])
+				{
+					cost[neighbour] = cost[tile] + 1;
+					cameFrom[neighbour] = tile;
+					queue.add(((long) (cost[neighbour] + estimate(neighbour,
+							target)) << 32)
+							| neighbour);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Guesses how many steps it is between two tiles of the area
+	 *
+	 * @param from One tile
+	 * @param to The other tile
+	 * @return the number of rows plus columns between them
+	 */
+	private int estimate(int from, int to)
+	{
+		return Math.abs(from / areaColumns - to / areaColumns)
+				+ Math.abs(from % areaColumns - to % areaColumns);
+	}
+
+	/**
+	 * Turns the path found by a search into key presses
+	 *
+	 * @param start The tile the player is on
+	 * @param target The tile that was reached
+	 * @return the keys to press
+	 */
+	private ArrayList<Input> keysTo(int start, int target)
+	{
+		ArrayList<Input> keys = new ArrayList<Input>(cost[target]);
+		for (int tile = target; tile != start; tile = cameFrom[tile])
+		{
+			int from = cameFrom[tile];
+			if (tile == from - 1)
+				keys.add(Input.LEFT);
+			else if (tile == from + 1)
+				keys.add(Input.RIGHT);
+			else if (tile < from)
+				keys.add(Input.UP);
+			else
+				keys.add(Input.DOWN);
+		}
+		Collections.reverse(keys);
+		return keys;
+	}
+}
@@ -29,6 +29,18 @@ public class QuestionMark
 		this.visible = false;
 	}
 
+	/**
+	 * Moves the question mark for a new level
+	 * 
+	 * @param column The column the question mark is in
+	 * @param row The row the question mark is in
+	 */
+	public void moveTo(int column, int row)
+	{
+		this.column = column;
+		this.row = row;
+	}
+
 	/**
 	 * Makes the question mark appear
 	 */
@@ -0,0 +1,633 @@
+/**
+ * The RenderSnapshot class
+ *
+ * @author Jiawen
+ * A copy of everything needed to draw the game as it was after one step:
+ * the grid, the player, the buttons, the question mark, the palette and
+ * which screens are showing. It never changes once made, so the thread that
+ * runs the game can hand it to the thread that draws without any locking.
+ *
+ * Every snapshot is numbered one higher than the one before it and lists the
+ * tiles that changed since that one. Whatever draws the game can only trust
+ * that list if the last snapshot it drew was the one just before; if it
+ * skipped any, it has to redraw the whole grid.
+ *
+ * Only the tiles within KEPT_SIZE rows and columns around the player are
+ * copied (on normal maps that is all of them), so a snapshot of a huge map is
+ * no bigger than one of a normal map. The kept tiles only move once the
+ * player comes within KEPT_MARGIN of their edge, and then the tiles both
+ * places have in common are copied from the previous snapshot, so most steps
+ * on a huge map copy nothing
+ */
+public class RenderSnapshot
+{
+	// The most rows and columns of tiles a snapshot keeps, and how close the
+	// player can come to their edge before they are centred on the player
+	// again. The view is centred on the player, so any window up to twice
+	// KEPT_MARGIN tiles across (256, bigger than any screen) is always kept
+	public static final int KEPT_SIZE = 512;
+	public static final int KEPT_MARGIN = KEPT_SIZE / 4;
+
+	private long sequence;
+	private int level;
+
+	// The kept part of the grid, row by row. Shared with the previous
+	// snapshot when no kept tile changed (it is never written to after the
+	// snapshot is made)
+	private byte[] tiles;
+	private int noOfRows, noOfColumns;
+	private int firstKeptRow, firstKeptColumn, noOfKeptRows,
+			noOfKeptColumns;
+
+	// The tiles that changed since the previous snapshot, or everything
+	private int[] changedRows, changedColumns;
+	private boolean everythingChanged;
+
+	private int playerRow, playerColumn, currentPaint;
+	private boolean palette;
+	private int paletteRow, paletteColumn;
+
+	// Each button's position, value, picture (see Button.getSprite) and
+	// whether it is drawn pressed
+	private int[] buttonRows, buttonColumns, buttonValues, buttonSprites;
+	private boolean[] buttonsPressed;
+
+	private int questionMarkRow, questionMarkColumn;
+	private boolean questionMarkShowing;
+
+	// The screens and menus, packed the same way as
+	// GameEngine.getScreenState
+	private int screenState;
+
+	/**
+	 * Copies the game's state after its last step. The engine's changes must
+	 * not have been cleared yet
+	 *
+	 * @param engine The game
+	 * @param previous The snapshot made before this one, or null if this is
+	 *            the first
+	 */
+	public RenderSnapshot(GameEngine engine, RenderSnapshot previous)
+	{
+		sequence = previous == null ? 1 : previous.sequence + 1;
+		level = engine.getLevel();
+		noOfRows = engine.getNoOfRows();
+		noOfColumns = engine.getNoOfColumns();
+
+		playerRow = engine.getPlayerRow();
+		playerColumn = engine.getPlayerColumn();
+
+		// The kept tiles stay where they were unless the player got too
+		// close to their edge (or the map changed size)
+		GridChanges changes = engine.getChanges();
+		boolean sameSize = previous != null && previous.noOfRows == noOfRows
+				&& previous.noOfColumns == noOfColumns;
+		noOfKeptRows = Math.min(noOfRows, KEPT_SIZE);
+		noOfKeptColumns = Math.min(noOfColumns, KEPT_SIZE);
+		firstKeptRow = keptStart(sameSize ? previous.firstKeptRow : -1,
+				playerRow, noOfRows, noOfKeptRows);
+		firstKeptColumn = keptStart(sameSize ? previous.firstKeptColumn : -1,
+				playerColumn, noOfColumns, noOfKeptColumns);
+
+		// Only the tiles that changed are copied over the previous grid,
+		// unless the kept part moved
+		everythingChanged = !sameSize || changes.isEverything();
+		if (everythingChanged || previous.firstKeptRow != firstKeptRow
+				|| previous.firstKeptColumn != firstKeptColumn)
+			copyTiles(engine, everythingChanged ? null : previous);
+		else
+			tiles = previous.tiles;
+
+		if (everythingChanged)
+		{
+			changedRows = new int[0];
+			changedColumns = changedRows;
+		}
+		else
+		{
+			changedRows = new int[changes.getNoOfTiles()];
+			changedColumns = new int[changes.getNoOfTiles()];
+			boolean copied = tiles != previous.tiles;
+			for (int tile = 0; tile < changedRows.length; tile++)
+			{
+				int row = changes.getRow(tile);
+				int column = changes.getColumn(tile);
+				changedRows[tile] = row;
+				changedColumns[tile] = column;
+				if (isKept(row, column))
+				{
+					if (!copied)
+						tiles = tiles.clone();
+					copied = true;
+					tiles[(row - firstKeptRow) * noOfKeptColumns + column
+							- firstKeptColumn] = (byte) engine.getTile(row,
+							column);
+				}
+			}
+		}
+
+		currentPaint = engine.getCurrentPaint();
+		palette = engine.hasPalette();
+		paletteRow = engine.getPaletteRow();
+		paletteColumn = engine.getPaletteColumn();
+
+		int noOfButtons = engine.getNoOfButtons();
+		buttonRows = new int[noOfButtons];
+		buttonColumns = new int[noOfButtons];
+		buttonValues = new int[noOfButtons];
+		buttonSprites = new int[noOfButtons];
+		buttonsPressed = new boolean[noOfButtons];
+		for (int button = 0; button < noOfButtons; button++)
+		{
+			Button next = engine.getButton(button);
+			buttonRows[button] = next.getRow();
+			buttonColumns[button] = next.getColumn();
+			buttonValues[button] = next.getCurrentValue();
+
+			buttonsPressed[button] = next.isPressed();
+			buttonSprites[button] = next.getSprite();
+		}
+
+		QuestionMark qMark = engine.getQuestionMark();
+		questionMarkRow = qMark.getRow();
+		questionMarkColumn = qMark.getColumn();
+		questionMarkShowing = engine.isQuestionMarkShowing();
+		screenState = engine.getScreenState();
+	}
+
+	/**
+	 * Returns the snapshot's number; each one is one higher than the one
+	 * before it
+	 *
+	 * @return the snapshot's number
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * Returns whether or not this snapshot was made right after another one,
+	 * so that its list of changed tiles can be applied on top of it
+	 *
+	 * @param other The snapshot that was drawn last, or null
+	 * @return whether or not this snapshot directly follows it
+	 */
+	public boolean follows(RenderSnapshot other)
+	{
+		return other != null && sequence == other.sequence + 1;
+	}
+
+	/**
+	 * Returns the level
+	 *
+	 * @return the level
+	 */
+	public int getLevel()
+	{
+		return level;
+	}
+
+	/**
+	 * Works out where the kept tiles start in one direction: where they
+	 * were, unless the player is within KEPT_MARGIN of an edge that is not
+	 * the edge of the map, in which case they are centred on the player
+	 *
+	 * @param previousStart Where they started in the previous snapshot (-1
+	 *            to centre them)
+	 * @param player The player's row or column
+	 * @param size The number of rows or columns in the map
+	 * @param kept The number of rows or columns kept
+	 * @return the first kept row or column
+	 */
+	private static int keptStart(int previousStart, int player, int size,
+			int kept)
+	{
+		boolean farFromStart = player - previousStart >= KEPT_MARGIN
+				|| previousStart == 0;
+		boolean farFromEnd = previousStart + kept - 1 - player >= KEPT_MARGIN
+				|| previousStart + kept == size;
+		if (previousStart >= 0 && farFromStart && farFromEnd)
+			return previousStart;
+		return Math.max(0, Math.min(size - kept, player - kept / 2));
+	}
+
+	/**
+	 * Copies the kept tiles into a new array. The tiles the previous
+	 * snapshot also kept are copied from it; only the rest are read from the
+	 * game (tiles that changed this step are put right afterwards)
+	 *
+	 * @param engine The game
+	 * @param previous The previous snapshot, or null to read every tile
+	 */
+	private void copyTiles(GameEngine engine, RenderSnapshot previous)
+	{
+		tiles = new byte[noOfKeptRows * noOfKeptColumns];
+		for (int row = 0; row < noOfKeptRows; row++)
+		{
+			int mapRow = firstKeptRow + row;
+
+			// The columns both snapshots keep in this row (none if left is
+			// past right)
+			int left = firstKeptColumn;
+			int right = left - 1;
+			if (previous != null && mapRow >= previous.firstKeptRow
+					&& mapRow < previous.firstKeptRow + previous.noOfKeptRows)
+			{
+				left = Math.max(firstKeptColumn, previous.firstKeptColumn);
+				right = Math.min(firstKeptColumn + noOfKeptColumns,
+						previous.firstKeptColumn + previous.noOfKeptColumns)
+						- 1;
+				if (right >= left)
+					System.arraycopy(previous.tiles, (mapRow
+							- previous.firstKeptRow)
+							* previous.noOfKeptColumns + left
+							- previous.firstKeptColumn, tiles, row
+							* noOfKeptColumns + left - firstKeptColumn, right
+							- left + 1);
+			}
+			for (int column = firstKeptColumn; column < firstKeptColumn
+					+ noOfKeptColumns; column++)
+				if (column < left || column > right)
+					tiles[row * noOfKeptColumns + column - firstKeptColumn] =
+							(byte) engine.getTile(mapRow, column);
+		}
+	}
+
+	/**
+	 * Returns one tile of the grid. Only kept tiles can be asked for
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return the tile's value
+	 */
+	public int getTile(int row, int column)
+	{
+		return tiles[(row - firstKeptRow) * noOfKeptColumns + column
+				- firstKeptColumn];
+	}
+
+	/**
+	 * Returns whether or not a tile was copied into the snapshot
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return whether or not getTile can be asked for the tile
+	 */
+	public boolean isKept(int row, int column)
+	{
+		return row >= firstKeptRow && row < firstKeptRow + noOfKeptRows
+				&& column >= firstKeptColumn
+				&& column < firstKeptColumn + noOfKeptColumns;
+	}
+
+	/**
+	 * Returns the first row of the kept tiles
+	 *
+	 * @return the first kept row
+	 */
+	public int getFirstKeptRow()
+	{
+		return firstKeptRow;
+	}
+
+	/**
+	 * Returns the last row of the kept tiles
+	 *
+	 * @return the last kept row
+	 */
+	public int getLastKeptRow()
+	{
+		return firstKeptRow + noOfKeptRows - 1;
+	}
+
+	/**
+	 * Returns the first column of the kept tiles
+	 *
+	 * @return the first kept column
+	 */
+	public int getFirstKeptColumn()
+	{
+		return firstKeptColumn;
+	}
+
+	/**
+	 * Returns the last column of the kept tiles
+	 *
+	 * @return the last kept column
+	 */
+	public int getLastKeptColumn()
+	{
+		return firstKeptColumn + noOfKeptColumns - 1;
+	}
+
+	/**
+	 * Returns the number of rows in the map
+	 *
+	 * @return the number of rows
+	 */
+	public int getNoOfRows()
+	{
+		return noOfRows;
+	}
+
+	/**
+	 * Returns the number of columns in the map
+	 *
+	 * @return the number of columns
+	 */
+	public int getNoOfColumns()
+	{
+		return noOfColumns;
+	}
+
+	/**
+	 * Returns whether or not the whole grid changed since the previous
+	 * snapshot
+	 *
+	 * @return whether or not everything changed
+	 */
+	public boolean isEverythingChanged()
+	{
+		return everythingChanged;
+	}
+
+	/**
+	 * Returns the number of tiles that changed since the previous snapshot
+	 * (when not everything changed)
+	 *
+	 * @return the number of changed tiles
+	 */
+	public int getNoOfChangedTiles()
+	{
+		return changedRows.length;
+	}
+
+	/**
+	 * Returns the row of a changed tile
+	 *
+	 * @param tile Which changed tile
+	 * @return the tile's row
+	 */
+	public int getChangedRow(int tile)
+	{
+		return changedRows[tile];
+	}
+
+	/**
+	 * Returns the column of a changed tile
+	 *
+	 * @param tile Which changed tile
+	 * @return the tile's column
+	 */
+	public int getChangedColumn(int tile)
+	{
+		return changedColumns[tile];
+	}
+
+	/**
+	 * Returns the row the player is standing on
+	 *
+	 * @return the player's row
+	 */
+	public int getPlayerRow()
+	{
+		return playerRow;
+	}
+
+	/**
+	 * Returns the column the player is standing on
+	 *
+	 * @return the player's column
+	 */
+	public int getPlayerColumn()
+	{
+		return playerColumn;
+	}
+
+	/**
+	 * Returns the colour the player is painted
+	 *
+	 * @return RED_PAINT, GREEN_PAINT, BLUE_PAINT or NO_PAINT
+	 */
+	public int getCurrentPaint()
+	{
+		return currentPaint;
+	}
+
+	/**
+	 * Returns whether or not the level has a palette
+	 *
+	 * @return whether or not there is a palette
+	 */
+	public boolean hasPalette()
+	{
+		return palette;
+	}
+
+	/**
+	 * Returns the row of the palette's top (red) square
+	 *
+	 * @return the palette's row
+	 */
+	public int getPaletteRow()
+	{
+		return paletteRow;
+	}
+
+	/**
+	 * Returns the column of the palette
+	 *
+	 * @return the palette's column
+	 */
+	public int getPaletteColumn()
+	{
+		return paletteColumn;
+	}
+
+	/**
+	 * Returns the number of buttons in the level
+	 *
+	 * @return the number of buttons
+	 */
+	public int getNoOfButtons()
+	{
+		return buttonRows.length;
+	}
+
+	/**
+	 * Returns the row a button is in
+	 *
+	 * @param button Which button
+	 * @return the button's row
+	 */
+	public int getButtonRow(int button)
+	{
+		return buttonRows[button];
+	}
+
+	/**
+	 * Returns the column a button is in
+	 *
+	 * @param button Which button
+	 * @return the button's column
+	 */
+	public int getButtonColumn(int button)
+	{
+		return buttonColumns[button];
+	}
+
+	/**
+	 * Returns the value a button is at
+	 *
+	 * @param button Which button
+	 * @return the button's value
+	 */
+	public int getButtonValue(int button)
+	{
+		return buttonValues[button];
+	}
+
+	/**
+	 * Returns which picture a button is drawn with
+	 *
+	 * @param button Which button
+	 * @return the button's picture (see Button.getSprite)
+	 */
+	public int getButtonSprite(int button)
+	{
+		return buttonSprites[button];
+	}
+
+	/**
+	 * Returns whether or not a button is drawn pressed
+	 *
+	 * @param button Which button
+	 * @return whether or not the button is pressed
+	 */
+	public boolean isButtonPressed(int button)
+	{
+		return buttonsPressed[button];
+	}
+
+	/**
+	 * Returns the row of the question mark
+	 *
+	 * @return the question mark's row
+	 */
+	public int getQuestionMarkRow()
+	{
+		return questionMarkRow;
+	}
+
+	/**
+	 * Returns the column of the question mark
+	 *
+	 * @return the question mark's column
+	 */
+	public int getQuestionMarkColumn()
+	{
+		return questionMarkColumn;
+	}
+
+	/**
+	 * Returns whether or not the question mark should be drawn
+	 *
+	 * @return whether or not the question mark is showing
+	 */
+	public boolean isQuestionMarkShowing()
+	{
+		return questionMarkShowing;
+	}
+
+	/**
+	 * Returns all the screens and menus packed into one number (see
+	 * GameEngine.getScreenState)
+	 *
+	 * @return the screen state
+	 */
+	public int getScreenState()
+	{
+		return screenState;
+	}
+
+	/**
+	 * Returns the player's personality colour once the game is finished
+	 *
+	 * @return RED_CHOICE, BLUE_CHOICE or GREEN_CHOICE (0 before the end)
+	 */
+	public int getColourResult()
+	{
+		return screenState >>> 7;
+	}
+
+	/**
+	 * Returns whether or not the level-not-completed warning is showing
+	 *
+	 * @return whether or not the warning is showing
+	 */
+	public boolean isWarningMessageOn()
+	{
+		return (screenState & 1) != 0;
+	}
+
+	/**
+	 * Returns whether or not the hint screen is showing
+	 *
+	 * @return whether or not the hint is showing
+	 */
+	public boolean isHintScreenOn()
+	{
+		return (screenState & 2) != 0;
+	}
+
+	/**
+	 * Returns whether or not the help screen is showing
+	 *
+	 * @return whether or not the help is showing
+	 */
+	public boolean isHelpScreenOn()
+	{
+		return (screenState & 4) != 0;
+	}
+
+	/**
+	 * Returns whether or not the sound is on
+	 *
+	 * @return whether or not the sound is on
+	 */
+	public boolean isSoundOn()
+	{
+		return (screenState & 8) != 0;
+	}
+
+	/**
+	 * Returns whether or not the level's question is showing
+	 *
+	 * @return whether or not the question is showing
+	 */
+	public boolean isQuestionScreenOn()
+	{
+		return (screenState & 16) != 0;
+	}
+
+	/**
+	 * Returns whether or not the intro screen is showing
+	 *
+	 * @return whether or not the intro is showing
+	 */
+	public boolean isIntroOn()
+	{
+		return (screenState & 32) != 0;
+	}
+
+	/**
+	 * Returns whether or not the final result screen is showing
+	 *
+	 * @return whether or not the result is showing
+	 */
+	public boolean isResultOn()
+	{
+		return (screenState & 64) != 0;
+	}
+}
@@ -0,0 +1,326 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+/**
+ * The ReplayDriver class
+ *
+ * @author Jiawen
+ * Plays a journal written by InputJournal back through a GameEngine as fast
+ * as possible, with nothing drawn and no sounds. The keyframes in the
+ * journal let it jump to any recorded key or level without playing
+ * everything before it
+ */
+public class ReplayDriver
+{
+	/**
+	 * Where a keyframe is in the journal and what it is for
+	 */
+	private static class Keyframe
+	{
+		private int input;
+		private long tick;
+		private int level;
+		private int stateStart;
+		private int stateLength;
+	}
+
+	private LevelPack levels;
+
+	// How much memory the recorded game's undo journal had
+	private int undoMemory;
+
+	// Every key in the journal and the tick it was handled on
+	private long[] ticks;
+	private int[] keyCodes;
+	private int noOfInputs;
+
+	// The whole journal (the keyframes' states are read from it) and where
+	// each keyframe is
+	private byte[] journal;
+	private ArrayList<Keyframe> keyframes;
+
+	// The game being played back, and how many keys it has handled
+	private GameEngine engine;
+	private int position;
+
+	/**
+	 * Reads a journal and gets ready to play it from the start
+	 *
+	 * @param journalFile The journal
+	 * @param levels The level pack the recorded game used
+	 * @throws IOException if the journal cannot be read or is not valid
+	 */
+	public ReplayDriver(File journalFile, LevelPack levels) throws IOException
+	{
+		this.levels = levels;
+		journal = Files.readAllBytes(journalFile.toPath());
+		ByteBuffer in = ByteBuffer.wrap(journal);
+		if (in.remaining() < 6 || in.getInt() != InputJournal.MAGIC)
+			throw new IOException(journalFile + " is not an input journal");
+		int version = in.getShort();
+		if (version != InputJournal.VERSION)
+			throw new IOException(journalFile + " is version " + version
+					+ ", expected " + InputJournal.VERSION);
+		readVarLong(in);
+		undoMemory = (int) readVarLong(in);
+
+		// Every key takes at least three bytes, so this is always enough
+		ticks = new long[in.remaining() / 3 + 1];
+		keyCodes = new int[ticks.length];
+		keyframes = new ArrayList<Keyframe>();
+		long tick = 0;
+		while (in.hasRemaining())
+		{
+			int type = in.get();
+			if (type == InputJournal.INPUT)
+			{
+				tick += readVarLong(in);
+				ticks[noOfInputs] = tick;
+				keyCodes[noOfInputs] = (int) readVarLong(in);
+				noOfInputs++;
+			}
+			else if (type == InputJournal.KEYFRAME)
+			{
+				int length = (int) readVarLong(in);
+				int end = in.position() + length;
+				Keyframe keyframe = new Keyframe();
+				keyframe.input = (int) readVarLong(in);
+				keyframe.tick = readVarLong(in);
+				keyframe.level = in.get();
+				keyframe.stateStart = in.position();
+				keyframe.stateLength = end - in.position();
+				keyframes.add(keyframe);
+				in.position(end);
+			}
+			else
+				throw new IOException(journalFile + " has an unknown record "
+						+ type + " at byte " + (in.position() - 1));
+		}
+
+		rewind();
+	}
+
+	/**
+	 * Goes back to the start of the journal with a new game
+	 */
+	public void rewind()
+	{
+		engine = new GameEngine(levels);
+		engine.setUndoMemory(undoMemory);
+		position = 0;
+	}
+
+	/**
+	 * Plays keys until a certain number of them have been handled
+	 *
+	 * @param input How many keys should have been handled afterwards
+	 * @throws UncheckedIOException if a level's map cannot be read
+	 */
+	public void runTo(int input)
+	{
+		int end = Math.min(input, noOfInputs);
+		while (position < end)
+		{
+			engine.step(Input.fromKeyCode(keyCodes[position]));
+			position++;
+		}
+	}
+
+	/**
+	 * Plays every key left in the journal
+	 *
+	 * @throws UncheckedIOException if a level's map cannot be read
+	 */
+	public void runToEnd()
+	{
+		runTo(noOfInputs);
+	}
+
+	/**
+	 * Jumps to just after a certain number of keys have been handled. The
+	 * game is put back from the last keyframe before that point and only the
+	 * keys after it are played
+	 *
+	 * @param input How many keys should have been handled
+	 * @throws IOException if a keyframe cannot be read
+	 */
+	public void seekToInput(int input) throws IOException
+	{
+		Keyframe start = null;
+		for (Keyframe keyframe : keyframes)
+		{
+			if (keyframe.input > input)
+				break;
+			start = keyframe;
+		}
+
+		if (start != null && (input < position || start.input > position))
+			restore(start);
+		else if (input < position)
+			rewind();
+		runTo(input);
+	}
+
+	/**
+	 * Jumps to the moment the game first reached a level, without playing
+	 * the levels before it
+	 *
+	 * @param level The level to go to
+	 * @return false if the journal never reaches the level (the replay is
+	 *         left where it was)
+	 * @throws IOException if a keyframe cannot be read
+	 */
+	public boolean seekToLevel(int level) throws IOException
+	{
+		// Every game starts on level 1
+		if (level == 1)
+		{
+			rewind();
+			return true;
+		}
+
+		// A keyframe is written whenever the level changes
+		for (Keyframe keyframe : keyframes)
+			if (keyframe.level == level)
+			{
+				restore(keyframe);
+				return true;
+			}
+		return false;
+	}
+
+	/**
+	 * Puts the game back to a keyframe
+	 *
+	 * @param keyframe The keyframe
+	 * @throws IOException if the keyframe cannot be read
+	 */
+	private void restore(Keyframe keyframe) throws IOException
+	{
+		engine.readState(new DataInputStream(new ByteArrayInputStream(
+				journal, keyframe.stateStart, keyframe.stateLength)));
+		position = keyframe.input;
+	}
+
+	/**
+	 * Returns the game being played back
+	 *
+	 * @return the game
+	 */
+	public GameEngine getEngine()
+	{
+		return engine;
+	}
+
+	/**
+	 * Returns how many keys have been played
+	 *
+	 * @return the number of keys played
+	 */
+	public int getPosition()
+	{
+		return position;
+	}
+
+	/**
+	 * Returns the tick the last played key was handled on
+	 *
+	 * @return the tick, or 0 if no key has been played
+	 */
+	public long getTick()
+	{
+		if (position == 0)
+			return 0;
+		return ticks[position - 1];
+	}
+
+	/**
+	 * Returns the number of keys in the journal
+	 *
+	 * @return the number of keys
+	 */
+	public int getNoOfInputs()
+	{
+		return noOfInputs;
+	}
+
+	/**
+	 * Returns the number of keyframes in the journal
+	 *
+	 * @return the number of keyframes
+	 */
+	public int getNoOfKeyframes()
+	{
+		return keyframes.size();
+	}
+
+	/**
+	 * Reads a number written by InputJournal.writeVarLong
+	 *
+	 * @param in Where to read the number from
+	 * @return the number
+	 * @throws IOException if the number does not end
+	 */
+	private static long readVarLong(ByteBuffer in) throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			int next = in.get();
+			value |= (long) (next & 0x7F) << shift;
+			if ((next & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Number too long in input journal");
+	}
+
+	/**
+	 * Plays a journal back and prints where the game ended up
+	 *
+	 * @param args The journal, optionally followed by -level and the level
+	 *            to start from
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length == 0)
+		{
+			System.out.println("Usage: java ReplayDriver journal [-level n]");
+			return;
+		}
+
+		long start = System.nanoTime();
+		ReplayDriver replay = new ReplayDriver(new File(args[0]),
+				new LevelPack(new File(LevelPack.DEFAULT_PACK)));
+		if (args.length > 2 && args[1].equals("-level"))
+		{
+			int level = Integer.parseInt(args[2]);
+			if (!replay.seekToLevel(level))
+			{
+				System.out.println("The journal never reaches level " + level);
+				return;
+			}
+			System.out.println("Level " + level + " starts after key "
+					+ replay.getPosition());
+		}
+		replay.runToEnd();
+		long time = System.nanoTime() - start;
+
+		GameEngine engine = replay.getEngine();
+		System.out.println(replay.getNoOfInputs() + " keys, "
+				+ replay.getNoOfKeyframes() + " keyframes, last tick "
+				+ replay.getTick());
+		System.out.println("Level " + engine.getLevel() + ", player at row "
+				+ engine.getPlayerRow() + " column "
+				+ engine.getPlayerColumn() + ", scores red "
+				+ engine.getChoiceScore(GameEngine.RED_CHOICE) + " green "
+				+ engine.getChoiceScore(GameEngine.GREEN_CHOICE) + " blue "
+				+ engine.getChoiceScore(GameEngine.BLUE_CHOICE));
+		System.out.printf("Replayed in %.2f ms%n", time / 1000000.0);
+	}
+}
@@ -0,0 +1,208 @@
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The ScaledImageCache class
+ *
+ * @author Jiawen
+ * Draws pictures at any scale without Java2D having to resize them every time
+ * they are drawn. The first time a picture is drawn at a scale, a copy of it
+ * is made at that size and kept; from then on it is copied straight onto the
+ * screen pixel for pixel. Each scale has its own set of copies, and only the
+ * pictures actually drawn at that scale are ever copied. Only the sets of the
+ * MAX_SCALES scales used most recently are kept (resizing the window goes
+ * through a lot of scales). Only used by the thread that draws.
+ *
+ * Pictures are drawn at their map position under a scaled graphics context,
+ * the same as without the cache. Pictures that are not BufferedImages (which
+ * may still be loading or changing) are left to Java2D
+ */
+public class ScaledImageCache
+{
+	// The most scales a set of copies is kept for
+	public static final int MAX_SCALES = 3;
+
+	// Scales closer than this share a set
+	private final double SCALE_STEP = 1000;
+
+	// The sets of copies, the one used longest ago first, by scale (times
+	// SCALE_STEP). Each set finds a copy by the picture, or by a sprite
+	// number for part of a picture
+	private LinkedHashMap<Integer, HashMap<Object, Image>> sets;
+
+	// The set used last, so drawing a frame only looks up its scale once
+	private int lastScale;
+	private HashMap<Object, Image> lastSet;
+
+	// Puts the graphics context back to drawing in screen pixels
+	private final AffineTransform SCREEN = new AffineTransform();
+
+	/**
+	 * Creates a new, empty ScaledImageCache object
+	 */
+	public ScaledImageCache()
+	{
+		sets = new LinkedHashMap<Integer, HashMap<Object, Image>>(
+				MAX_SCALES * 2, 0.75f, true)
+		{
+			protected boolean removeEldestEntry(
+					Map.Entry<Integer, HashMap<Object, Image>> eldest)
+			{
+				if (size() <= MAX_SCALES)
+					return false;
+				for (Image copy : eldest.getValue().values())
+					copy.flush();
+				return true;
+			}
+		};
+		lastScale = -1;
+	}
+
+	/**
+	 * Draws a whole picture
+	 *
+	 * @param g The graphics context to draw on
+	 * @param image The picture
+	 * @param x Where to draw the left side (before scaling)
+	 * @param y Where to draw the top (before scaling)
+	 * @param observer Told when more of the picture is loaded
+	 */
+	public void draw(Graphics g, Image image, int x, int y,
+			ImageObserver observer)
+	{
+		if (!(image instanceof BufferedImage))
+		{
+			g.drawImage(image, x, y, observer);
+			return;
+		}
+		draw(g, image, image, 0, 0, image.getWidth(null),
+				image.getHeight(null), x, y);
+	}
+
+	/**
+	 * Draws part of a picture (for example one sprite of an atlas)
+	 *
+	 * @param g The graphics context to draw on
+	 * @param key What the part is known by (the same part always has the
+	 *            same key)
+	 * @param image The whole picture
+	 * @param sourceX The left side of the part in the picture
+	 * @param sourceY The top of the part in the picture
+	 * @param width The width of the part
+	 * @param height The height of the part
+	 * @param x Where to draw the left side (before scaling)
+	 * @param y Where to draw the top (before scaling)
+	 */
+	public void draw(Graphics g, Object key, Image image, int sourceX,
+			int sourceY, int width, int height, int x, int y)
+	{
+		Graphics2D g2 = (Graphics2D) g;
+		AffineTransform transform = g2.getTransform();
+		double scale = transform.getScaleX();
+
+		// Nothing to gain when the picture is not resized, or is turned or
+		// stretched differently in each direction
+		if (scale == 1 && transform.getScaleY() == 1
+				|| transform.getShearX() != 0 || transform.getShearY() != 0
+				|| transform.getScaleY() != scale)
+		{
+			g.drawImage(image, x, y, x + width, y + height, sourceX, sourceY,
+					sourceX + width, sourceY + height, null);
+			return;
+		}
+
+		HashMap<Object, Image> set = set(scale);
+		Image copy = set.get(key);
+		if (copy == null)
+		{
+			copy = resize(image, sourceX, sourceY, width, height, scale);
+			set.put(key, copy);
+		}
+
+		// The copy already has the screen size, so it is drawn without
+		// scaling, at the screen pixel the scaled position falls on
+		g2.setTransform(SCREEN);
+		g2.drawImage(copy, (int) Math.floor(x * scale
+				+ transform.getTranslateX()), (int) Math.floor(y * scale
+				+ transform.getTranslateY()), null);
+		g2.setTransform(transform);
+	}
+
+	/**
+	 * Drops the copies of a picture (or part of one) at every scale, for a
+	 * picture that will not be drawn again
+	 *
+	 * @param key The picture, or the key its part was drawn with
+	 */
+	public void forget(Object key)
+	{
+		for (HashMap<Object, Image> set : sets.values())
+		{
+			Image copy = set.remove(key);
+			if (copy != null)
+				copy.flush();
+		}
+	}
+
+	/**
+	 * Returns the set of copies for a scale, starting a new one if needed
+	 *
+	 * @param scale The scale
+	 * @return the scale's set
+	 */
+	private HashMap<Object, Image> set(double scale)
+	{
+		int key = (int) Math.round(scale * SCALE_STEP);
+		if (key == lastScale)
+			return lastSet;
+
+		HashMap<Object, Image> set = sets.get(key);
+		if (set == null)
+		{
+			set = new HashMap<Object, Image>();
+			sets.put(key, set);
+		}
+		lastScale = key;
+		lastSet = set;
+		return set;
+	}
+
+	/**
+	 * Makes a resized copy of part of a picture. Whole scales keep every
+	 * pixel sharp; other scales blend neighbouring pixels
+	 *
+	 * @param image The whole picture
+	 * @param sourceX The left side of the part
+	 * @param sourceY The top of the part
+	 * @param width The width of the part
+	 * @param height The height of the part
+	 * @param scale How much bigger the copy is
+	 * @return the copy
+	 */
+	private static Image resize(Image image, int sourceX, int sourceY,
+			int width, int height, double scale)
+	{
+		int copyWidth = Math.max(1, (int) Math.ceil(width * scale));
+		int copyHeight = Math.max(1, (int) Math.ceil(height * scale));
+		Image copy = SpriteAtlas.createImage(copyWidth, copyHeight);
+		Graphics2D g = (Graphics2D) copy.getGraphics();
+		if (scale == Math.rint(scale))
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		else
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(image, 0, 0, copyWidth, copyHeight, sourceX, sourceY,
+				sourceX + width, sourceY + height, null);
+		g.dispose();
+		return copy;
+	}
+}
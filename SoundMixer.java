@@ -0,0 +1,356 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * The SoundMixer class
+ *
+ * @author Jiawen
+ * Plays the short sound effects. Every sound gets a few Clips (voices) that
+ * are opened once with its PCM data, so playing a sound only rewinds and
+ * starts one of them. If all of a sound's voices are busy, the one that
+ * started longest ago is cut off and reused (voice stealing).
+ *
+ * play() only puts the sound's number in a queue and wakes the mixer's own
+ * thread, which starts the voice, so it never waits and never makes new
+ * objects. The time from play() to the voice starting is measured for every
+ * sound and compared with a latency budget (see printStats)
+ */
+public class SoundMixer implements Runnable
+{
+	// How many sounds can wait to be started at once (a power of two)
+	private final int QUEUE_SIZE = 64;
+
+	// Every sound's voices and when each voice was last started
+	private ArrayList<Clip[]> voices;
+	private ArrayList<long[]> voiceStarts;
+	private ArrayList<String> names;
+	private int voicesPerSound;
+
+	// The queue of sounds to start. Each slot holds a sound number and the
+	// time it was asked for; its sequence number says whether it is free or
+	// filled, so several threads can add to it without a lock
+	private int[] queuedSounds;
+	private long[] queuedTimes;
+	private AtomicLongArray sequences;
+	private AtomicLong tail;
+	private long head;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	// Measurements (only changed by the mixer's thread, except for the
+	// number of sounds dropped because the queue was full)
+	private long latencyBudget;
+	private volatile long noOfPlays, noOfSteals, noOfDropped, noOfLate,
+			noOfSilent, totalLatency, maxLatency;
+	private long[] latencyBuckets;
+
+	/**
+	 * Creates a new SoundMixer object
+	 *
+	 * @param voicesPerSound How many copies of each sound can play at once
+	 * @param latencyBudget How long starting a sound may take, in
+	 *            milliseconds; slower starts are counted as late
+	 */
+	public SoundMixer(int voicesPerSound, long latencyBudget)
+	{
+		this.voicesPerSound = voicesPerSound;
+		this.latencyBudget = latencyBudget * 1000000L;
+		voices = new ArrayList<Clip[]>();
+		voiceStarts = new ArrayList<long[]>();
+		names = new ArrayList<String>();
+
+		queuedSounds = new int[QUEUE_SIZE];
+		queuedTimes = new long[QUEUE_SIZE];
+		sequences = new AtomicLongArray(QUEUE_SIZE);
+		for (int slot = 0; slot < QUEUE_SIZE; slot++)
+			sequences.set(slot, slot);
+		tail = new AtomicLong();
+
+		// Bucket n counts starts that took less than 2^n milliseconds
+		latencyBuckets = new long[8];
+	}
+
+	/**
+	 * Adds a sound and opens its voices. Must be called before start()
+	 *
+	 * @param sample The sound, or null if it could not be loaded
+	 * @return the sound's number for play(), or -1 if there is no sound
+	 */
+	public int add(SoundSample sample)
+	{
+		if (sample == null)
+			return -1;
+
+		Clip[] soundVoices = new Clip[voicesPerSound];
+		for (int voice = 0; voice < voicesPerSound; voice++)
+		{
+			try
+			{
+				soundVoices[voice] = AudioSystem.getClip();
+				soundVoices[voice].open(sample.getFormat(), sample.getData(),
+						0, sample.getData().length);
+			}
+			catch (LineUnavailableException | IllegalArgumentException e)
+			{
+				// No sound card (or no free lines): the sound stays silent
+				if (voice == 0)
+					System.err.println(sample.getFileName()
+							+ " cannot be played: " + e.getMessage());
+				soundVoices[voice] = null;
+				break;
+			}
+		}
+		voices.add(soundVoices);
+		voiceStarts.add(new long[voicesPerSound]);
+		names.add(sample.getFileName());
+		return voices.size() - 1;
+	}
+
+	/**
+	 * Starts the mixer's thread
+	 */
+	public void start()
+	{
+		running = true;
+		thread = new Thread(this, "rgb-sound-effects");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Asks for a sound to be played. Returns right away; the sound starts on
+	 * the mixer's thread
+	 *
+	 * @param sound The sound's number (from add)
+	 */
+	public void play(int sound)
+	{
+		if (sound < 0 || thread == null)
+			return;
+
+		long position = tail.get();
+		while (true)
+		{
+			long free = sequences.get((int) position & (QUEUE_SIZE - 1));
+			if (free == position)
+			{
+				if (tail.compareAndSet(position, position + 1))
+					break;
+			}
+			else if (free < position)
+			{
+				// The queue is full; this sound is skipped
+				noOfDropped++;
+				return;
+			}
+			position = tail.get();
+		}
+
+		int slot = (int) position & (QUEUE_SIZE - 1);
+		queuedSounds[slot] = sound;
+		queuedTimes[slot] = System.nanoTime();
+		sequences.lazySet(slot, position + 1);
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Starts the sounds that were asked for, sleeping while there are none
+	 */
+	public void run()
+	{
+		while (running)
+		{
+			int slot = (int) head & (QUEUE_SIZE - 1);
+			if (sequences.get(slot) != head + 1)
+			{
+				LockSupport.park(this);
+				continue;
+			}
+
+			int sound = queuedSounds[slot];
+			long asked = queuedTimes[slot];
+			sequences.lazySet(slot, head + QUEUE_SIZE);
+			head++;
+
+			if (startVoice(sound))
+				measure(System.nanoTime() - asked);
+		}
+	}
+
+	/**
+	 * Starts a free voice of a sound, or steals the one that has played the
+	 * longest
+	 *
+	 * @param sound The sound's number
+	 * @return false if the sound has no voices (no sound line)
+	 */
+	private boolean startVoice(int sound)
+	{
+		Clip[] soundVoices = voices.get(sound);
+		long[] starts = voiceStarts.get(sound);
+		if (soundVoices[0] == null)
+		{
+			noOfSilent++;
+			return false;
+		}
+
+		int chosen = -1;
+		int oldest = 0;
+		for (int voice = 0; voice < soundVoices.length
+				&& soundVoices[voice] != null; voice++)
+		{
+			if (!soundVoices[voice].isActive())
+			{
+				chosen = voice;
+				break;
+			}
+			if (starts[voice] < starts[oldest])
+				oldest = voice;
+		}
+		if (chosen == -1)
+		{
+			chosen = oldest;
+			soundVoices[chosen].stop();
+			noOfSteals++;
+		}
+
+		Clip clip = soundVoices[chosen];
+		clip.setFramePosition(0);
+		clip.start();
+		starts[chosen] = System.nanoTime();
+		return true;
+	}
+
+	/**
+	 * Records how long a sound took to start
+	 *
+	 * @param latency The time from play() to the voice starting, in
+	 *            nanoseconds
+	 */
+	private void measure(long latency)
+	{
+		noOfPlays++;
+		totalLatency += latency;
+		if (latency > maxLatency)
+			maxLatency = latency;
+		if (latency > latencyBudget)
+			noOfLate++;
+
+		int bucket = 0;
+		long limit = 1000000L;
+		while (latency >= limit && bucket < latencyBuckets.length - 1)
+		{
+			bucket++;
+			limit <<= 1;
+		}
+		latencyBuckets[bucket]++;
+	}
+
+	/**
+	 * Returns the number of sounds started
+	 *
+	 * @return the number of sounds started
+	 */
+	public long getNoOfPlays()
+	{
+		return noOfPlays;
+	}
+
+	/**
+	 * Returns the number of times a playing voice was cut off to start a
+	 * new sound
+	 *
+	 * @return the number of stolen voices
+	 */
+	public long getNoOfSteals()
+	{
+		return noOfSteals;
+	}
+
+	/**
+	 * Returns the number of sounds that took longer than the latency budget
+	 * to start
+	 *
+	 * @return the number of late sounds
+	 */
+	public long getNoOfLate()
+	{
+		return noOfLate;
+	}
+
+	/**
+	 * Returns the longest time a sound took to start
+	 *
+	 * @return the longest time in nanoseconds
+	 */
+	public long getMaxLatency()
+	{
+		return maxLatency;
+	}
+
+	/**
+	 * Stops the mixer's thread and closes every voice
+	 */
+	public void close()
+	{
+		running = false;
+		if (thread != null)
+		{
+			LockSupport.unpark(thread);
+			try
+			{
+				thread.join(1000);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (Clip[] soundVoices : voices)
+			for (Clip clip : soundVoices)
+				if (clip != null)
+					clip.close();
+	}
+
+	/**
+	 * Prints how quickly sounds were started and how often voices were
+	 * stolen
+	 *
+	 * @param out Where to print
+	 */
+	public void printStats(PrintStream out)
+	{
+		out.println("Sound effects (" + voicesPerSound
+				+ " voices per sound):");
+		for (int sound = 0; sound < names.size(); sound++)
+			out.printf("  %-22s %s%n", names.get(sound),
+					voices.get(sound)[0] == null ? "silent" : "ready");
+		long plays = noOfPlays;
+		out.printf("  %d started, %d stolen voices, %d dropped, "
+				+ "%d with no sound line%n", plays, noOfSteals, noOfDropped,
+				noOfSilent);
+		if (plays == 0)
+			return;
+		out.printf("  latency: mean %.3f ms, max %.3f ms, %d over the "
+				+ "%.1f ms budget%n", totalLatency / 1e6 / plays,
+				maxLatency / 1e6, noOfLate, latencyBudget / 1e6);
+		long limit = 1;
+		for (int bucket = 0; bucket < latencyBuckets.length; bucket++)
+		{
+			if (bucket < latencyBuckets.length - 1)
+				out.printf("  < %3d ms: %d%n", limit, latencyBuckets[bucket]);
+			else
+				out.printf("  >=%3d ms: %d%n", limit / 2,
+						latencyBuckets[bucket]);
+			limit <<= 1;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+import java.io.File;
+import java.io.IOException;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * The SoundSample class
+ *
+ * @author Jiawen
+ * A short sound read all the way into memory as plain 16-bit PCM, ready to
+ * be handed to a SoundMixer
+ */
+public class SoundSample
+{
+	private String fileName;
+	private AudioFormat format;
+	private byte[] data;
+
+	/**
+	 * Reads a sound file and turns it into PCM
+	 *
+	 * @param fileName The sound file (a WAV file)
+	 * @throws IOException if the file cannot be read or is not a sound
+	 */
+	public SoundSample(String fileName) throws IOException
+	{
+		this.fileName = fileName;
+		AudioInputStream in;
+		try
+		{
+			in = AudioSystem.getAudioInputStream(new File(fileName));
+		}
+		catch (UnsupportedAudioFileException e)
+		{
+			throw new IOException(fileName + " is not a valid sound", e);
+		}
+
+		try
+		{
+			// Anything that is not already 16-bit PCM is converted
+			AudioFormat source = in.getFormat();
+			if (source.getEncoding() != AudioFormat.Encoding.PCM_SIGNED
+					|| source.getSampleSizeInBits() != 16)
+			{
+				AudioFormat pcm = new AudioFormat(source.getSampleRate(), 16,
+						source.getChannels(), true, false);
+				in = AudioSystem.getAudioInputStream(pcm, in);
+			}
+			format = in.getFormat();
+			data = in.readAllBytes();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the name of the file the sound was read from
+	 *
+	 * @return the file name
+	 */
+	public String getFileName()
+	{
+		return fileName;
+	}
+
+	/**
+	 * Returns the format of the sound's PCM data
+	 *
+	 * @return the format
+	 */
+	public AudioFormat getFormat()
+	{
+		return format;
+	}
+
+	/**
+	 * Returns the sound's PCM data
+	 *
+	 * @return the data
+	 */
+	public byte[] getData()
+	{
+		return data;
+	}
+}
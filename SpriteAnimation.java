@@ -0,0 +1,268 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * The SpriteAnimation class
+ *
+ * @author Jiawen
+ * Holds every frame of an animated GIF, already put together, along with how
+ * long each frame is shown. The frame to draw is picked from a time, so the
+ * game decides when the animation moves on instead of the image loader
+ */
+public class SpriteAnimation
+{
+	// GIFs with no delay (or a tiny one) are shown at this speed, the same as
+	// most browsers do
+	private final int MIN_DELAY = 20;
+
+	private BufferedImage[] frames;
+
+	// When each frame ends, counted from the start of the animation, and how
+	// long the whole animation is (all in milliseconds)
+	private long[] frameEnds;
+	private long length;
+
+	/**
+	 * Creates a new SpriteAnimation object by reading every frame of a GIF
+	 *
+	 * @param fileName The GIF file
+	 * @throws IOException if the file cannot be read
+	 */
+	public SpriteAnimation(String fileName) throws IOException
+	{
+		ImageInputStream in = ImageIO.createImageInputStream(new File(
+				fileName));
+		if (in == null)
+			throw new IOException(fileName + " cannot be opened");
+		try
+		{
+			ImageReader reader = ImageIO.getImageReadersByFormatName("gif")
+					.next();
+			reader.setInput(in);
+			read(reader);
+			reader.dispose();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the number of frames in the animation
+	 *
+	 * @return the number of frames
+	 */
+	public int getNoOfFrames()
+	{
+		return frames.length;
+	}
+
+	/**
+	 * Returns one frame of the animation
+	 *
+	 * @param frame The frame number
+	 * @return the frame's picture
+	 */
+	public BufferedImage getFrame(int frame)
+	{
+		return frames[frame];
+	}
+
+	/**
+	 * Returns which frame is shown at a certain time. The animation loops
+	 *
+	 * @param time The time since the animation started, in milliseconds
+	 * @return the frame number
+	 */
+	public int getFrameNumber(long time)
+	{
+		if (frames.length == 1)
+			return 0;
+
+		long inLoop = time % length;
+		int frame = 0;
+		while (frameEnds[frame] <= inLoop)
+			frame++;
+		return frame;
+	}
+
+	/**
+	 * Returns the picture that is shown at a certain time
+	 *
+	 * @param time The time since the animation started, in milliseconds
+	 * @return the frame's picture
+	 */
+	public BufferedImage getFrameAt(long time)
+	{
+		return frames[getFrameNumber(time)];
+	}
+
+	/**
+	 * Returns how long it is until the frame shown at a certain time changes
+	 *
+	 * @param time The time since the animation started, in milliseconds
+	 * @return the number of milliseconds until the next frame, or -1 if the
+	 *         animation only has one frame
+	 */
+	public long getTimeToNextFrame(long time)
+	{
+		if (frames.length == 1)
+			return -1;
+
+		long inLoop = time % length;
+		return frameEnds[getFrameNumber(time)] - inLoop;
+	}
+
+	/**
+	 * Returns the width of the animation
+	 *
+	 * @return the width in pixels
+	 */
+	public int getWidth()
+	{
+		return frames[0].getWidth();
+	}
+
+	/**
+	 * Returns the height of the animation
+	 *
+	 * @return the height in pixels
+	 */
+	public int getHeight()
+	{
+		return frames[0].getHeight();
+	}
+
+	/**
+	 * Reads and puts together every frame. A GIF frame can cover only part of
+	 * the picture and says what to do with it before the next frame is drawn,
+	 * so each frame is drawn over the one before it
+	 *
+	 * @param reader The GIF reader
+	 * @throws IOException if a frame cannot be read
+	 */
+	private void read(ImageReader reader) throws IOException
+	{
+		int noOfFrames = reader.getNumImages(true);
+		int width = reader.getWidth(0);
+		int height = reader.getHeight(0);
+
+		// The whole picture's size comes from the stream if it says so
+		Node screen = find(reader.getStreamMetadata(),
+				"LogicalScreenDescriptor");
+		if (screen != null)
+		{
+			width = Math.max(width, number(screen, "logicalScreenWidth", 0));
+			height = Math.max(height, number(screen, "logicalScreenHeight", 0));
+		}
+
+		ArrayList<BufferedImage> frameList = new ArrayList<BufferedImage>();
+		frameEnds = new long[noOfFrames];
+		BufferedImage canvas = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		length = 0;
+		for (int frame = 0; frame < noOfFrames; frame++)
+		{
+			BufferedImage piece = reader.read(frame);
+			IIOMetadata metadata = reader.getImageMetadata(frame);
+			Node descriptor = find(metadata, "ImageDescriptor");
+			Node control = find(metadata, "GraphicControlExtension");
+			int left = number(descriptor, "imageLeftPosition", 0);
+			int top = number(descriptor, "imageTopPosition", 0);
+			int delay = number(control, "delayTime", 0) * 10;
+			String disposal = "none";
+			if (control != null)
+				disposal = ((Element) control).getAttribute("disposalMethod");
+
+			// Keep what was there before in case this frame has to be undone
+			BufferedImage previous = null;
+			if ("restoreToPrevious".equals(disposal))
+				previous = copy(canvas);
+
+			Graphics2D g = canvas.createGraphics();
+			g.drawImage(piece, left, top, null);
+			g.dispose();
+			frameList.add(copy(canvas));
+
+			length += Math.max(delay, MIN_DELAY);
+			frameEnds[frame] = length;
+
+			// Get the canvas ready for the next frame
+			if ("restoreToBackgroundColor".equals(disposal))
+			{
+				g = canvas.createGraphics();
+				g.setComposite(AlphaComposite.Clear);
+				g.fillRect(left, top, piece.getWidth(), piece.getHeight());
+				g.dispose();
+			}
+			else if (previous != null)
+				canvas = previous;
+		}
+		frames = frameList.toArray(new BufferedImage[frameList.size()]);
+	}
+
+	/**
+	 * Copies a picture
+	 *
+	 * @param image The picture
+	 * @return the copy
+	 */
+	private static BufferedImage copy(BufferedImage image)
+	{
+		BufferedImage copy = new BufferedImage(image.getWidth(),
+				image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = copy.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return copy;
+	}
+
+	/**
+	 * Finds a part of the GIF's description by name
+	 *
+	 * @param metadata The description of the GIF or one of its frames
+	 * @param name The name of the part
+	 * @return the part, or null if there is none
+	 */
+	private static Node find(IIOMetadata metadata, String name)
+	{
+		if (metadata == null)
+			return null;
+		Node root = metadata.getAsTree(metadata.getNativeMetadataFormatName());
+		for (Node child = root.getFirstChild(); child != null; child = child
+				.getNextSibling())
+			if (name.equals(child.getNodeName()))
+				return child;
+		return null;
+	}
+
+	/**
+	 * Reads a number from a part of the GIF's description
+	 *
+	 * @param node The part of the description
+	 * @param name The name of the number
+	 * @param otherwise What to use if the number is not there
+	 * @return the number
+	 */
+	private static int number(Node node, String name, int otherwise)
+	{
+		if (node == null)
+			return otherwise;
+		Node attribute = node.getAttributes().getNamedItem(name);
+		if (attribute == null)
+			return otherwise;
+		return Integer.parseInt(attribute.getNodeValue());
+	}
+}
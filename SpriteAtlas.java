@@ -0,0 +1,214 @@
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * The SpriteAtlas class
+ *
+ * @author Jiawen
+ * Packs all the small pictures of the game (tiles, paints and buttons) into
+ * one image so that every tile is drawn from the same surface. Each sprite is
+ * found by the same number the game already uses for it (WALL, RED_PAINT,
+ * etc.). Drawn at any other scale, each sprite is copied at that size the
+ * first time (see ScaledImageCache)
+ */
+public class SpriteAtlas
+{
+	// The widest the packed image is allowed to get
+	private final int MAX_WIDTH = 512;
+
+	// The pictures waiting to be packed, by their number
+	private Image[] sprites;
+
+	// Where each sprite is in the packed image (-1 if there is no sprite)
+	private int[] spriteX, spriteY, spriteWidth, spriteHeight;
+
+	// The packed image, and its sprites resized for the scales drawn at
+	private Image atlas;
+	private ScaledImageCache scaled;
+
+	/**
+	 * Creates a new, empty SpriteAtlas object
+	 *
+	 * @param noOfKeys One more than the highest sprite number that will be
+	 *            used
+	 */
+	public SpriteAtlas(int noOfKeys)
+	{
+		scaled = new ScaledImageCache();
+		sprites = new Image[noOfKeys];
+		spriteX = new int[noOfKeys];
+		spriteY = new int[noOfKeys];
+		spriteWidth = new int[noOfKeys];
+		spriteHeight = new int[noOfKeys];
+		for (int key = 0; key < noOfKeys; key++)
+			spriteX[key] = -1;
+	}
+
+	/**
+	 * Adds a picture to be packed. Must be called before pack()
+	 *
+	 * @param key The number of the sprite
+	 * @param image The (fully loaded) picture
+	 */
+	public void add(int key, Image image)
+	{
+		sprites[key] = image;
+	}
+
+	/**
+	 * Uses an already added picture for a second number as well, without
+	 * packing it twice
+	 *
+	 * @param key The new number
+	 * @param existingKey The number the picture was added with
+	 */
+	public void alias(int key, int existingKey)
+	{
+		sprites[key] = sprites[existingKey];
+	}
+
+	/**
+	 * Packs all added pictures into one image, in rows from left to right
+	 */
+	public void pack()
+	{
+		// Find where each picture goes. Pictures added under two numbers are
+		// only placed once
+		int x = 0, y = 0, rowHeight = 0, width = 0;
+		for (int key = 0; key < sprites.length; key++)
+		{
+			if (sprites[key] == null)
+				continue;
+
+			int same = findSame(key);
+			if (same >= 0)
+			{
+				copyPosition(key, same);
+				continue;
+			}
+
+			int imageWidth = sprites[key].getWidth(null);
+			int imageHeight = sprites[key].getHeight(null);
+			if (imageWidth <= 0 || imageHeight <= 0)
+				continue;
+
+			if (x + imageWidth > MAX_WIDTH && x > 0)
+			{
+				x = 0;
+				y += rowHeight;
+				rowHeight = 0;
+			}
+			spriteX[key] = x;
+			spriteY[key] = y;
+			spriteWidth[key] = imageWidth;
+			spriteHeight[key] = imageHeight;
+			x += imageWidth;
+			rowHeight = Math.max(rowHeight, imageHeight);
+			width = Math.max(width, x);
+		}
+
+		// Draw every picture into one image that the screen can draw quickly
+		atlas = createImage(Math.max(width, 1), Math.max(y + rowHeight, 1));
+		Graphics g = atlas.getGraphics();
+		for (int key = 0; key < sprites.length; key++)
+			if (sprites[key] != null && spriteX[key] >= 0
+					&& findSame(key) < 0)
+				g.drawImage(sprites[key], spriteX[key], spriteY[key], null);
+		g.dispose();
+
+		// The separate pictures are not needed anymore
+		sprites = new Image[sprites.length];
+	}
+
+	/**
+	 * Draws a sprite
+	 *
+	 * @param g The graphics context to draw on
+	 * @param key The number of the sprite
+	 * @param x Where to draw the left side of the sprite
+	 * @param y Where to draw the top of the sprite
+	 */
+	public void draw(Graphics g, int key, int x, int y)
+	{
+		if (key < 0 || key >= spriteX.length || spriteX[key] < 0)
+			return;
+
+		// Sprite numbers are small, so they are never made into new objects
+		scaled.draw(g, Integer.valueOf(key), atlas, spriteX[key],
+				spriteY[key], spriteWidth[key], spriteHeight[key], x, y);
+	}
+
+	/**
+	 * Returns whether or not there is a sprite for a number
+	 *
+	 * @param key The number of the sprite
+	 * @return whether or not the sprite exists
+	 */
+	public boolean hasSprite(int key)
+	{
+		return key >= 0 && key < spriteX.length && spriteX[key] >= 0;
+	}
+
+	/**
+	 * Returns the packed image
+	 *
+	 * @return the image all sprites are in
+	 */
+	public Image getImage()
+	{
+		return atlas;
+	}
+
+	/**
+	 * Finds an earlier number that was given the same picture
+	 *
+	 * @param key The number to check
+	 * @return the earlier number, or -1 if the picture is only used once
+	 */
+	private int findSame(int key)
+	{
+		for (int other = 0; other < key; other++)
+			if (sprites[other] == sprites[key])
+				return other;
+		return -1;
+	}
+
+	/**
+	 * Makes one sprite number point at the same place as another
+	 *
+	 * @param key The number to set
+	 * @param same The number to copy
+	 */
+	private void copyPosition(int key, int same)
+	{
+		spriteX[key] = spriteX[same];
+		spriteY[key] = spriteY[same];
+		spriteWidth[key] = spriteWidth[same];
+		spriteHeight[key] = spriteHeight[same];
+	}
+
+	/**
+	 * Makes an image with see-through pixels that suits the screen, so Java2D
+	 * can keep it in video memory
+	 *
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @return the new image
+	 */
+	public static Image createImage(int width, int height)
+	{
+		if (!GraphicsEnvironment.isHeadless())
+		{
+			GraphicsConfiguration configuration = GraphicsEnvironment
+					.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+					.getDefaultConfiguration();
+			return configuration.createCompatibleImage(width, height,
+					Transparency.TRANSLUCENT);
+		}
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	}
+}
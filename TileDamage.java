@@ -0,0 +1,215 @@
+import java.awt.Rectangle;
+import javax.swing.JComponent;
+
+/**
+ * The TileDamage class
+ *
+ * @author Jiawen
+ * Keeps track of which parts of the game area changed since the last paint so
+ * that only those regions have to be repainted
+ */
+public class TileDamage
+{
+	// The most regions that will be kept separately before they are merged
+	// into one
+	private final int MAX_REGIONS = 16;
+
+	// The size of one tile in pixels
+	private int tileSize;
+
+	// Each region takes up four elements: x, y, width and height
+	private int[] regions;
+	private int noOfRegions;
+
+	// Whether or not the whole area has to be repainted
+	private boolean everything;
+
+	/**
+	 * Creates a new TileDamage object
+	 *
+	 * @param tileSize The width and height of one tile in pixels
+	 */
+	public TileDamage(int tileSize)
+	{
+		this.tileSize = tileSize;
+		this.regions = new int[MAX_REGIONS * 4];
+		this.noOfRegions = 0;
+		this.everything = false;
+	}
+
+	/**
+	 * Marks a single tile as changed
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 */
+	public void markTile(int row, int column)
+	{
+		markArea(column * tileSize, row * tileSize, tileSize, tileSize);
+	}
+
+	/**
+	 * Marks a rectangle (in pixels) as changed. Used for sprites that are
+	 * bigger than one tile or are drawn off the tile grid
+	 *
+	 * @param x The left side of the area
+	 * @param y The top of the area
+	 * @param width The width of the area
+	 * @param height The height of the area
+	 */
+	public void markArea(int x, int y, int width, int height)
+	{
+		if (everything || width <= 0 || height <= 0)
+			return;
+
+		// Once the list is full, everything is merged into the first region
+		if (noOfRegions == MAX_REGIONS)
+		{
+			int left = Math.min(regions[0], x);
+			int top = Math.min(regions[1], y);
+			int right = Math.max(regions[0] + regions[2], x + width);
+			int bottom = Math.max(regions[1] + regions[3], y + height);
+			for (int region = 1; region < noOfRegions; region++)
+			{
+				int index = region * 4;
+				left = Math.min(left, regions[index]);
+				top = Math.min(top, regions[index + 1]);
+				right = Math.max(right, regions[index] + regions[index + 2]);
+				bottom = Math.max(bottom, regions[index + 1]
+						+ regions[index + 3]);
+			}
+			regions[0] = left;
+			regions[1] = top;
+			regions[2] = right - left;
+			regions[3] = bottom - top;
+			noOfRegions = 1;
+			return;
+		}
+
+		int index = noOfRegions * 4;
+		regions[index] = x;
+		regions[index + 1] = y;
+		regions[index + 2] = width;
+		regions[index + 3] = height;
+		noOfRegions++;
+	}
+
+	/**
+	 * Marks the whole area as changed (for full grid operations, new levels
+	 * and the menu screens)
+	 */
+	public void markAll()
+	{
+		everything = true;
+		noOfRegions = 0;
+	}
+
+	/**
+	 * Returns whether or not the whole area has to be repainted
+	 *
+	 * @return whether or not everything was marked as changed
+	 */
+	public boolean isEverything()
+	{
+		return everything;
+	}
+
+	/**
+	 * Returns whether or not anything has changed
+	 *
+	 * @return whether or not there is anything to repaint
+	 */
+	public boolean isEmpty()
+	{
+		return !everything && noOfRegions == 0;
+	}
+
+	/**
+	 * Returns the number of separate regions that have changed
+	 *
+	 * @return the number of changed regions
+	 */
+	public int getNoOfRegions()
+	{
+		return noOfRegions;
+	}
+
+	/**
+	 * Copies one of the changed regions into a rectangle
+	 *
+	 * @param region The index of the region
+	 * @param bounds The rectangle to copy the region into
+	 */
+	public void getRegion(int region, Rectangle bounds)
+	{
+		int index = region * 4;
+		bounds.setBounds(regions[index], regions[index + 1],
+				regions[index + 2], regions[index + 3]);
+	}
+
+	/**
+	 * Asks the component to repaint every changed region and clears the
+	 * damage for the next frame
+	 *
+	 * @param component The component to repaint
+	 */
+	public void flush(JComponent component)
+	{
+		flush(component, 0, 0);
+	}
+
+	/**
+	 * Asks the component to repaint every changed region, for a component
+	 * that shows the area from a point other than its top left (a scrolled
+	 * view), and clears the damage for the next frame
+	 *
+	 * @param component The component to repaint
+	 * @param originX Where the component's left side is in the area
+	 * @param originY Where the component's top is in the area
+	 */
+	public void flush(JComponent component, int originX, int originY)
+	{
+		flush(component, originX, originY, 1);
+	}
+
+	/**
+	 * Asks the component to repaint every changed region, for a component
+	 * that shows the area scaled and from a point other than its top left,
+	 * and clears the damage for the next frame. Regions are grown to whole
+	 * screen pixels
+	 *
+	 * @param component The component to repaint
+	 * @param originX Where the component's left side is in the area
+	 * @param originY Where the component's top is in the area
+	 * @param scale How many screen pixels one pixel of the area takes up
+	 */
+	public void flush(JComponent component, int originX, int originY,
+			double scale)
+	{
+		if (everything)
+			component.repaint();
+		else
+			for (int region = 0; region < noOfRegions; region++)
+			{
+				int index = region * 4;
+				int x = regions[index] - originX;
+				int y = regions[index + 1] - originY;
+				int left = (int) Math.floor(x * scale);
+				int top = (int) Math.floor(y * scale);
+				int right = (int) Math.ceil((x + regions[index + 2]) * scale);
+				int bottom = (int) Math.ceil((y + regions[index + 3]) * scale);
+				component.repaint(left, top, right - left, bottom - top);
+			}
+
+		clear();
+	}
+
+	/**
+	 * Forgets all damage without repainting
+	 */
+	public void clear()
+	{
+		everything = false;
+		noOfRegions = 0;
+	}
+}
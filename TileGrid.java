@@ -0,0 +1,333 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The TileGrid class
+ *
+ * @author Jiawen
+ * Holds the tiles of a map as one layer of bits per kind of tile (one layer
+ * for the walls, one for the paths, one for each paint, etc.). Every tile has
+ * its bit set in exactly one layer. Because 64 tiles share one long, changes
+ * to the whole map (inverting, filling, clearing) work on 64 tiles at a time,
+ * and checking for a wall is a single bit
+ */
+public class TileGrid implements TileMap
+{
+	// The highest tile value a map can hold, plus one
+	public static final int NO_OF_KINDS = 256;
+
+	private final int WALL = 1;
+
+	private int noOfRows, noOfColumns;
+
+	// Each row starts on a new long so rows never share a long
+	private int wordsPerRow;
+
+	// One layer of bits for each kind of tile (null until that kind is used),
+	// and the list of kinds that have a layer
+	private long[][] layers;
+	private int[] usedKinds;
+	private int noOfUsedKinds;
+
+	/**
+	 * Creates a new TileGrid object where every tile is a path (zero)
+	 *
+	 * @param noOfRows The number of rows in the map
+	 * @param noOfColumns The number of columns in the map
+	 */
+	public TileGrid(int noOfRows, int noOfColumns)
+	{
+		this.noOfRows = noOfRows;
+		this.noOfColumns = noOfColumns;
+		this.wordsPerRow = (noOfColumns + 63) >>> 6;
+		this.layers = new long[NO_OF_KINDS][];
+		this.usedKinds = new int[NO_OF_KINDS];
+		this.noOfUsedKinds = 0;
+
+		// Every tile starts in the path layer
+		long[] paths = layer(0);
+		for (int row = 0; row < noOfRows; row++)
+			setBits(paths, row, 0, noOfColumns - 1);
+	}
+
+	/**
+	 * Returns the number of rows in the map
+	 *
+	 * @return the number of rows
+	 */
+	public int getNoOfRows()
+	{
+		return noOfRows;
+	}
+
+	/**
+	 * Returns the number of columns in the map
+	 *
+	 * @return the number of columns
+	 */
+	public int getNoOfColumns()
+	{
+		return noOfColumns;
+	}
+
+	/**
+	 * Returns one tile of the map
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return the tile's value
+	 */
+	public int get(int row, int column)
+	{
+		int word = row * wordsPerRow + (column >>> 6);
+		long bit = 1L << column;
+		for (int kind = 0; kind < noOfUsedKinds; kind++)
+			if ((layers[usedKinds[kind]][word] & bit) != 0)
+				return usedKinds[kind];
+		return 0;
+	}
+
+	/**
+	 * Returns whether or not a tile is of a certain kind
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @param kind The kind of tile to check for
+	 * @return whether or not the tile is that kind
+	 */
+	public boolean is(int row, int column, int kind)
+	{
+		long[] bits = layers[kind];
+		return bits != null
+				&& (bits[row * wordsPerRow + (column >>> 6)] & (1L << column)) != 0;
+	}
+
+	/**
+	 * Returns whether or not a tile is a wall
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return whether or not the tile is a wall
+	 */
+	public boolean isWall(int row, int column)
+	{
+		return is(row, column, WALL);
+	}
+
+	/**
+	 * Changes one tile of the map
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @param kind The tile's new value
+	 */
+	public void set(int row, int column, int kind)
+	{
+		int word = row * wordsPerRow + (column >>> 6);
+		long bit = 1L << column;
+		for (int used = 0; used < noOfUsedKinds; used++)
+			layers[usedKinds[used]][word] &= ~bit;
+		layer(kind)[word] |= bit;
+	}
+
+	/**
+	 * Swaps two kinds of tiles inside a rectangle (for example walls and
+	 * paths)
+	 *
+	 * @param first One kind of tile
+	 * @param second The other kind of tile
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 */
+	public void swap(int first, int second, int top, int left, int bottom,
+			int right)
+	{
+		long[] firstBits = layer(first);
+		long[] secondBits = layer(second);
+		int firstWord = left >>> 6;
+		int lastWord = right >>> 6;
+		for (int row = top; row <= bottom; row++)
+		{
+			int rowStart = row * wordsPerRow;
+			for (int word = firstWord; word <= lastWord; word++)
+			{
+				long mask = mask(word, left, right);
+				int index = rowStart + word;
+				long firstInside = firstBits[index] & mask;
+				long secondInside = secondBits[index] & mask;
+				firstBits[index] = (firstBits[index] & ~mask) | secondInside;
+				secondBits[index] = (secondBits[index] & ~mask) | firstInside;
+			}
+		}
+	}
+
+	/**
+	 * Turns every tile inside a rectangle into one kind of tile, leaving one
+	 * other kind alone
+	 *
+	 * @param kind What to fill the rectangle with
+	 * @param keep The kind of tile that is not filled over (-1 for none)
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 */
+	public void fill(int kind, int keep, int top, int left, int bottom,
+			int right)
+	{
+		long[] fillBits = layer(kind);
+		long[] keepBits = keep >= 0 ? layers[keep] : null;
+		int firstWord = left >>> 6;
+		int lastWord = right >>> 6;
+		for (int row = top; row <= bottom; row++)
+		{
+			int rowStart = row * wordsPerRow;
+			for (int word = firstWord; word <= lastWord; word++)
+			{
+				int index = rowStart + word;
+				long mask = mask(word, left, right);
+				if (keepBits != null)
+					mask &= ~keepBits[index];
+				for (int used = 0; used < noOfUsedKinds; used++)
+					layers[usedKinds[used]][index] &= ~mask;
+				fillBits[index] |= mask;
+			}
+		}
+	}
+
+	/**
+	 * Turns every tile of one kind inside a rectangle into another kind
+	 *
+	 * @param from The kind of tile to replace
+	 * @param to The kind of tile to replace it with
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 * @return whether or not any tile changed
+	 */
+	public boolean replace(int from, int to, int top, int left, int bottom,
+			int right)
+	{
+		long[] fromBits = layers[from];
+		if (fromBits == null || from == to)
+			return false;
+
+		long[] toBits = layer(to);
+		boolean changed = false;
+		int firstWord = left >>> 6;
+		int lastWord = right >>> 6;
+		for (int row = top; row <= bottom; row++)
+		{
+			int rowStart = row * wordsPerRow;
+			for (int word = firstWord; word <= lastWord; word++)
+			{
+				int index = rowStart + word;
+				long moved = fromBits[index] & mask(word, left, right);
+				if (moved != 0)
+				{
+					fromBits[index] &= ~moved;
+					toBits[index] |= moved;
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Makes this grid the same as another grid of the same size
+	 *
+	 * @param other The grid to copy
+	 */
+	public void copyFrom(TileGrid other)
+	{
+		for (int used = 0; used < noOfUsedKinds; used++)
+			if (other.layers[usedKinds[used]] == null)
+				Arrays.fill(layers[usedKinds[used]], 0);
+		for (int used = 0; used < other.noOfUsedKinds; used++)
+		{
+			int kind = other.usedKinds[used];
+			System.arraycopy(other.layers[kind], 0, layer(kind), 0,
+					layers[kind].length);
+		}
+	}
+
+	/**
+	 * Replaces some whole rows of the map with tiles read from a buffer
+	 *
+	 * @param tiles The tiles, one byte each, row by row, starting at the
+	 *            buffer's position
+	 * @param top The first row to replace
+	 * @param bottom The last row to replace
+	 */
+	public void load(ByteBuffer tiles, int top, int bottom)
+	{
+		for (int used = 0; used < noOfUsedKinds; used++)
+			Arrays.fill(layers[usedKinds[used]], top * wordsPerRow,
+					(bottom + 1) * wordsPerRow, 0);
+		int tile = tiles.position();
+		for (int row = top; row <= bottom; row++)
+			for (int column = 0; column < noOfColumns; column++)
+				layer(tiles.get(tile++) & 0xFF)[row * wordsPerRow
+						+ (column >>> 6)] |= 1L << column;
+	}
+
+	/**
+	 * Does nothing: the grid is only in memory
+	 */
+	public void close()
+	{
+	}
+
+	/**
+	 * Returns the layer of bits for a kind of tile, making it if needed
+	 *
+	 * @param kind The kind of tile
+	 * @return the kind's layer
+	 */
+	private long[] layer(int kind)
+	{
+		if (layers[kind] == null)
+		{
+			layers[kind] = new long[noOfRows * wordsPerRow];
+			usedKinds[noOfUsedKinds] = kind;
+			noOfUsedKinds++;
+		}
+		return layers[kind];
+	}
+
+	/**
+	 * Sets the bits of a range of columns in one row of a layer
+	 *
+	 * @param bits The layer
+	 * @param row The row
+	 * @param left The first column
+	 * @param right The last column
+	 */
+	private void setBits(long[] bits, int row, int left, int right)
+	{
+		for (int word = left >>> 6; word <= right >>> 6; word++)
+			bits[row * wordsPerRow + word] |= mask(word, left, right);
+	}
+
+	/**
+	 * Returns which bits of a long are inside a range of columns
+	 *
+	 * @param word Which long of the row
+	 * @param left The first column of the range
+	 * @param right The last column of the range
+	 * @return the bits inside the range
+	 */
+	private static long mask(int word, int left, int right)
+	{
+		long mask = -1L;
+		if (word == left >>> 6)
+			mask &= -1L << left;
+		if (word == right >>> 6)
+			mask &= -1L >>> (63 - (right & 63));
+		return mask;
+	}
+}
@@ -0,0 +1,121 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The TileMap interface
+ *
+ * @author Jiawen
+ * The tiles of the map the game is played on. Normal maps are kept in memory
+ * (TileGrid); maps too big for that are kept in a file and only the parts
+ * around the player are read in (ChunkedTileStore). The game only ever goes
+ * through these methods, so it does not care which one it has
+ */
+public interface TileMap
+{
+	/**
+	 * Returns the number of rows in the map
+	 *
+	 * @return the number of rows
+	 */
+	int getNoOfRows();
+
+	/**
+	 * Returns the number of columns in the map
+	 *
+	 * @return the number of columns
+	 */
+	int getNoOfColumns();
+
+	/**
+	 * Returns one tile of the map
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return the tile's value
+	 */
+	int get(int row, int column);
+
+	/**
+	 * Returns whether or not a tile is of a certain kind
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @param kind The kind of tile to check for
+	 * @return whether or not the tile is that kind
+	 */
+	boolean is(int row, int column, int kind);
+
+	/**
+	 * Returns whether or not a tile is a wall
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @return whether or not the tile is a wall
+	 */
+	boolean isWall(int row, int column);
+
+	/**
+	 * Changes one tile of the map
+	 *
+	 * @param row The row of the tile
+	 * @param column The column of the tile
+	 * @param kind The tile's new value
+	 */
+	void set(int row, int column, int kind);
+
+	/**
+	 * Swaps two kinds of tiles inside a rectangle (for example walls and
+	 * paths)
+	 *
+	 * @param first One kind of tile
+	 * @param second The other kind of tile
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 */
+	void swap(int first, int second, int top, int left, int bottom, int right);
+
+	/**
+	 * Turns every tile inside a rectangle into one kind of tile, leaving one
+	 * other kind alone
+	 *
+	 * @param kind What to fill the rectangle with
+	 * @param keep The kind of tile that is not filled over (-1 for none)
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 */
+	void fill(int kind, int keep, int top, int left, int bottom, int right);
+
+	/**
+	 * Turns every tile of one kind inside a rectangle into another kind
+	 *
+	 * @param from The kind of tile to replace
+	 * @param to The kind of tile to replace it with
+	 * @param top The first row of the rectangle
+	 * @param left The first column of the rectangle
+	 * @param bottom The last row of the rectangle
+	 * @param right The last column of the rectangle
+	 * @return whether or not any tile changed
+	 */
+	boolean replace(int from, int to, int top, int left, int bottom,
+			int right);
+
+	/**
+	 * Replaces some whole rows of the map with tiles read from a buffer, so a
+	 * map can be read a few rows at a time
+	 *
+	 * @param tiles The tiles, one byte each, row by row, starting at the
+	 *            buffer's position
+	 * @param top The first row to replace
+	 * @param bottom The last row to replace
+	 */
+	void load(ByteBuffer tiles, int top, int bottom);
+
+	/**
+	 * Lets go of anything the map holds outside of memory. The map cannot be
+	 * used afterwards
+	 */
+	void close();
+}
@@ -0,0 +1,333 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The UndoJournal class
+ *
+ * @author Jiawen
+ * Remembers the painting the player did so it can be undone and redone. Each
+ * action (one press of space, one fill) is a list of records, and each
+ * record is a run of tiles in one row that all had the same kind before and
+ * all have the same kind after: the first tile's number (row times the
+ * number of columns plus column), how many tiles, the kind before and the
+ * kind after. Painting one tile is a run of one; a fill is one run for each
+ * row it covers (more if what it painted over was mixed), so undoing it
+ * only takes as long as it has runs, not as long as the grid is big.
+ *
+ * The records are kept in arrays used as rings, along with where each
+ * action's records start, so nothing is made while painting. The rings hold
+ * as many records as fit in the memory they were given; once they are full
+ * the oldest actions are forgotten to make room. An action too big for the
+ * whole journal cannot be undone, and everything before it is forgotten too
+ */
+public class UndoJournal
+{
+	// How much memory a journal is given unless told otherwise
+	public static final int DEFAULT_MEMORY = 1 << 20;
+
+	// The memory one record takes: its tile (4 bytes), its length (4), the
+	// kinds before and after (1 each), and the start of its action (8)
+	public static final int RECORD_BYTES = 18;
+
+	private int memory;
+	private int mask;
+
+	// The records. Records and actions are counted from the start of the
+	// journal; the ones still kept are from the heads up to the tails
+	private int[] cells, lengths;
+	private byte[] before, after;
+	private long recordHead, recordTail;
+
+	// Where each action's records start. The actions from the head up to
+	// current can be undone; the ones from current up to the tail have been
+	// undone and can be redone
+	private long[] actionStarts;
+	private long actionHead, actionCurrent, actionTail;
+
+	// Whether an action is being recorded, and whether it has outgrown the
+	// journal
+	private boolean recording, overflowed;
+
+	/**
+	 * Creates a new, empty UndoJournal object
+	 *
+	 * @param memory About how many bytes the records may take up (at least
+	 *            16 records are always kept)
+	 */
+	public UndoJournal(int memory)
+	{
+		allocate(memory);
+	}
+
+	/**
+	 * Makes the rings for a given amount of memory
+	 *
+	 * @param memory About how many bytes the records may take up
+	 */
+	private void allocate(int memory)
+	{
+		this.memory = memory;
+		int capacity = Integer.highestOneBit(Math.max(16, memory
+				/ RECORD_BYTES));
+		mask = capacity - 1;
+		cells = new int[capacity];
+		lengths = new int[capacity];
+		before = new byte[capacity];
+		after = new byte[capacity];
+		actionStarts = new long[capacity];
+	}
+
+	/**
+	 * Returns how much memory the journal was given
+	 *
+	 * @return the number of bytes
+	 */
+	public int getMemory()
+	{
+		return memory;
+	}
+
+	/**
+	 * Returns whether or not there is an action to undo
+	 *
+	 * @return whether or not undo() would do anything
+	 */
+	public boolean canUndo()
+	{
+		return actionCurrent > actionHead;
+	}
+
+	/**
+	 * Returns whether or not there is an undone action to redo
+	 *
+	 * @return whether or not redo() would do anything
+	 */
+	public boolean canRedo()
+	{
+		return actionTail > actionCurrent;
+	}
+
+	/**
+	 * Forgets everything
+	 */
+	public void clear()
+	{
+		recordHead = recordTail = 0;
+		actionHead = actionCurrent = actionTail = 0;
+		recording = false;
+		overflowed = false;
+	}
+
+	/**
+	 * Starts recording a new action. Anything that was undone can no longer
+	 * be redone
+	 */
+	public void begin()
+	{
+		if (actionTail > actionCurrent)
+		{
+			recordTail = actionStarts[(int) actionCurrent & mask];
+			actionTail = actionCurrent;
+		}
+		if (actionTail - actionHead > mask)
+			forgetOldest();
+		actionStarts[(int) actionTail & mask] = recordTail;
+		actionTail++;
+		recording = true;
+		overflowed = false;
+	}
+
+	/**
+	 * Adds a run of tiles to the action being recorded
+	 *
+	 * @param cell The first tile's number (row times the number of columns
+	 *            plus column)
+	 * @param length How many tiles the run has (all in the same row)
+	 * @param oldKind What the tiles were
+	 * @param newKind What the tiles are now
+	 */
+	public void record(int cell, int length, int oldKind, int newKind)
+	{
+		if (!recording || overflowed)
+			return;
+		if (recordTail - recordHead > mask)
+		{
+			// Only the action being recorded is left: it does not fit
+			if (actionHead == actionTail - 1)
+			{
+				overflowed = true;
+				return;
+			}
+			forgetOldest();
+		}
+		int record = (int) recordTail & mask;
+		cells[record] = cell;
+		lengths[record] = length;
+		before[record] = (byte) oldKind;
+		after[record] = (byte) newKind;
+		recordTail++;
+	}
+
+	/**
+	 * Finishes recording an action. An action that changed nothing is
+	 * dropped
+	 */
+	public void end()
+	{
+		if (!recording)
+			return;
+		recording = false;
+		if (overflowed)
+			clear();
+		else if (actionStarts[(int) (actionTail - 1) & mask] == recordTail)
+			actionTail--;
+		actionCurrent = actionTail;
+	}
+
+	/**
+	 * Puts back the tiles of the last action that was not undone, last run
+	 * first
+	 *
+	 * @param grid The map the action painted on
+	 * @param changes Where the tiles put back are marked
+	 * @return whether or not there was anything to undo
+	 */
+	public boolean undo(TileMap grid, GridChanges changes)
+	{
+		if (!canUndo())
+			return false;
+		actionCurrent--;
+		long start = actionStarts[(int) actionCurrent & mask];
+		long end = actionEnd(actionCurrent);
+		for (long record = end - 1; record >= start; record--)
+			apply(grid, changes, (int) record & mask, false);
+		return true;
+	}
+
+	/**
+	 * Paints the tiles of the last action that was undone again, first run
+	 * first
+	 *
+	 * @param grid The map the action painted on
+	 * @param changes Where the tiles painted are marked
+	 * @return whether or not there was anything to redo
+	 */
+	public boolean redo(TileMap grid, GridChanges changes)
+	{
+		if (!canRedo())
+			return false;
+		long start = actionStarts[(int) actionCurrent & mask];
+		long end = actionEnd(actionCurrent);
+		actionCurrent++;
+		for (long record = start; record < end; record++)
+			apply(grid, changes, (int) record & mask, true);
+		return true;
+	}
+
+	/**
+	 * Writes every action kept, so the journal can be put back exactly as
+	 * it was with read()
+	 *
+	 * @param out Where to write the journal
+	 * @throws IOException if the journal cannot be written
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeInt(memory);
+		out.writeInt((int) (actionTail - actionHead));
+		out.writeInt((int) (actionCurrent - actionHead));
+		for (long action = actionHead; action < actionTail; action++)
+		{
+			long start = actionStarts[(int) action & mask];
+			long end = actionEnd(action);
+			out.writeInt((int) (end - start));
+			for (long record = start; record < end; record++)
+			{
+				int index = (int) record & mask;
+				out.writeInt(cells[index]);
+				out.writeInt(lengths[index]);
+				out.writeByte(before[index]);
+				out.writeByte(after[index]);
+			}
+		}
+	}
+
+	/**
+	 * Puts the journal back to what write() wrote, with as much memory as
+	 * the journal written had
+	 *
+	 * @param in Where to read the journal from
+	 * @throws IOException if the journal cannot be read or does not fit
+	 */
+	public void read(DataInput in) throws IOException
+	{
+		int savedMemory = in.readInt();
+		if (savedMemory != memory)
+			allocate(savedMemory);
+		clear();
+		int noOfActions = in.readInt();
+		int noOfDone = in.readInt();
+		for (int action = 0; action < noOfActions; action++)
+		{
+			begin();
+			int noOfRecords = in.readInt();
+			for (int record = 0; record < noOfRecords; record++)
+				record(in.readInt(), in.readInt(), in.readByte() & 0xFF, in
+						.readByte() & 0xFF);
+			end();
+		}
+		if (overflowed || actionTail - actionHead != noOfActions)
+			throw new IOException("undo journal does not fit");
+		actionCurrent = actionHead + noOfDone;
+	}
+
+	/**
+	 * Returns where an action's records end
+	 *
+	 * @param action The action
+	 * @return one past its last record
+	 */
+	private long actionEnd(long action)
+	{
+		if (action + 1 < actionTail)
+			return actionStarts[(int) (action + 1) & mask];
+		return recordTail;
+	}
+
+	/**
+	 * Forgets the oldest action to make room
+	 */
+	private void forgetOldest()
+	{
+		actionHead++;
+		if (actionCurrent < actionHead)
+			actionCurrent = actionHead;
+		if (actionHead < actionTail)
+			recordHead = actionStarts[(int) actionHead & mask];
+		else
+			recordHead = recordTail;
+	}
+
+	/**
+	 * Paints one run back to what it was before or after
+	 *
+	 * @param grid The map
+	 * @param changes Where the tiles are marked
+	 * @param record Where the run is in the rings
+	 * @param forward Whether to paint what it became (redo) instead of what
+	 *            it was (undo)
+	 */
+	private void apply(TileMap grid, GridChanges changes, int record,
+			boolean forward)
+	{
+		int kind = (forward ? after[record] : before[record]) & 0xFF;
+		int row = cells[record] / grid.getNoOfColumns();
+		int left = cells[record] % grid.getNoOfColumns();
+		int right = left + lengths[record] - 1;
+		grid.fill(kind, -1, row, left, row, right);
+		for (int column = left; column <= right
+				&& !changes.isEverything(); column++)
+			changes.markTile(row, column);
+	}
+}
@@ -0,0 +1,483 @@
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The GameBenchmark class
+ *
+ * @author Jiawen
+ * Times the parts of the game that run on every key press or level change:
+ * reading maps, stepping the engine with each key, the whole-grid changes of
+ * levels 2, 4 and 6, pressing buttons and drawing the game. The level changes
+ * are timed through GameEngine.step and the drawing through the game area's
+ * own paint path, so they cost what they cost in the game. Every benchmark is
+ * run on the real maps and on bigger copies of them, and the results are
+ * written as JSON so two builds can be compared.
+ *
+ * Run it with Gradle (the benchmarks project runs it from the game's folder,
+ * since it needs the maps and pictures):
+ *
+ * gradle :benchmarks:run --args="-out results.json"
+ *
+ * or from the game's folder by hand:
+ *
+ * javac -d out *.java benchmarks/*.java
+ * java -Djava.awt.headless=true -cp out GameBenchmark -out results.json
+ *
+ * Options: -sizes 1,2,4 (how many copies of each map across and down),
+ * -warmup 5, -iterations 10, -time 200 (milliseconds per iteration) and a
+ * word that benchmark names must contain (for example "sweep")
+ */
+public class GameBenchmark
+{
+	/**
+	 * One thing to time
+	 */
+	private interface Benchmark
+	{
+		/**
+		 * Runs the timed code once
+		 *
+		 * @return any number worked out by the code, so it is not skipped
+		 */
+		long run() throws Exception;
+	}
+
+	// The maps the game uses, in the order its levels first use them (read
+	// from the engine's level descriptors, so the two lists cannot differ)
+	private static String[] MAP_FILES;
+
+	private static final int IMAGE_SIZE = 32;
+
+	// Results are added here so the timed code cannot be thrown away
+	private static volatile long sink;
+
+	private int warmupIterations = 5;
+	private int iterations = 10;
+	private long iterationNanos = 200000000L;
+	private String filter = "";
+	private List<String> results;
+
+	/**
+	 * Reads the options and runs every benchmark for every map size
+	 *
+	 * @param args The options (see the class description)
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		GameBenchmark benchmark = new GameBenchmark();
+		int[] sizes = { 1, 2, 4 };
+		String out = null;
+		for (int arg = 0; arg < args.length; arg++)
+		{
+			if (args[arg].equals("-sizes"))
+			{
+				String[] values = args[++arg].split(",");
+				sizes = new int[values.length];
+				for (int size = 0; size < values.length; size++)
+					sizes[size] = Integer.parseInt(values[size].trim());
+			}
+			else if (args[arg].equals("-warmup"))
+				benchmark.warmupIterations = Integer.parseInt(args[++arg]);
+			else if (args[arg].equals("-iterations"))
+				benchmark.iterations = Integer.parseInt(args[++arg]);
+			else if (args[arg].equals("-time"))
+				benchmark.iterationNanos = Long.parseLong(args[++arg])
+						* 1000000L;
+			else if (args[arg].equals("-out"))
+				out = args[++arg];
+			else
+				benchmark.filter = args[arg];
+		}
+
+		MAP_FILES = readMapFiles();
+		benchmark.results = new ArrayList<String>();
+		for (int size : sizes)
+			benchmark.runAll(size);
+
+		String json = benchmark.toJson();
+		if (out == null)
+			System.out.println(json);
+		else
+		{
+			PrintWriter writer = new PrintWriter(new FileWriter(out));
+			writer.println(json);
+			writer.close();
+			System.out.println("Results written to " + out);
+		}
+	}
+
+	/**
+	 * Finds the maps the game's levels use
+	 *
+	 * @return the map file names, each once, in the order the levels first
+	 *         use them
+	 * @throws IOException if a level's descriptor cannot be read
+	 */
+	private static String[] readMapFiles() throws IOException
+	{
+		LinkedHashSet<String> maps = new LinkedHashSet<String>();
+		for (String level : GameEngine.getLevelFiles())
+			maps.add(new LevelDescriptor(new File(level)).getMapFile());
+		return maps.toArray(new String[maps.size()]);
+	}
+
+	/**
+	 * Runs every benchmark on maps of one size
+	 *
+	 * @param size How many copies of each map go across and down
+	 */
+	private void runAll(int size) throws Exception
+	{
+		// Make the bigger maps and a level pack of them in a folder of their
+		// own, using the same names the engine asks for
+		File folder = Files.createTempDirectory("rgb-bench").toFile();
+		File[] maps = new File[MAP_FILES.length];
+		for (int map = 0; map < MAP_FILES.length; map++)
+			maps[map] = writeScaledMap(new File(MAP_FILES[map]), folder, size);
+		final File packFile = new File(folder, LevelPack.DEFAULT_PACK);
+		LevelCompiler.compile(packFile, maps);
+		final File defaultMap = maps[0];
+
+		final LevelPack pack = new LevelPack(packFile);
+		LevelTemplate template = pack.getTemplate("default.txt");
+		String mapSize = template.getNoOfRows() + "x"
+				+ template.getNoOfColumns();
+
+		// Reading maps
+		measure("parseText", mapSize, new Benchmark()
+		{
+			public long run() throws IOException
+			{
+				TileMap tiles = LevelCompiler.parseText(defaultMap);
+				tiles.close();
+				return tiles.getNoOfRows();
+			}
+		});
+		measure("loadPack", mapSize, new Benchmark()
+		{
+			public long run() throws IOException
+			{
+				LevelPack fresh = new LevelPack(packFile);
+				long tiles = 0;
+				for (String map : MAP_FILES)
+					tiles += fresh.getTemplate(map).getNoOfRows();
+				return tiles;
+			}
+		});
+		final GameEngine restarting = newEngine(pack);
+		measure("newLevel", mapSize, new Benchmark()
+		{
+			public long run()
+			{
+				return restarting.step(Input.RESTART);
+			}
+		});
+
+		// One engine step for each key
+		for (final Input input : Input.values())
+		{
+			final GameEngine engine = newEngine(pack);
+			measure("step." + input.name().toLowerCase(), mapSize,
+					new Benchmark()
+					{
+						public long run()
+						{
+							return engine.step(input)
+									+ engine.getPlayerColumn();
+						}
+					});
+		}
+
+		// The whole-grid changes of levels 2 (invert), 4 (paint outside the
+		// box, which is also recorded to be undone) and 6 (the numbers are
+		// swept away on every step), each as the step that makes it
+		final GameEngine level2 = newEngine(pack);
+		level2.startLevel(2);
+		measure("sweep.level2", mapSize, new Benchmark()
+		{
+			public long run()
+			{
+				return level2.step(Input.INVERT) + level2.getTile(2, 1);
+			}
+		});
+		final GameEngine level4 = outsideTheBox(pack);
+		measure("sweep.level4", mapSize, new Benchmark()
+		{
+			public long run()
+			{
+				return level4.step(Input.SPACE) + level4.getTile(2, 1);
+			}
+		});
+		final GameEngine level6 = newEngine(pack);
+		level6.startLevel(6);
+		measure("sweep.level6", mapSize, new Benchmark()
+		{
+			public long run()
+			{
+				return level6.step(Input.OTHER) + level6.getTile(2, 1);
+			}
+		});
+
+		// Buttons. Only run once, they do not depend on the map size
+		if (size == 1)
+		{
+			final Button button = new Button(10, 17, 5, 2,
+					GameEngine.RED_BUTTON);
+			measure("button.press", mapSize, new Benchmark()
+			{
+				public long run()
+				{
+					button.pressButton(17, 10);
+					return button.getCurrentValue();
+				}
+			});
+			measure("button.isCorrectValue", mapSize, new Benchmark()
+			{
+				public long run()
+				{
+					return button.isCorrectValue() ? 1 : 0;
+				}
+			});
+		}
+
+		// Drawing the whole map into a picture in memory, the way the game
+		// area draws itself with active rendering
+		final int width = template.getNoOfColumns() * IMAGE_SIZE;
+		final int height = template.getNoOfRows() * IMAGE_SIZE;
+		final Game.GameArea area = new Game.GameArea(true, packFile,
+				new Dimension(width, height));
+		area.setSize(width, height);
+		area.waitForAssets();
+		press(area, Input.ENTER);
+		press(area, Input.HELP);
+		final BufferedImage screen = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		measure("paint.full", mapSize, new Benchmark()
+		{
+			public long run()
+			{
+				area.redrawBackground();
+				return paint(area, screen);
+			}
+		});
+		measure("paint.cached", mapSize, new Benchmark()
+		{
+			public long run()
+			{
+				return paint(area, screen);
+			}
+		});
+
+		for (File file : folder.listFiles())
+			file.delete();
+		folder.delete();
+	}
+
+	/**
+	 * Makes an engine past the intro and help screens
+	 *
+	 * @param pack The maps to use
+	 * @return the engine
+	 */
+	private static GameEngine newEngine(LevelPack pack)
+	{
+		GameEngine engine = new GameEngine(pack);
+		engine.step(Input.ENTER);
+		engine.step(Input.HELP);
+		return engine;
+	}
+
+	/**
+	 * Makes an engine on level 4 with the player walked outside the box the
+	 * level starts in (and still painted), so that every SPACE paints the
+	 * whole map
+	 *
+	 * @param pack The maps to use
+	 * @return the engine
+	 */
+	private static GameEngine outsideTheBox(LevelPack pack)
+	{
+		GameEngine engine = newEngine(pack);
+		engine.startLevel(4);
+		PathFinder paths = new PathFinder(engine);
+		for (int row = 2; row < engine.getNoOfRows() - 1; row++)
+			for (int column = 1; column < engine.getNoOfColumns() - 1; column++)
+			{
+				if (column >= 6 && column <= 18 && row >= 5 && row <= 12)
+					continue;
+				ArrayList<Input> walk = paths.findPath(row, column);
+				if (walk == null)
+					continue;
+				for (Input key : walk)
+					engine.step(key);
+				if (engine.getPlayerRow() == row
+						&& engine.getPlayerColumn() == column)
+					return engine;
+				break;
+			}
+		throw new IllegalStateException("cannot leave level 4's box");
+	}
+
+	/**
+	 * Presses a key in the game area and lets it handle the key, as the game
+	 * loop's next tick does
+	 *
+	 * @param area The game area
+	 * @param key The key to press
+	 */
+	private static void press(Game.GameArea area, Input key)
+	{
+		KeyEvent event = new KeyEvent(area, KeyEvent.KEY_PRESSED,
+				System.currentTimeMillis(), 0, key.getKeyCode(),
+				KeyEvent.CHAR_UNDEFINED);
+		for (KeyListener listener : area.getKeyListeners())
+			listener.keyPressed(event);
+		area.tick();
+	}
+
+	/**
+	 * Draws the game area into a picture
+	 *
+	 * @param area The game area
+	 * @param screen The picture to draw into
+	 * @return a pixel of the picture, so the drawing is not skipped
+	 */
+	private static long paint(Game.GameArea area, BufferedImage screen)
+	{
+		Graphics g = screen.createGraphics();
+		area.render(g);
+		g.dispose();
+		return screen.getRGB(0, 0);
+	}
+
+	/**
+	 * Writes a bigger copy of a map made of several copies of it
+	 *
+	 * @param map The map's text file
+	 * @param folder Where to write the copy
+	 * @param size How many copies go across and down
+	 * @return the copy's file, with the same name as the map
+	 */
+	private static File writeScaledMap(File map, File folder, int size)
+			throws IOException
+	{
+		List<String> lines = Files.readAllLines(map.toPath(),
+				StandardCharsets.ISO_8859_1);
+		while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty())
+			lines.remove(lines.size() - 1);
+
+		List<String> scaled = new ArrayList<String>();
+		for (int down = 0; down < size; down++)
+			for (String line : lines)
+			{
+				StringBuilder row = new StringBuilder();
+				for (int across = 0; across < size; across++)
+					row.append(line);
+				scaled.add(row.toString());
+			}
+
+		File copy = new File(folder, map.getName());
+		Files.write(copy.toPath(), scaled, StandardCharsets.ISO_8859_1);
+		return copy;
+	}
+
+	/**
+	 * Times one benchmark: a few warm-up iterations that are thrown away,
+	 * then the measured ones. Each iteration calls the code for a set time
+	 *
+	 * @param name The benchmark's name
+	 * @param mapSize The size of the maps it ran on
+	 * @param benchmark The code to time
+	 */
+	private void measure(String name, String mapSize, Benchmark benchmark)
+			throws Exception
+	{
+		if (!name.contains(filter))
+			return;
+
+		for (int iteration = 0; iteration < warmupIterations; iteration++)
+			iterate(benchmark);
+
+		double[] nanosPerOp = new double[iterations];
+		double total = 0;
+		for (int iteration = 0; iteration < iterations; iteration++)
+		{
+			nanosPerOp[iteration] = iterate(benchmark);
+			total += nanosPerOp[iteration];
+		}
+		double mean = total / iterations;
+		double squares = 0;
+		for (double value : nanosPerOp)
+			squares += (value - mean) * (value - mean);
+		double deviation = iterations > 1 ? Math.sqrt(squares
+				/ (iterations - 1)) : 0;
+
+		System.err.printf("%-24s %-8s %12.1f ns/op  +- %.1f%n", name,
+				mapSize, mean, deviation);
+		results.add(String.format(
+				"    { \"benchmark\": \"%s\", \"mapSize\": \"%s\", "
+						+ "\"unit\": \"ns/op\", \"score\": %.3f, "
+						+ "\"error\": %.3f, \"iterations\": %d }", name,
+				mapSize, mean, deviation, iterations));
+	}
+
+	/**
+	 * Calls the code over and over for one iteration's time
+	 *
+	 * @param benchmark The code to time
+	 * @return the average time of one call, in nanoseconds
+	 */
+	private double iterate(Benchmark benchmark) throws Exception
+	{
+		long result = 0;
+		long operations = 0;
+		long start = System.nanoTime();
+		long end = start + iterationNanos;
+		long now;
+		do
+		{
+			// Check the clock every few calls so it does not cost much
+			for (int call = 0; call < 16; call++)
+				result += benchmark.run();
+			operations += 16;
+			now = System.nanoTime();
+		}
+		while (now < end);
+		sink += result;
+		return (double) (now - start) / operations;
+	}
+
+	/**
+	 * Puts all the results together as JSON
+	 *
+	 * @return the JSON text
+	 */
+	private String toJson()
+	{
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"java\": \"")
+				.append(System.getProperty("java.version"))
+				.append("\",\n  \"results\": [\n");
+		for (int result = 0; result < results.size(); result++)
+		{
+			json.append(results.get(result));
+			if (result < results.size() - 1)
+				json.append(',');
+			json.append('\n');
+		}
+		json.append("  ]\n}");
+		return json.toString();
+	}
+}